@@ -0,0 +1,74 @@
+package com.yudianbank.handler;
+
+import com.yudianbank.utils.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按后缀分发预览处理器(每次onlinePreview都会执行)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+
+    /**
+     * path：文件名在路径中；ftpDo：文件名在请求参数中
+     */
+    @Param({"path", "ftpDo"})
+    String urlKind;
+
+    private String url;
+    private PreviewHandlerRegistry registry;
+    private PreviewRequest request;
+
+    @Setup
+    public void setUp() {
+        url = "ftpDo".equals(urlKind)
+                ? "http://192.168.100.33:8300/reportTemplateExport/ftpDo?fileName=线损日报表.xlsx&selectDay=2021-10-16&token=8f2a91c7"
+                : "http://keking.ufile.ucloud.com.cn/20171113164107_月度绩效表模板(新).XLS?UCloudPublicKey=ucloudtangshd@weifenf.com14355492830001993909323&Expires=&Signature=I+D1NOFtAJSPT16E6imv6JWuq0k=";
+        FileUtils fileUtils = new FileUtils();
+        PictureHandler picture = new PictureHandler();
+        picture.fileUtils = fileUtils;
+        picture.init();
+        SimTextHandler simText = new SimTextHandler();
+        simText.simText = new String[]{"txt", "html", "xml", "java", "properties", "mp3", "mp4", "sql"};
+        simText.init();
+        CompressHandler compress = new CompressHandler();
+        compress.fileUtils = fileUtils;
+        compress.init();
+        OfficeHandler office = new OfficeHandler();
+        office.fileUtils = fileUtils;
+        office.init();
+        registry = new PreviewHandlerRegistry();
+        registry.fileUtils = fileUtils;
+        registry.handlers = Arrays.asList(picture, simText, new PdfHandler(), compress, office);
+        registry.init();
+        request = new PreviewRequest(url, url, registry.suffixFromUrl(url), null, null, null);
+    }
+
+    @Benchmark
+    public String suffixFromUrl() {
+        return registry.suffixFromUrl(url);
+    }
+
+    @Benchmark
+    public PreviewHandler handlerFor() {
+        return registry.handlerFor(request);
+    }
+}
@@ -0,0 +1,68 @@
+package com.yudianbank.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编码探测(64KB样本)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CharsetDetectBenchmark {
+
+    @Param({"ascii", "utf8", "gbk"})
+    String content;
+
+    /**
+     * 是否命中探测结果缓存
+     */
+    @Param({"true", "false"})
+    boolean cached;
+
+    private CharsetDetector detector;
+    private byte[] sample;
+
+    @Setup
+    public void setUp() {
+        detector = new CharsetDetector();
+        detector.sampleBytes = 64 * 1024;
+        detector.cacheSize = cached ? 10000 : 0;
+        detector.previewMetrics = new PreviewMetrics();
+        detector.previewMetrics.registry = new SimpleMeterRegistry();
+        detector.init();
+        String line = "ascii".equals(content)
+                ? "select id, name, amount from t_report where day = '2021-10-16';\n"
+                : "线损统计日报表，本月供电量与售电量对比分析，单位：千瓦时。\n";
+        Charset charset = "gbk".equals(content) ? Charset.forName("GBK") : StandardCharsets.UTF_8;
+        StringBuilder text = new StringBuilder();
+        while (text.length() * 3 < detector.sampleBytes) {
+            text.append(line);
+        }
+        byte[] bytes = text.toString().getBytes(charset);
+        sample = new byte[Math.min(bytes.length, detector.sampleBytes)];
+        System.arraycopy(bytes, 0, sample, 0, sample.length);
+    }
+
+    @Benchmark
+    public String detect() {
+        return detector.detect(sample, sample.length);
+    }
+}
@@ -0,0 +1,82 @@
+package com.yudianbank.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * excel转换后的html处理(doActionConvertedFile：改写编码声明并追加sheet控制脚本)
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConvertedHtmlBenchmark {
+
+    /**
+     * html大小(MB)
+     */
+    @Param({"1", "16", "64"})
+    int sizeMb;
+
+    private FileUtils fileUtils;
+    private File template;
+    private File work;
+
+    @Setup(Level.Trial)
+    public void createHtml() throws IOException {
+        fileUtils = new FileUtils();
+        fileUtils.charset = "GBK";
+        template = File.createTempFile("converted-" + sizeMb + "m-", ".html");
+        work = new File(template.getPath() + ".work");
+        long target = sizeMb * 1024L * 1024L;
+        try (BufferedWriter writer = Files.newBufferedWriter(template.toPath(), Charset.forName("GBK"))) {
+            writer.write("<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=gb2312\"></head><body><table>\n");
+            long written = 0;
+            for (int row = 0; written < target; row++) {
+                String line = "<tr><td>" + row + "</td><td>线损统计</td><td>供电量</td><td>" + (row * 37 % 10000)
+                        + "</td><td>售电量</td><td>" + (row * 31 % 10000) + "</td></tr>\n";
+                writer.write(line);
+                written += line.length() * 2L;
+            }
+            writer.write("</table></body></html>\n");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copyHtml() throws IOException {
+        // 处理会改写文件，每次都从原始文件开始
+        Files.copy(template.toPath(), work.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHtml() {
+        template.delete();
+        work.delete();
+    }
+
+    @Benchmark
+    public void doActionConvertedFile() {
+        fileUtils.doActionConvertedFile(work.getPath());
+    }
+}
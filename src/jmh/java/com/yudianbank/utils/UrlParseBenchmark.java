@@ -0,0 +1,60 @@
+package com.yudianbank.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * url解析(每次onlinePreview都会执行)，类型分发见DispatchBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlParseBenchmark {
+
+    /**
+     * path：文件名在路径中；ftpDo：文件名在请求参数中
+     */
+    @Param({"path", "ftpDo"})
+    String urlKind;
+
+    private String url;
+    private FileUtils fileUtils;
+
+    @Setup
+    public void setUp() {
+        url = "ftpDo".equals(urlKind)
+                ? "http://192.168.100.33:8300/reportTemplateExport/ftpDo?fileName=线损日报表.xlsx&selectDay=2021-10-16&token=8f2a91c7"
+                : "http://keking.ufile.ucloud.com.cn/20171113164107_月度绩效表模板(新).xls?UCloudPublicKey=ucloudtangshd@weifenf.com14355492830001993909323&Expires=&Signature=I+D1NOFtAJSPT16E6imv6JWuq0k=";
+        fileUtils = new FileUtils();
+    }
+
+    @Benchmark
+    public Map<String, String> urlSplit() {
+        return fileUtils.urlSplit(url);
+    }
+
+    @Benchmark
+    public String getFileNameFromURL() {
+        return fileUtils.getFileNameFromURL(url);
+    }
+
+    @Benchmark
+    public String canonicalUrl() {
+        return fileUtils.canonicalUrl(url);
+    }
+}
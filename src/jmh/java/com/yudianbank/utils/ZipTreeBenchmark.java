@@ -0,0 +1,74 @@
+package com.yudianbank.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压缩包文件树构造(排序、建树、序列化为json)
+ * <p>
+ *     条目在内存中生成：每个目录100个文件，目录按三层嵌套，不涉及磁盘读取。
+ * </p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ZipTreeBenchmark {
+
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int entries;
+
+    private ZipReader zipReader;
+    private List<ZipArchiveEntry> zipEntries;
+
+    @Setup
+    public void setUp() {
+        zipReader = new ZipReader();
+        zipReader.maxEntries = Integer.MAX_VALUE;
+        zipReader.maxTotalBytes = Long.MAX_VALUE;
+        zipReader.maxCompressionRatio = Long.MAX_VALUE;
+        zipReader.maxDepth = Integer.MAX_VALUE;
+        zipEntries = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            int directory = i / FILES_PER_DIRECTORY;
+            String dir = "report/" + (directory / 100) + "/" + (directory % 100) + "/";
+            ZipArchiveEntry entry = new ZipArchiveEntry(dir + "线损日报表_" + i + ".xlsx");
+            entry.setSize(16 * 1024);
+            entry.setCompressedSize(4 * 1024);
+            zipEntries.add(entry);
+        }
+    }
+
+    @Benchmark
+    public ZipReader.FileNode buildTree() throws ArchiveLimitExceededException {
+        List<Map<String, ZipArchiveEntry>> toExtract = new ArrayList<>();
+        return zipReader.buildZipTree(Collections.enumeration(zipEntries), "archive.zip", zipReader.new ArchiveBudget(), toExtract);
+    }
+
+    @Benchmark
+    public String buildTreeJson() throws ArchiveLimitExceededException, JsonProcessingException {
+        return new ObjectMapper().writeValueAsString(buildTree());
+    }
+}
@@ -0,0 +1,157 @@
+package com.yudianbank.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 本地文件源：生成合成语料并通过内嵌http服务提供下载，代替真实的文件存储
+ */
+public class CorpusOrigin {
+
+    private final HttpServer server;
+    private final Path root;
+    /**
+     * 类型 -> 文件名列表
+     */
+    private final Map<String, List<String>> files = new LinkedHashMap<>();
+
+    private CorpusOrigin(Path root, HttpServer server) {
+        this.root = root;
+        this.server = server;
+    }
+
+    /**
+     * 生成语料并启动http服务(随机端口)
+     * @param root 语料目录
+     * @param settings
+     * @return
+     * @throws IOException
+     */
+    public static CorpusOrigin start(Path root, LoadTestSettings settings) throws IOException {
+        Files.createDirectories(root);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        CorpusOrigin origin = new CorpusOrigin(root, server);
+        origin.generate(settings);
+        server.createContext("/corpus/", origin::serve);
+        server.setExecutor(Executors.newFixedThreadPool(Math.max(4, settings.concurrency)));
+        server.start();
+        return origin;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * 某类型的所有文件下载地址
+     * @param type office/compress/simText/picture
+     * @return
+     */
+    public List<String> urls(String type) {
+        List<String> urls = new ArrayList<>();
+        for (String name : files.getOrDefault(type, new ArrayList<>())) {
+            urls.add("http://127.0.0.1:" + server.getAddress().getPort() + "/corpus/" + name);
+        }
+        return urls;
+    }
+
+    private void generate(LoadTestSettings settings) throws IOException {
+        Random random = new Random(42);
+        String[] officeSuffixes = {"docx", "xlsx", "pptx", "doc"};
+        for (int i = 0; i < settings.corpusFiles; i++) {
+            String office = "report_" + i + "." + officeSuffixes[i % officeSuffixes.length];
+            byte[] content = new byte[settings.officeBytes];
+            random.nextBytes(content);
+            Files.write(root.resolve(office), content);
+            add("office", office);
+
+            String archive = "bundle_" + i + ".zip";
+            writeZip(root.resolve(archive).toFile(), settings.archiveEntries, random);
+            add("compress", archive);
+
+            String text = "log_" + i + ".txt";
+            writeText(root.resolve(text).toFile(), settings.textBytes, i);
+            add("simText", text);
+
+            String image = "scan_" + i + ".jpg";
+            writeImage(root.resolve(image).toFile(), settings.imageWidth, settings.imageHeight, random);
+            add("picture", image);
+        }
+    }
+
+    private void add(String type, String name) {
+        files.computeIfAbsent(type, key -> new ArrayList<>()).add(name);
+    }
+
+    private void writeZip(File file, int entries, Random random) throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(file.toPath()))) {
+            byte[] content = new byte[2048];
+            for (int i = 0; i < entries; i++) {
+                out.putNextEntry(new ZipEntry("dir" + (i / 50) + "/file_" + i + ".txt"));
+                random.nextBytes(content);
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private void writeText(File file, int bytes, int seed) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), Charset.forName("GBK"))) {
+            long written = 0;
+            for (int line = 0; written < bytes; line++) {
+                String text = "2021-10-16 08:00:" + (line % 60) + " INFO [" + seed + "] 线损统计任务处理第" + line + "条记录\n";
+                writer.write(text);
+                written += text.length() * 2L;
+            }
+        }
+    }
+
+    private void writeImage(File file, int width, int height, Random random) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            for (int i = 0; i < 200; i++) {
+                g.setColor(new Color(random.nextInt(0xFFFFFF)));
+                g.fillRect(random.nextInt(width), random.nextInt(height), random.nextInt(width / 4 + 1), random.nextInt(height / 4 + 1));
+            }
+        } finally {
+            g.dispose();
+        }
+        ImageIO.write(image, "jpg", file);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String name = exchange.getRequestURI().getPath().substring("/corpus/".length());
+        Path file = root.resolve(name).normalize();
+        if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, Files.size(file));
+        try (OutputStream out = exchange.getResponseBody()) {
+            Files.copy(file, out);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.yudianbank.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一组请求的吞吐量与延迟分位数
+ */
+public class LatencyReport {
+
+    private final String name;
+    private final int requests;
+    private final int errors;
+    private final double throughput;
+    private final Map<String, Double> latencyMillis = new LinkedHashMap<>();
+
+    /**
+     * @param name
+     * @param latenciesNanos 每个请求的耗时(纳秒)
+     * @param errors 失败的请求数(非200)
+     * @param elapsedNanos 压测总耗时
+     */
+    LatencyReport(String name, long[] latenciesNanos, int errors, long elapsedNanos) {
+        this.name = name;
+        this.requests = latenciesNanos.length;
+        this.errors = errors;
+        this.throughput = elapsedNanos > 0 ? requests * 1e9 / elapsedNanos : 0;
+        long[] sorted = latenciesNanos.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (long latency : sorted) {
+            sum += latency;
+        }
+        latencyMillis.put("mean", sorted.length == 0 ? 0 : round(sum / sorted.length / 1e6));
+        latencyMillis.put("p50", percentile(sorted, 50));
+        latencyMillis.put("p90", percentile(sorted, 90));
+        latencyMillis.put("p99", percentile(sorted, 99));
+        latencyMillis.put("p99.9", percentile(sorted, 99.9));
+        latencyMillis.put("max", sorted.length == 0 ? 0 : round(sorted[sorted.length - 1] / 1e6));
+    }
+
+    /**
+     * 最近秩法计算分位数
+     */
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return round(sorted[Math.max(0, rank - 1)] / 1e6);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    public double getThroughput() {
+        return round(throughput);
+    }
+
+    public Map<String, Double> getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder(String.format("%-10s requests=%-7d errors=%-5d throughput=%8.1f/s",
+                name, requests, errors, throughput));
+        for (Map.Entry<String, Double> entry : latencyMillis.entrySet()) {
+            line.append(String.format("  %s=%.1fms", entry.getKey(), entry.getValue()));
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.yudianbank.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 闭环压测：concurrency个线程持续请求onlinePreview，每个请求按权重随机选择类型和文件
+ */
+public class LoadDriver {
+
+    private final String previewBase;
+    private final Map<String, List<String>> urlsByType;
+    private final List<String> weightedTypes = new ArrayList<>();
+    private final int concurrency;
+
+    /**
+     * @param previewBase 预览服务地址，如http://127.0.0.1:8012/
+     * @param urlsByType 类型 -> 文件下载地址
+     * @param mix 类型 -> 权重
+     * @param concurrency
+     */
+    public LoadDriver(String previewBase, Map<String, List<String>> urlsByType, Map<String, Integer> mix, int concurrency) {
+        this.previewBase = previewBase;
+        this.urlsByType = urlsByType;
+        this.concurrency = concurrency;
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            if (!urlsByType.getOrDefault(entry.getKey(), new ArrayList<>()).isEmpty()) {
+                for (int i = 0; i < entry.getValue(); i++) {
+                    weightedTypes.add(entry.getKey());
+                }
+            }
+        }
+        if (weightedTypes.isEmpty()) {
+            throw new IllegalArgumentException("no request types to run: " + mix);
+        }
+    }
+
+    /**
+     * 发送requests个请求
+     * @param requests
+     * @return 总体及各类型的统计，key为all或类型名
+     * @throws InterruptedException
+     */
+    public Map<String, LatencyReport> run(int requests) throws InterruptedException {
+        long[] latencies = new long[requests];
+        String[] types = new String[requests];
+        boolean[] failed = new boolean[requests];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int w = 0; w < concurrency; w++) {
+            int seed = w;
+            workers.execute(() -> {
+                Random random = new Random(seed);
+                int index;
+                while ((index = next.getAndIncrement()) < requests) {
+                    String type = weightedTypes.get(random.nextInt(weightedTypes.size()));
+                    List<String> urls = urlsByType.get(type);
+                    String url = urls.get(random.nextInt(urls.size()));
+                    long requestStart = System.nanoTime();
+                    failed[index] = !preview(url);
+                    latencies[index] = System.nanoTime() - requestStart;
+                    types[index] = type;
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        Map<String, LatencyReport> reports = new LinkedHashMap<>();
+        reports.put("all", new LatencyReport("all", latencies, count(failed, types, null), elapsed));
+        for (String type : urlsByType.keySet()) {
+            List<Long> typed = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                if (type.equals(types[i])) {
+                    typed.add(latencies[i]);
+                }
+            }
+            if (!typed.isEmpty()) {
+                long[] values = typed.stream().mapToLong(Long::longValue).toArray();
+                reports.put(type, new LatencyReport(type, values, count(failed, types, type), elapsed));
+            }
+        }
+        return reports;
+    }
+
+    private int count(boolean[] failed, String[] types, String type) {
+        int errors = 0;
+        for (int i = 0; i < failed.length; i++) {
+            if (failed[i] && (null == type || type.equals(types[i]))) {
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * 请求一次预览并读完响应
+     * @param fileUrl
+     * @return 是否成功(200且不是不支持页面)
+     */
+    private boolean preview(String fileUrl) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(previewBase + "onlinePreview?url=" + encode(fileUrl)).openConnection();
+            connection.setConnectTimeout(5000);
+            connection.setReadTimeout(300000);
+            int status = connection.getResponseCode();
+            StringBuilder head = new StringBuilder();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while (null != in && (read = in.read(buffer)) > 0) {
+                    if (head.length() < 4096) {
+                        head.append(new String(buffer, 0, read, "UTF-8"));
+                    }
+                }
+            }
+            // fileNotSupported页面同样返回200，按页面中的图片识别
+            return 200 == status && !head.toString().contains("images/sorry.jpg");
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (null != connection) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
@@ -0,0 +1,91 @@
+package com.yudianbank.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.yudianbank.FilePreviewApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 端到端压测入口
+ * <p>
+ *     1.生成合成语料并用内嵌http服务提供下载；
+ *     2.在本进程内启动预览服务，office转换使用StubOfficeManager(不需要soffice)；
+ *     3.并发请求onlinePreview，输出吞吐量和延迟分位数，并写出json报告。
+ *     需要一个可访问的redis(loadtest.redis.address，默认使用15号库)。
+ *     参数见LoadTestSettings，运行：mvn -Ploadtest compile exec:java -Dloadtest.concurrency=32
+ * </p>
+ */
+public class LoadTestMain {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = new LoadTestSettings();
+        Path workDir = Files.createTempDirectory("preview-loadtest");
+        System.out.println("压测目录：" + workDir);
+        CorpusOrigin origin = CorpusOrigin.start(workDir.resolve("corpus"), settings);
+        ConfigurableApplicationContext app = startPreviewService(workDir.resolve("files"), settings);
+        try {
+            int port = ((ServletWebServerApplicationContext) app).getWebServer().getPort();
+            Map<String, List<String>> urls = new LinkedHashMap<>();
+            for (String type : settings.mix.keySet()) {
+                urls.put(type, origin.urls(type));
+            }
+            LoadDriver driver = new LoadDriver("http://127.0.0.1:" + port + "/", urls, settings.mix, settings.concurrency);
+            if (settings.warmupRequests > 0) {
+                driver.run(settings.warmupRequests);
+            }
+            Map<String, LatencyReport> reports = driver.run(settings.requests);
+            for (LatencyReport report : reports.values()) {
+                System.out.println(report);
+            }
+            writeReport(settings, reports);
+        } finally {
+            app.close();
+            origin.stop();
+        }
+    }
+
+    private static ConfigurableApplicationContext startPreviewService(Path fileDir, LoadTestSettings settings) throws Exception {
+        Files.createDirectories(fileDir);
+        // 压测不注册到nacos，也不从nacos读取配置
+        System.setProperty("spring.cloud.nacos.discovery.enabled", "false");
+        System.setProperty("spring.cloud.nacos.config.enabled", "false");
+        SpringApplication application = new SpringApplication(FilePreviewApplication.class, StubConverterConfiguration.class);
+        return application.run(
+                "--server.port=0",
+                "--file.dir=" + fileDir.toAbsolutePath() + File.separator,
+                "--office.home=",
+                "--office.port=8100",
+                "--converted.file.charset=GBK",
+                "--spring.redisson.address=" + settings.redisAddress,
+                "--spring.redisson.database=" + settings.redisDatabase);
+    }
+
+    private static void writeReport(LoadTestSettings settings, Map<String, LatencyReport> reports) throws Exception {
+        Map<String, Object> json = new LinkedHashMap<>();
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("concurrency", settings.concurrency);
+        parameters.put("requests", settings.requests);
+        parameters.put("mix", settings.mix);
+        parameters.put("corpusFiles", settings.corpusFiles);
+        parameters.put("convertLatencyMillis", settings.convertLatencyMillis);
+        parameters.put("convertJitterMillis", settings.convertJitterMillis);
+        parameters.put("convertProcesses", settings.convertProcesses);
+        json.put("parameters", parameters);
+        json.put("results", reports);
+        File report = new File(settings.report);
+        if (null != report.getParentFile()) {
+            report.getParentFile().mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report, json);
+        System.out.println("报告：" + report.getAbsolutePath());
+    }
+}
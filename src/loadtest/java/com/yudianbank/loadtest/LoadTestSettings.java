@@ -0,0 +1,63 @@
+package com.yudianbank.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 压测参数，均通过系统属性设置，如：-Dloadtest.concurrency=32
+ */
+public class LoadTestSettings {
+
+    /**
+     * 并发请求数
+     */
+    final int concurrency = Integer.getInteger("loadtest.concurrency", 16);
+    /**
+     * 统计的请求总数
+     */
+    final int requests = Integer.getInteger("loadtest.requests", 2000);
+    /**
+     * 预热请求数(不计入统计)
+     */
+    final int warmupRequests = Integer.getInteger("loadtest.warmup.requests", 100);
+    /**
+     * 各类型请求的权重，格式：类型:权重,类型:权重
+     */
+    final Map<String, Integer> mix = parseMix(System.getProperty("loadtest.mix", "office:4,compress:2,simText:2,picture:2"));
+    /**
+     * 每种类型生成的文件数(决定缓存工作集大小)
+     */
+    final int corpusFiles = Integer.getInteger("loadtest.corpus.files", 50);
+    final int officeBytes = Integer.getInteger("loadtest.office.bytes", 256 * 1024);
+    final int archiveEntries = Integer.getInteger("loadtest.archive.entries", 200);
+    final int textBytes = Integer.getInteger("loadtest.text.bytes", 1024 * 1024);
+    final int imageWidth = Integer.getInteger("loadtest.image.width", 2000);
+    final int imageHeight = Integer.getInteger("loadtest.image.height", 1500);
+    /**
+     * 模拟转换耗时与随机抖动(毫秒)
+     */
+    final long convertLatencyMillis = Long.getLong("loadtest.convert.latency.ms", 2000);
+    final long convertJitterMillis = Long.getLong("loadtest.convert.jitter.ms", 500);
+    /**
+     * 模拟的office进程数
+     */
+    final int convertProcesses = Integer.getInteger("loadtest.convert.processes", 1);
+    final String redisAddress = System.getProperty("loadtest.redis.address", "redis://127.0.0.1:6379");
+    final int redisDatabase = Integer.getInteger("loadtest.redis.database", 15);
+    /**
+     * json报告输出路径
+     */
+    final String report = System.getProperty("loadtest.report", "target/loadtest-report.json");
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String item : mix.split(",")) {
+            String[] pair = item.trim().split(":");
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            if (weight > 0) {
+                weights.put(pair[0].trim(), weight);
+            }
+        }
+        return weights;
+    }
+}
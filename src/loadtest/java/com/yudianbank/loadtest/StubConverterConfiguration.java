@@ -0,0 +1,41 @@
+package com.yudianbank.loadtest;
+
+import com.yudianbank.utils.OfficeProcesses;
+import org.artofsolving.jodconverter.office.OfficeManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 压测时注册模拟转换器(不加@Configuration，只在LoadTestMain中作为启动类之一注册，避免被组件扫描)
+ */
+public class StubConverterConfiguration {
+
+    @Bean
+    public OfficeManager officeManager(@Value("${loadtest.convert.latency.ms:2000}") long latencyMillis,
+                                       @Value("${loadtest.convert.jitter.ms:500}") long jitterMillis,
+                                       @Value("${loadtest.convert.processes:1}") int processes) {
+        return new StubOfficeManager(latencyMillis, jitterMillis, processes);
+    }
+
+    /**
+     * 模拟转换器没有office进程，看门狗不查找也不结束本机真实的office进程
+     */
+    @Bean
+    @Primary
+    public OfficeProcesses stubOfficeProcesses() {
+        return new OfficeProcesses() {
+            @Override
+            public List<String> find(int port) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void kill(String pid) {
+            }
+        };
+    }
+}
@@ -0,0 +1,101 @@
+package com.yudianbank.loadtest;
+
+import org.artofsolving.jodconverter.office.OfficeException;
+import org.artofsolving.jodconverter.office.OfficeManager;
+import org.artofsolving.jodconverter.office.OfficeTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 模拟的office转换器
+ * <p>
+ *     不启动soffice，按配置的耗时(固定值+随机抖动)阻塞后写出一个最小的pdf/html作为转换结果；
+ *     processes模拟office进程数，超出的转换排队等待，与真实进程池的排队行为一致。
+ * </p>
+ */
+public class StubOfficeManager implements OfficeManager {
+
+    private static final String MINIMAL_PDF = "%PDF-1.4\n1 0 obj<</Type/Catalog/Pages 2 0 R>>endobj\n"
+            + "2 0 obj<</Type/Pages/Kids[3 0 R]/Count 1>>endobj\n"
+            + "3 0 obj<</Type/Page/Parent 2 0 R/MediaBox[0 0 595 842]>>endobj\n"
+            + "trailer<</Root 1 0 R>>\n%%EOF\n";
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final Semaphore processes;
+    private volatile boolean running;
+
+    public StubOfficeManager(long latencyMillis, long jitterMillis, int processes) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.processes = new Semaphore(processes, true);
+    }
+
+    @Override
+    public void execute(OfficeTask task) throws OfficeException {
+        File output = outputFileOf(task);
+        try {
+            processes.acquire();
+            try {
+                Random random = ThreadLocalRandom.current();
+                long jitter = jitterMillis > 0 ? (long) (random.nextDouble() * jitterMillis) : 0;
+                Thread.sleep(latencyMillis + jitter);
+                String name = output.getName().toLowerCase();
+                String content = name.endsWith(".html") || name.endsWith(".htm")
+                        ? "<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=gb2312\"></head>"
+                        + "<body><table><tr><td>stub</td></tr></table></body></html>"
+                        : MINIMAL_PDF;
+                Files.write(output.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+            } finally {
+                processes.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OfficeException("conversion interrupted", e);
+        } catch (IOException e) {
+            throw new OfficeException("could not write " + output, e);
+        }
+    }
+
+    /**
+     * jodconverter的转换任务不公开输出文件，这里按字段名读取
+     * @param task
+     * @return
+     */
+    private File outputFileOf(OfficeTask task) {
+        for (Class<?> type = task.getClass(); null != type; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField("outputFile");
+                field.setAccessible(true);
+                return (File) field.get(task);
+            } catch (NoSuchFieldException e) {
+                // 继续查找父类
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        throw new IllegalArgumentException("unsupported task " + task.getClass().getName());
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
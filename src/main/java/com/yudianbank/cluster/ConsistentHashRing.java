@@ -0,0 +1,82 @@
+package com.yudianbank.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 一致性哈希环(不可变)
+ * <p>
+ *     每个节点在环上放置若干虚拟节点，key顺时针归属到第一个虚拟节点；
+ *     节点加入或离开时只有相邻区间的key改变归属，其余key保持不变。
+ *     节点变化时重新创建实例并整体替换引用。
+ * </p>
+ * @param <T> 节点
+ */
+public final class ConsistentHashRing<T> {
+
+    private final NavigableMap<Long, T> ring;
+    private final int size;
+
+    private ConsistentHashRing(NavigableMap<Long, T> ring, int size) {
+        this.ring = ring;
+        this.size = size;
+    }
+
+    /**
+     * 创建哈希环
+     * @param nodes 节点标识(如host:port) -> 节点，同样的标识总是落在环上同样的位置
+     * @param virtualNodes 每个节点的虚拟节点数，越多分布越均匀
+     * @return
+     */
+    public static <T> ConsistentHashRing<T> of(Map<String, T> nodes, int virtualNodes) {
+        NavigableMap<Long, T> ring = new TreeMap<>();
+        for (Map.Entry<String, T> node : nodes.entrySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node.getKey() + "#" + i), node.getValue());
+            }
+        }
+        return new ConsistentHashRing<>(Collections.unmodifiableNavigableMap(ring), nodes.size());
+    }
+
+    /**
+     * key的归属节点
+     * @param key
+     * @return 环为空时返回null
+     */
+    public T get(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return null == entry ? ring.firstEntry().getValue() : entry.getValue();
+    }
+
+    /**
+     * 节点数
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * md5的前8个字节
+     */
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.yudianbank.cluster;
+
+import com.yudianbank.utils.FileUtils;
+import com.yudianbank.utils.PreviewMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.cloud.alibaba.nacos.registry.NacosRegistration;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按文件把预览请求分配到固定的节点
+ * <p>
+ *     定时从nacos获取本服务的健康实例，按host:port建立一致性哈希环，以规范化后的文件url为key确定归属节点，
+ *     同一个文件的转换和缓存集中在一个节点上；节点加入或离开时只有少部分文件改变归属。
+ *     转发失败的节点暂时移出哈希环，由本节点处理：按上次从nacos获取的实例重建哈希环，请求线程不访问nacos。
+ * </p>
+ */
+@Component
+public class PeerRouter {
+
+    public static final String MODE_OFF = "off";
+    public static final String MODE_FORWARD = "forward";
+    public static final String MODE_REDIRECT = "redirect";
+
+    @Autowired(required = false)
+    DiscoveryClient discoveryClient;
+    @Autowired(required = false)
+    NacosRegistration registration;
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Autowired
+    MeterRegistry registry;
+    @Value("${spring.application.name:file-online-preview}")
+    String serviceId;
+    /**
+     * off：不分配，forward：本节点转发到归属节点，redirect：重定向到归属节点(浏览器需能直接访问各节点)
+     */
+    @Value("${cluster.affinity.mode:forward}")
+    String mode;
+    /**
+     * 每个节点的虚拟节点数
+     */
+    @Value("${cluster.ring.virtual.nodes:160}")
+    int virtualNodes;
+    /**
+     * 转发失败的节点移出哈希环的时间(毫秒)
+     */
+    @Value("${cluster.affinity.suspect.ms:30000}")
+    long suspectMillis;
+
+    private volatile ConsistentHashRing<ServiceInstance> ring = ConsistentHashRing.of(Collections.emptyMap(), 0);
+    /**
+     * 上次从nacos获取的实例
+     */
+    private List<ServiceInstance> instances = Collections.emptyList();
+    private volatile int port = -1;
+    /**
+     * 转发失败的节点 -> 恢复时间
+     */
+    private final Map<String, Long> suspects = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        previewMetrics.gauge("preview.affinity.peers", () -> ring.size());
+    }
+
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        port = event.getWebServer().getPort();
+    }
+
+    /**
+     * 分配方式
+     * @return
+     */
+    public String mode() {
+        return null == discoveryClient ? MODE_OFF : mode;
+    }
+
+    /**
+     * 文件的归属节点
+     * @param url onlinePreview的url参数
+     * @return 由本节点处理时返回null
+     */
+    public ServiceInstance ownerOf(String url) {
+        if (MODE_OFF.equals(mode()) || ring.size() < 2 || null == url) {
+            return null;
+        }
+        ServiceInstance owner = ring.get(documentKey(url));
+        if (null == owner || keyOf(owner).equals(selfKey())) {
+            return null;
+        }
+        return owner;
+    }
+
+    /**
+     * 转发失败，节点暂时移出哈希环
+     * @param instance
+     */
+    public void suspect(ServiceInstance instance) {
+        System.out.println("转发到" + keyOf(instance) + "失败，暂时移出哈希环");
+        suspects.put(keyOf(instance), System.currentTimeMillis() + suspectMillis);
+        rebuild();
+    }
+
+    /**
+     * 记录请求的处理方式
+     * @param result local/forward/redirect/fallback/timeout/error
+     */
+    public void count(String result) {
+        Counter.builder("preview.affinity.requests")
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 从nacos刷新节点列表
+     */
+    @Scheduled(fixedDelayString = "${cluster.ring.refresh.ms:5000}")
+    public void refresh() {
+        if (MODE_OFF.equals(mode())) {
+            return;
+        }
+        List<ServiceInstance> instances;
+        try {
+            instances = discoveryClient.getInstances(serviceId);
+        } catch (RuntimeException e) {
+            // nacos不可用时保持原来的哈希环
+            e.printStackTrace();
+            return;
+        }
+        synchronized (this) {
+            this.instances = instances;
+            rebuild();
+        }
+    }
+
+    /**
+     * 按上次获取的实例重建哈希环，排除转发失败的节点
+     */
+    private synchronized void rebuild() {
+        long now = System.currentTimeMillis();
+        suspects.values().removeIf(until -> until <= now);
+        Map<String, ServiceInstance> nodes = new LinkedHashMap<>();
+        for (ServiceInstance instance : instances) {
+            String key = keyOf(instance);
+            if (!suspects.containsKey(key)) {
+                nodes.put(key, instance);
+            }
+        }
+        if (nodes.size() != ring.size()) {
+            System.out.println("预览节点变化：" + nodes.keySet());
+        }
+        ring = ConsistentHashRing.of(nodes, virtualNodes);
+    }
+
+    private String documentKey(String url) {
+        try {
+            return fileUtils.canonicalUrl(URLDecoder.decode(url, "utf-8"));
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    private String selfKey() {
+        if (null == registration) {
+            return "";
+        }
+        return registration.getHost() + ":" + (registration.getPort() < 0 ? port : registration.getPort());
+    }
+
+    private static String keyOf(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+}
@@ -0,0 +1,203 @@
+package com.yudianbank.config;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.handler.State;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+import org.redisson.codec.JsonJacksonCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑的值编码(key仍使用原编码)
+ * <p>
+ *     字符串直接存utf-8字节(不再经过json转义)，超过阈值的值用deflate压缩，压缩文件的文件树等大json通常能缩小到几分之一。
+ *     新格式以0字节开头(json不会以0字节开头)：[0][类型][压缩前长度(压缩时)][内容]；
+ *     读取时不是新格式的值交给原编码解析，旧版本写入的条目不需要迁移。
+ * </p>
+ */
+public class CompactValueCodec implements Codec {
+
+    static final byte MAGIC = 0;
+    /**
+     * utf-8字符串
+     */
+    static final byte STRING = 'S';
+    /**
+     * 压缩的utf-8字符串
+     */
+    static final byte DEFLATED_STRING = 'Z';
+    /**
+     * 压缩的原编码内容(非字符串的值)
+     */
+    static final byte DEFLATED_VALUE = 'V';
+
+    private final Codec codec;
+    private final int threshold;
+
+    public CompactValueCodec() {
+        this(new JsonJacksonCodec(), 1024);
+    }
+
+    /**
+     * @param codec 原编码，用于key和非字符串的值
+     * @param threshold 超过该字节数的值才压缩
+     */
+    public CompactValueCodec(Codec codec, int threshold) {
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    private final Encoder encoder = new Encoder() {
+        @Override
+        public ByteBuf encode(Object in) throws IOException {
+            if (in instanceof String) {
+                byte[] bytes = ((String) in).getBytes(StandardCharsets.UTF_8);
+                byte[] deflated = bytes.length >= threshold ? deflate(bytes) : null;
+                return null == deflated ? frame(STRING, bytes, -1) : frame(DEFLATED_STRING, deflated, bytes.length);
+            }
+            ByteBuf encoded = codec.getValueEncoder().encode(in);
+            if (encoded.readableBytes() < threshold) {
+                return encoded;
+            }
+            byte[] bytes = new byte[encoded.readableBytes()];
+            encoded.readBytes(bytes);
+            encoded.release();
+            byte[] deflated = deflate(bytes);
+            if (null == deflated) {
+                return ByteBufAllocator.DEFAULT.buffer(bytes.length).writeBytes(bytes);
+            }
+            return frame(DEFLATED_VALUE, deflated, bytes.length);
+        }
+    };
+
+    private final Decoder<Object> decoder = new Decoder<Object>() {
+        @Override
+        public Object decode(ByteBuf buf, State state) throws IOException {
+            int start = buf.readerIndex();
+            if (buf.readableBytes() < 2 || MAGIC != buf.getByte(start)) {
+                return codec.getValueDecoder().decode(buf, state);
+            }
+            byte type = buf.getByte(start + 1);
+            if (STRING == type) {
+                buf.skipBytes(2);
+                return buf.readCharSequence(buf.readableBytes(), StandardCharsets.UTF_8).toString();
+            }
+            if (DEFLATED_STRING == type || DEFLATED_VALUE == type) {
+                buf.skipBytes(2);
+                int length = buf.readInt();
+                byte[] deflated = new byte[buf.readableBytes()];
+                buf.readBytes(deflated);
+                byte[] bytes = inflate(deflated, length);
+                if (DEFLATED_STRING == type) {
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                ByteBuf inner = ByteBufAllocator.DEFAULT.buffer(bytes.length).writeBytes(bytes);
+                try {
+                    return codec.getValueDecoder().decode(inner, state);
+                } finally {
+                    inner.release();
+                }
+            }
+            return codec.getValueDecoder().decode(buf, state);
+        }
+    };
+
+    @Override
+    public Decoder<Object> getMapValueDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public Encoder getMapValueEncoder() {
+        return encoder;
+    }
+
+    @Override
+    public Decoder<Object> getMapKeyDecoder() {
+        return codec.getMapKeyDecoder();
+    }
+
+    @Override
+    public Encoder getMapKeyEncoder() {
+        return codec.getMapKeyEncoder();
+    }
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public Encoder getValueEncoder() {
+        return encoder;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return codec.getClassLoader();
+    }
+
+    private static ByteBuf frame(byte type, byte[] content, int length) {
+        ByteBuf out = ByteBufAllocator.DEFAULT.buffer(content.length + 6);
+        out.writeByte(MAGIC).writeByte(type);
+        if (length >= 0) {
+            out.writeInt(length);
+        }
+        return out.writeBytes(content);
+    }
+
+    /**
+     * 压缩
+     * @return 压缩后没有变小时返回null
+     */
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 16);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() >= bytes.length) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] deflated, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int inflated = inflater.inflate(bytes, offset, length - offset);
+                if (0 == inflated && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += inflated;
+            }
+            if (offset != length) {
+                throw new IOException("压缩内容不完整");
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.yudianbank.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 转换文件缓存(见ConvertedFileIndex)的分桶、容量和过期设置
+ * <p>
+ *     按缓存key的格式分别设置ttl和最大空闲时间，未配置的格式使用默认值；0表示不过期。
+ *     格式取key的后缀(如pdf、html、zip)，源文件缓存的key统一为source，图片缩略图的key统一为rendition，
+ *     幻灯片图片目录的key统一为slides，后台转换中的登记统一为partial。
+ *     例：converted.index.formats.html.ttl-seconds = 86400
+ * </p>
+ */
+@ConfigurationProperties(prefix = "converted.index")
+@Configuration
+public class ConvertedIndexProperties {
+
+    static final String SOURCE_KEY_PREFIX = "source:";
+    static final String SOURCE_FORMAT = "source";
+    static final String RENDITION_KEY_PREFIX = "rendition:";
+    static final String RENDITION_FORMAT = "rendition";
+    static final String SLIDES_KEY_PREFIX = "slides:";
+    static final String SLIDES_FORMAT = "slides";
+    static final String PARTIAL_KEY_PREFIX = "partial:";
+    static final String PARTIAL_FORMAT = "partial";
+
+    /**
+     * 实现：redis(RedisConvertedFileIndex，多节点共享) / embedded(EmbeddedConvertedFileIndex，单节点本机存储)
+     */
+    private String type = "redis";
+    /**
+     * 最多保留的条目数，平均分到各分桶，超过后淘汰分桶中最久未访问的条目，0表示不限制
+     */
+    private int maxSize = 100000;
+    /**
+     * redis中的分桶数(见RedisConvertedFileIndex)，确定后不要修改
+     */
+    private int buckets = 64;
+    /**
+     * 超过该字节数的值压缩存储(见CompactValueCodec)
+     */
+    private int compressThresholdBytes = 1024;
+    private long ttlSeconds = 7 * 24 * 3600;
+    private long maxIdleSeconds = 3 * 24 * 3600;
+    private Map<String, Expiry> formats = new HashMap<>();
+
+    /**
+     * 缓存key的格式
+     * @param key
+     * @return
+     */
+    public static String formatOf(String key) {
+        if (key.startsWith(SOURCE_KEY_PREFIX)) {
+            return SOURCE_FORMAT;
+        }
+        if (key.startsWith(RENDITION_KEY_PREFIX)) {
+            return RENDITION_FORMAT;
+        }
+        if (key.startsWith(SLIDES_KEY_PREFIX)) {
+            return SLIDES_FORMAT;
+        }
+        if (key.startsWith(PARTIAL_KEY_PREFIX)) {
+            return PARTIAL_FORMAT;
+        }
+        int dot = key.lastIndexOf('.');
+        return dot == -1 ? "" : key.substring(dot + 1).toLowerCase();
+    }
+
+    /**
+     * 缓存key的ttl(秒)
+     * @param key
+     * @return
+     */
+    public long ttlOf(String key) {
+        Expiry expiry = formats.get(formatOf(key));
+        return null == expiry || null == expiry.getTtlSeconds() ? ttlSeconds : expiry.getTtlSeconds();
+    }
+
+    /**
+     * 缓存key的最大空闲时间(秒)
+     * @param key
+     * @return
+     */
+    public long maxIdleOf(String key) {
+        Expiry expiry = formats.get(formatOf(key));
+        return null == expiry || null == expiry.getMaxIdleSeconds() ? maxIdleSeconds : expiry.getMaxIdleSeconds();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(int buckets) {
+        this.buckets = buckets;
+    }
+
+    public int getCompressThresholdBytes() {
+        return compressThresholdBytes;
+    }
+
+    public void setCompressThresholdBytes(int compressThresholdBytes) {
+        this.compressThresholdBytes = compressThresholdBytes;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public long getMaxIdleSeconds() {
+        return maxIdleSeconds;
+    }
+
+    public void setMaxIdleSeconds(long maxIdleSeconds) {
+        this.maxIdleSeconds = maxIdleSeconds;
+    }
+
+    public Map<String, Expiry> getFormats() {
+        return formats;
+    }
+
+    public void setFormats(Map<String, Expiry> formats) {
+        this.formats = formats;
+    }
+
+    /**
+     * 单个格式的过期设置，未设置的项使用默认值
+     */
+    public static class Expiry {
+        private Long ttlSeconds;
+        private Long maxIdleSeconds;
+
+        public Long getTtlSeconds() {
+            return ttlSeconds;
+        }
+
+        public void setTtlSeconds(Long ttlSeconds) {
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        public Long getMaxIdleSeconds() {
+            return maxIdleSeconds;
+        }
+
+        public void setMaxIdleSeconds(Long maxIdleSeconds) {
+            this.maxIdleSeconds = maxIdleSeconds;
+        }
+    }
+}
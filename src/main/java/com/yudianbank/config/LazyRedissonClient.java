@@ -0,0 +1,148 @@
+package com.yudianbank.config;
+
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 后台连接的redisson客户端
+ * <p>
+ *     Redisson.create在连接redis时会阻塞，这里在后台线程中创建，spring先返回代理对象；
+ *     使用时如果还没有连接完成，最多等待connectWaitMillis，仍未连接或连接失败时抛出RedisException，
+ *     调用方按redis不可用处理(如ConvertedIndexGuard降级到本机缓存)，请求线程不会一直等待redis。
+ *     创建失败(如启动时redis短暂不可用)会按指数退避一直重试，连接成功后代理开始使用新客户端，
+ *     启动过程(StartupCoordinator)也在这时才注册到nacos。
+ * </p>
+ */
+public class LazyRedissonClient implements InvocationHandler {
+
+    /**
+     * 第一次重试前等待的时间(毫秒)，之后每次翻倍
+     */
+    static final long FIRST_RETRY_MILLIS = 500;
+
+    private final CompletableFuture<RedissonClient> client;
+    private final long connectWaitMillis;
+
+    private LazyRedissonClient(CompletableFuture<RedissonClient> client, long connectWaitMillis) {
+        this.client = client;
+        this.connectWaitMillis = connectWaitMillis;
+    }
+
+    /**
+     * 创建代理
+     * @param client 正在创建的客户端
+     * @param connectWaitMillis 使用时等待连接完成的最长时间(毫秒)
+     * @return
+     */
+    public static RedissonClient create(CompletableFuture<RedissonClient> client, long connectWaitMillis) {
+        return (RedissonClient) Proxy.newProxyInstance(RedissonClient.class.getClassLoader(),
+                new Class[]{RedissonClient.class}, new LazyRedissonClient(client, connectWaitMillis));
+    }
+
+    /**
+     * 在后台线程中创建客户端并返回代理
+     * @param factory 创建客户端，失败时抛出异常
+     * @param connectWaitMillis 使用时等待连接完成的最长时间(毫秒)
+     * @param retryMaxMillis 两次重试之间最长的等待时间(毫秒)
+     * @return
+     */
+    public static RedissonClient create(Supplier<RedissonClient> factory, long connectWaitMillis, long retryMaxMillis) {
+        CompletableFuture<RedissonClient> client = new CompletableFuture<>();
+        Thread thread = new Thread(() -> connect(factory, client, retryMaxMillis), "redisson-starter");
+        thread.setDaemon(true);
+        thread.start();
+        return create(client, connectWaitMillis);
+    }
+
+    /**
+     * 创建客户端直到成功或被关闭(client被取消)
+     * @param factory
+     * @param client
+     * @param retryMaxMillis
+     */
+    static void connect(Supplier<RedissonClient> factory, CompletableFuture<RedissonClient> client, long retryMaxMillis) {
+        long wait = Math.min(FIRST_RETRY_MILLIS, retryMaxMillis);
+        while (!client.isDone()) {
+            try {
+                RedissonClient created = factory.get();
+                if (!client.complete(created)) {
+                    // 连接期间应用已关闭
+                    created.shutdown();
+                }
+                return;
+            } catch (Exception e) {
+                System.out.println("连接redis失败，" + wait + "ms后重试: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                client.completeExceptionally(e);
+                return;
+            }
+            wait = Math.min(wait * 2, retryMaxMillis);
+        }
+    }
+
+    /**
+     * 客户端的创建过程，非代理对象返回已完成的future
+     * @param redissonClient
+     * @return
+     */
+    public static CompletableFuture<RedissonClient> connecting(RedissonClient redissonClient) {
+        if (Proxy.isProxyClass(redissonClient.getClass())
+                && Proxy.getInvocationHandler(redissonClient) instanceof LazyRedissonClient) {
+            return ((LazyRedissonClient) Proxy.getInvocationHandler(redissonClient)).client;
+        }
+        return CompletableFuture.completedFuture(redissonClient);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "LazyRedissonClient" + (client.isDone() ? "(connected)" : "(connecting)");
+            }
+        }
+        if ("shutdown".equals(method.getName())
+                && (client.cancel(false) || client.isCompletedExceptionally())) {
+            // 还没连接上就关闭：停止重试，正在创建的客户端由connect关闭
+            return null;
+        }
+        try {
+            return method.invoke(connected(), args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private RedissonClient connected() {
+        try {
+            return client.get(connectWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new RedisException("redis尚未连接");
+        } catch (CancellationException e) {
+            throw new RedisException("redis客户端已关闭");
+        } catch (ExecutionException e) {
+            throw new RedisException("redis连接失败", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisException("等待redis连接时被中断", e);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.Codec;
 import org.redisson.config.Config;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,6 +14,7 @@ import org.springframework.util.ClassUtils;
 /**
  * Created by kl on 2017/09/26.
  * redisson 客户端配置
+ * 转换文件缓存使用本机实现时(converted.index.type=embedded)不创建客户端，单节点部署不需要redis
  */
 @ConfigurationProperties(prefix = "spring.redisson")
 @Configuration
@@ -42,7 +44,21 @@ public class RedissonConfig {
 
     private String codec="org.redisson.codec.JsonJacksonCodec";
 
+    /**
+     * 是否在后台线程中连接redis(不阻塞应用启动)
+     */
+    private boolean lazyConnect = true;
+    /**
+     * 后台连接时，使用redis的请求等待连接完成的最长时间(毫秒)
+     */
+    private long lazyConnectWaitMs = 3000;
+    /**
+     * 后台连接失败时两次重试之间最长的等待时间(毫秒)
+     */
+    private long lazyConnectRetryMaxMs = 30000;
+
     @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "converted.index.type", havingValue = "redis", matchIfMissing = true)
     RedissonClient redisson() throws Exception {
         Config config = new Config();
         config.useSingleServer().setAddress("redis://"+address)
@@ -69,7 +85,34 @@ public class RedissonConfig {
         config.setThreads(thread);
         config.setEventLoopGroup(new NioEventLoopGroup());
 //        config.setUseLinuxNativeEpoll(false);
-        return Redisson.create(config);
+        if (!lazyConnect) {
+            return Redisson.create(config);
+        }
+        return LazyRedissonClient.create(() -> Redisson.create(config), lazyConnectWaitMs, lazyConnectRetryMaxMs);
+    }
+
+    public boolean isLazyConnect() {
+        return lazyConnect;
+    }
+
+    public void setLazyConnect(boolean lazyConnect) {
+        this.lazyConnect = lazyConnect;
+    }
+
+    public long getLazyConnectWaitMs() {
+        return lazyConnectWaitMs;
+    }
+
+    public void setLazyConnectWaitMs(long lazyConnectWaitMs) {
+        this.lazyConnectWaitMs = lazyConnectWaitMs;
+    }
+
+    public long getLazyConnectRetryMaxMs() {
+        return lazyConnectRetryMaxMs;
+    }
+
+    public void setLazyConnectRetryMaxMs(long lazyConnectRetryMaxMs) {
+        this.lazyConnectRetryMaxMs = lazyConnectRetryMaxMs;
     }
 
     public int getThread() {
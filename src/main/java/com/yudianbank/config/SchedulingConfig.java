@@ -0,0 +1,39 @@
+package com.yudianbank.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * 定时任务线程池
+ * <p>
+ *     spring默认所有@Scheduled方法共用一个线程，office看门狗重启实例时会阻塞nacos实例刷新、就绪检查和缓存补写，
+ *     这里为定时任务配置线程池，各任务互不阻塞。
+ * </p>
+ */
+@Configuration
+public class SchedulingConfig implements SchedulingConfigurer {
+
+    /**
+     * 定时任务线程数，不少于@Scheduled方法的个数
+     */
+    @Value("${scheduling.pool.size:5}")
+    int poolSize;
+
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.setDaemon(true);
+        return scheduler;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        registrar.setTaskScheduler(taskScheduler());
+    }
+}
@@ -0,0 +1,31 @@
+package com.yudianbank.config;
+
+import com.yudianbank.web.interceptor.ServerTimingInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 拦截器配置
+ * @author yudian-it
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    /**
+     * 输出Server-Timing的请求路径
+     */
+    @Value("${preview.timing.paths:/onlinePreview,/textPage,/picture/**,/slides/**}")
+    String[] timingPaths;
+    /**
+     * 超过该耗时(毫秒)的请求输出慢请求日志
+     */
+    @Value("${preview.slow.threshold.ms:3000}")
+    long slowThresholdMillis;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ServerTimingInterceptor(slowThresholdMillis)).addPathPatterns(timingPaths);
+    }
+}
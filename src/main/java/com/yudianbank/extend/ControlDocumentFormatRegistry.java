@@ -208,4 +208,26 @@ public class ControlDocumentFormatRegistry extends SimpleDocumentFormatRegistry
         aFilterData[10].Value= "UTF-8";
         return aFilterData;
     }
+
+    /**
+     * 只导出指定页的pdf格式(通过pdf导出的FilterData.PageRange)
+     * @param pageRange 页码范围，如："1-10"
+     * @return
+     */
+    public static DocumentFormat pdfPageRange(String pageRange) {
+        DocumentFormat pdf = new DocumentFormat("Portable Document Format", "pdf", "application/pdf");
+        pdf.setStoreProperties(DocumentFamily.TEXT, pageRangeProperties("writer_pdf_Export", pageRange));
+        pdf.setStoreProperties(DocumentFamily.SPREADSHEET, pageRangeProperties("calc_pdf_Export", pageRange));
+        pdf.setStoreProperties(DocumentFamily.PRESENTATION, pageRangeProperties("impress_pdf_Export", pageRange));
+        pdf.setStoreProperties(DocumentFamily.DRAWING, pageRangeProperties("draw_pdf_Export", pageRange));
+        return pdf;
+    }
+
+    private static Map<String, Object> pageRangeProperties(String filterName, String pageRange) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("FilterName", filterName);
+        // jodconverter会把嵌套的Map转换为PropertyValue[]
+        properties.put("FilterData", Collections.singletonMap("PageRange", pageRange));
+        return properties;
+    }
 }
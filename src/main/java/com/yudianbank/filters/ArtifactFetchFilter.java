@@ -0,0 +1,65 @@
+package com.yudianbank.filters;
+
+import com.yudianbank.store.ArtifactCache;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * file.dir下的文件本地不存在时先从ArtifactStore取回，再交给静态资源处理
+ * (其他节点转换的文件，命中redis缓存后浏览器可能访问到本节点)
+ * 页面自带的静态资源(classpath中的js、css等，首级目录或文件名在excludedNames中)不会是转换结果，不查询存储。
+ *
+ * @author yudian-it
+ */
+public class ArtifactFetchFilter implements Filter {
+
+    private final String fileDir;
+    private final ArtifactCache artifactCache;
+    private final Set<String> excludedNames;
+
+    public ArtifactFetchFilter(String fileDir, ArtifactCache artifactCache, Set<String> excludedNames) {
+        this.fileDir = fileDir;
+        this.artifactCache = artifactCache;
+        this.excludedNames = excludedNames;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String method = httpRequest.getMethod();
+        String path = httpRequest.getServletPath();
+        if (artifactCache.isShared()
+                && ("GET".equals(method) || "HEAD".equals(method))
+                && null != path && !path.contains("..")
+                // 只处理带后缀的文件名，接口地址直接放行
+                && path.lastIndexOf('.') > path.lastIndexOf('/')
+                && !excludedNames.contains(firstSegment(path))
+                && !new File(fileDir, path).isFile()) {
+            artifactCache.ensureLocal(path.substring(1));
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * 路径的首级目录或文件名
+     * @param path 以/开头
+     * @return
+     */
+    static String firstSegment(String path) {
+        int end = path.indexOf('/', 1);
+        return end < 0 ? path.substring(1) : path.substring(1, end);
+    }
+
+    @Override
+    public void destroy() {
+
+    }
+}
@@ -1,8 +1,21 @@
 package com.yudianbank.filters;
 
+import com.yudianbank.cluster.PeerRouter;
+import com.yudianbank.store.ArtifactCache;
+import com.yudianbank.utils.PreviewMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 
 /**
@@ -13,6 +26,24 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class FilterConfiguration {
 
+    /**
+     * spring.resources.static-locations中的classpath位置
+     */
+    private static final String[] STATIC_LOCATIONS = {"META-INF/resources/", "resources/", "static/", "public/"};
+
+    @Value("${file.dir}")
+    String fileDir;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Autowired
+    ArtifactCache artifactCache;
+    @Autowired
+    PeerRouter peerRouter;
+    @Value("${cluster.affinity.connect.timeout.ms:1000}")
+    int affinityConnectTimeoutMillis;
+    @Value("${cluster.affinity.read.timeout.ms:300000}")
+    int affinityReadTimeoutMillis;
+
     @Bean
     public FilterRegistrationBean getChinesePathFilter(){
         ChinesePathFilter filter = new ChinesePathFilter();
@@ -20,4 +51,53 @@ public class FilterConfiguration {
         registrationBean.setFilter(filter);
         return registrationBean;
     }
+
+    @Bean
+    public FilterRegistrationBean getPeerAffinityFilter(){
+        PeerAffinityFilter filter = new PeerAffinityFilter(peerRouter, affinityConnectTimeoutMillis, affinityReadTimeoutMillis);
+        FilterRegistrationBean registrationBean = new FilterRegistrationBean();
+        registrationBean.setFilter(filter);
+        registrationBean.addUrlPatterns("/onlinePreview");
+        return registrationBean;
+    }
+
+    @Bean
+    public FilterRegistrationBean getArtifactFetchFilter() throws IOException {
+        ArtifactFetchFilter filter = new ArtifactFetchFilter(fileDir, artifactCache, staticResourceNames());
+        FilterRegistrationBean registrationBean = new FilterRegistrationBean();
+        registrationBean.setFilter(filter);
+        // 在预压缩和静态资源处理之前取回文件
+        registrationBean.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registrationBean;
+    }
+
+    /**
+     * classpath中静态资源的首级目录和文件名(js、css、images等)
+     * @return
+     * @throws IOException
+     */
+    static Set<String> staticResourceNames() throws IOException {
+        Set<String> names = new HashSet<>();
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        for (String location : STATIC_LOCATIONS) {
+            for (Resource resource : resolver.getResources("classpath*:/" + location + "*")) {
+                // jar中的目录以/结尾
+                String path = StringUtils.trimTrailingCharacter(resource.getURL().getPath(), '/');
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    @Bean
+    public FilterRegistrationBean getPrecompressedResourceFilter(){
+        PrecompressedResourceFilter filter = new PrecompressedResourceFilter(fileDir, previewMetrics);
+        FilterRegistrationBean registrationBean = new FilterRegistrationBean();
+        registrationBean.setFilter(filter);
+        registrationBean.addUrlPatterns("*.html", "*.htm", "*.txt");
+        return registrationBean;
+    }
 }
@@ -0,0 +1,140 @@
+package com.yudianbank.filters;
+
+import com.yudianbank.cluster.PeerRouter;
+import org.springframework.cloud.client.ServiceInstance;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+/**
+ * onlinePreview请求交给文件的归属节点处理(见PeerRouter)
+ * <p>
+ *     转发的请求带上FORWARDED_HEADER，归属节点直接处理，不会再次转发；
+ *     只有连接归属节点失败时才由本节点处理并暂时把它移出节点列表；已连接但读取超时说明归属节点仍在转换，
+ *     返回504而不在本节点重复转换，读取出错返回502。
+ *     页面中引用的转换结果由浏览器经负载均衡访问，本地没有时由ArtifactFetchFilter从共享存储取回。
+ * </p>
+ *
+ * @author yudian-it
+ */
+public class PeerAffinityFilter implements Filter {
+
+    static final String FORWARDED_HEADER = "X-Preview-Forwarded";
+    private static final String[] REQUEST_HEADERS = {"Accept", "Accept-Language", "User-Agent", "Cookie"};
+    private static final String[] RESPONSE_HEADERS = {"Content-Type", "Content-Language", "Server-Timing", "Cache-Control"};
+
+    private final PeerRouter peerRouter;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public PeerAffinityFilter(PeerRouter peerRouter, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.peerRouter = peerRouter;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        ServiceInstance owner = null;
+        if ("GET".equals(httpRequest.getMethod()) && null == httpRequest.getHeader(FORWARDED_HEADER)) {
+            owner = peerRouter.ownerOf(httpRequest.getParameter("url"));
+        }
+        if (null == owner) {
+            peerRouter.count("local");
+            chain.doFilter(request, response);
+            return;
+        }
+        String target = owner.getUri() + httpRequest.getRequestURI()
+                + (null == httpRequest.getQueryString() ? "" : "?" + httpRequest.getQueryString());
+        if (PeerRouter.MODE_REDIRECT.equals(peerRouter.mode())) {
+            peerRouter.count("redirect");
+            httpResponse.sendRedirect(target);
+            return;
+        }
+        String result = forward(target, httpRequest, httpResponse);
+        if (null != result) {
+            peerRouter.count(result);
+            return;
+        }
+        peerRouter.suspect(owner);
+        peerRouter.count("fallback");
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * 转发到归属节点
+     * @return 转发结果(forward/timeout/error)，连接归属节点失败时返回null(尚未写入响应)
+     */
+    private String forward(String target, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(target).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestProperty(FORWARDED_HEADER, "1");
+        for (String name : REQUEST_HEADERS) {
+            String value = request.getHeader(name);
+            if (null != value) {
+                connection.setRequestProperty(name, value);
+            }
+        }
+        try {
+            connection.connect();
+        } catch (IOException e) {
+            connection.disconnect();
+            return null;
+        }
+        int status;
+        try {
+            status = connection.getResponseCode();
+        } catch (SocketTimeoutException e) {
+            connection.disconnect();
+            response.sendError(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+            return "timeout";
+        } catch (IOException e) {
+            connection.disconnect();
+            response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+            return "error";
+        }
+        try {
+            response.setStatus(status);
+            for (String name : RESPONSE_HEADERS) {
+                String value = connection.getHeaderField(name);
+                if (null != value) {
+                    response.setHeader(name, value);
+                }
+            }
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (null != in) {
+                try (InputStream body = in) {
+                    OutputStream out = response.getOutputStream();
+                    byte[] buffer = new byte[8192];
+                    int len;
+                    while (-1 != (len = body.read(buffer))) {
+                        out.write(buffer, 0, len);
+                    }
+                }
+            }
+            return "forward";
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void destroy() {
+
+    }
+}
@@ -0,0 +1,141 @@
+package com.yudianbank.filters;
+
+import com.yudianbank.utils.CompressedSidecarWriter;
+import com.yudianbank.utils.PreviewMetrics;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * file.dir下的文件如果有预压缩副本(.br/.gz)，并且浏览器支持对应编码，直接返回副本
+ *
+ * @author yudian-it
+ */
+public class PrecompressedResourceFilter implements Filter {
+
+    private final String fileDir;
+    private final PreviewMetrics previewMetrics;
+    private ServletContext servletContext;
+
+    public PrecompressedResourceFilter(String fileDir, PreviewMetrics previewMetrics) {
+        this.fileDir = fileDir;
+        this.previewMetrics = previewMetrics;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        servletContext = filterConfig.getServletContext();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String method = httpRequest.getMethod();
+        String path = httpRequest.getServletPath();
+        if (!("GET".equals(method) || "HEAD".equals(method)) || null == path || path.contains("..")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        File original = new File(fileDir, path);
+        if (!original.isFile()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String acceptEncoding = httpRequest.getHeader("Accept-Encoding");
+        File sidecar = null;
+        String encoding = null;
+        if (accepts(acceptEncoding, "br")) {
+            sidecar = freshSidecar(original, CompressedSidecarWriter.BROTLI_SUFFIX);
+            encoding = "br";
+        }
+        if (null == sidecar && accepts(acceptEncoding, "gzip")) {
+            sidecar = freshSidecar(original, CompressedSidecarWriter.GZIP_SUFFIX);
+            encoding = "gzip";
+        }
+        if (null == sidecar) {
+            chain.doFilter(request, response);
+            return;
+        }
+        httpResponse.setHeader("Vary", "Accept-Encoding");
+        long lastModified = original.lastModified() / 1000 * 1000;
+        long ifModifiedSince = httpRequest.getDateHeader("If-Modified-Since");
+        if (ifModifiedSince != -1 && lastModified <= ifModifiedSince) {
+            httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        String mimeType = servletContext.getMimeType(original.getName());
+        httpResponse.setContentType(null == mimeType ? "application/octet-stream" : mimeType);
+        httpResponse.setHeader("Content-Encoding", encoding);
+        httpResponse.setDateHeader("Last-Modified", lastModified);
+        httpResponse.setContentLengthLong(sidecar.length());
+        if ("GET".equals(method)) {
+            long start = previewMetrics.start();
+            Files.copy(sidecar.toPath(), httpResponse.getOutputStream());
+            previewMetrics.record(PreviewMetrics.FILE_SERVE, start, "kind", "precompressed", "encoding", encoding);
+        }
+    }
+
+    /**
+     * 浏览器是否接受该编码：按逗号拆分Accept-Encoding，q=0表示不接受，没有单独列出时按*处理
+     * @param acceptEncoding 请求头，可以为null
+     * @param coding 编码，如br、gzip
+     * @return
+     */
+    static boolean accepts(String acceptEncoding, String coding) {
+        if (null == acceptEncoding) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.split(";");
+            String name = parts[0].trim().toLowerCase();
+            if (!name.equals(coding) && !"*".equals(name)) {
+                continue;
+            }
+            boolean accepted = qualityOf(parts) > 0;
+            if (name.equals(coding)) {
+                return accepted;
+            }
+            wildcard = accepted;
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    private static double qualityOf(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim().toLowerCase();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * 获取不早于原文件的压缩副本
+     * @param original
+     * @param suffix
+     * @return 不存在或已过期时返回null
+     */
+    private File freshSidecar(File original, String suffix) {
+        File sidecar = new File(original.getPath() + suffix);
+        if (sidecar.isFile() && sidecar.lastModified() >= original.lastModified()) {
+            return sidecar;
+        }
+        return null;
+    }
+
+    @Override
+    public void destroy() {
+
+    }
+}
@@ -0,0 +1,19 @@
+package com.yudianbank.handler;
+
+/**
+ * 预览处理器的缓存方式
+ */
+public enum CachePolicy {
+    /**
+     * 不缓存，浏览器直接访问源地址
+     */
+    NONE,
+    /**
+     * 缓存下载的源文件
+     */
+    SOURCE,
+    /**
+     * 缓存转换后的结果
+     */
+    CONVERTED
+}
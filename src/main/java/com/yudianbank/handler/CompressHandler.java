@@ -0,0 +1,88 @@
+package com.yudianbank.handler;
+
+import com.google.common.collect.ImmutableSet;
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.utils.FileUtils;
+import com.yudianbank.utils.PreviewPipeline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.ui.Model;
+
+import javax.annotation.PostConstruct;
+import java.util.Set;
+
+/**
+ * 压缩文件预览(文件列表)
+ * <p>
+ *     注：docx/xlsx等文件同样以PK开头，没有后缀时会按zip识别。
+ * </p>
+ */
+@Component
+public class CompressHandler implements PreviewHandler {
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    PreviewPipeline previewPipeline;
+
+    private Set<String> extensions;
+
+    @PostConstruct
+    public void init() {
+        extensions = ImmutableSet.copyOf(fileUtils.listArchiveTypes());
+    }
+
+    @Override
+    public String type() {
+        return "compress";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return extensions;
+    }
+
+    @Override
+    public String sniff(byte[] header, int length) {
+        if (PreviewHandler.startsWith(header, length, 'P', 'K', 0x03, 0x04)) {
+            return "zip";
+        }
+        if (PreviewHandler.startsWith(header, length, 'R', 'a', 'r', '!', 0x1A, 0x07)) {
+            return "rar";
+        }
+        return null;
+    }
+
+    @Override
+    public CachePolicy cachePolicy() {
+        return CachePolicy.CONVERTED;
+    }
+
+    @Override
+    public String cacheKey(PreviewRequest request) {
+        return request.getFileName();
+    }
+
+    @Override
+    public String preview(PreviewRequest request, Model model) {
+        // 抽取文件并返回文件列表
+        ReturnResponse<String> response = prepare(request);
+        if (0 != response.getCode()) {
+            model.addAttribute("msg", response.getMsg());
+            return "fileNotSupported";
+        }
+        String fileTree = response.getContent();
+        System.out.println("返回文件tree》》》》》》》》》》》》》》》》》》》");
+        if (null != fileTree) {
+            model.addAttribute("fileTree",fileTree);
+            return "compress";
+        }else {
+            model.addAttribute("msg", "压缩文件类型不受支持，尝试在压缩的时候选择RAR4格式");
+            return "fileNotSupported";
+        }
+    }
+
+    @Override
+    public ReturnResponse<String> prepare(PreviewRequest request) {
+        return previewPipeline.prepareCompress(request.getDecodedUrl(), request.getSuffix(), request.getFileName(), request.getNeedEncode());
+    }
+}
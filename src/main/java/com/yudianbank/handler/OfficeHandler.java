@@ -0,0 +1,127 @@
+package com.yudianbank.handler;
+
+import com.google.common.collect.ImmutableSet;
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.utils.FileUtils;
+import com.yudianbank.utils.PreviewPipeline;
+import com.yudianbank.utils.SlideRenderer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.ui.Model;
+
+import javax.annotation.PostConstruct;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * office文件预览(转换为pdf，excel转换为html，ppt/pptx按页渲染为图片)
+ */
+@Component
+public class OfficeHandler implements PreviewHandler {
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    PreviewPipeline previewPipeline;
+    /**
+     * 同时进行的office预览请求上限，0表示不限制
+     */
+    @Value("${preview.office.max.concurrency:0}")
+    int maxConcurrency;
+    @Autowired
+    SlideRenderer slideRenderer;
+    /**
+     * ppt/pptx按页渲染为图片预览，不经过office转换
+     */
+    @Value("${preview.slides.enabled:true}")
+    boolean slidesEnabled;
+
+    private Set<String> extensions;
+
+    @PostConstruct
+    public void init() {
+        extensions = ImmutableSet.copyOf(fileUtils.listOfficeTypes());
+    }
+
+    @Override
+    public String type() {
+        return "office";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return extensions;
+    }
+
+    @Override
+    public CachePolicy cachePolicy() {
+        return CachePolicy.CONVERTED;
+    }
+
+    @Override
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public boolean usesOffice(PreviewRequest request) {
+        return !useSlides(request);
+    }
+
+    @Override
+    public String preview(PreviewRequest request, Model model) {
+        if (useSlides(request)) {
+            ReturnResponse<SlideRenderer.SlideDeck> deck = openSlides(request);
+            if (0 == deck.getCode()) {
+                model.addAttribute("slideDeck", deck.getContent());
+                return "slides";
+            }
+            // 渲染失败时改用office转换
+            System.out.println("幻灯片渲染失败，改用office转换：" + deck.getMsg());
+        }
+        ReturnResponse<String> response = convert(request, true);
+        if (0 != response.getCode()) {
+            model.addAttribute("msg", response.getMsg());
+            return "fileNotSupported";
+        }
+        if (PreviewPipeline.PARTIAL.equals(response.getMsg())) {
+            // 先显示前几页，页面轮询到完整文件后替换
+            model.addAttribute("pdfUrl", PreviewPipeline.partialNameOf(response.getContent()));
+            model.addAttribute("fullPdfName", response.getContent());
+            return "pdf";
+        }
+        model.addAttribute("pdfUrl", response.getContent());
+        return "pdf";
+    }
+
+    @Override
+    public String cacheKey(PreviewRequest request) {
+        return useSlides(request) ? null
+                : PreviewPipeline.officeOutputName(request.getFileName(), request.getSuffix(), request.getSelectDay());
+    }
+
+    @Override
+    public ReturnResponse<String> prepare(PreviewRequest request) {
+        if (useSlides(request)) {
+            ReturnResponse<SlideRenderer.SlideDeck> deck = openSlides(request);
+            if (0 == deck.getCode()) {
+                boolean rendered = deck.getContent().await(10, TimeUnit.MINUTES);
+                return new ReturnResponse<>(rendered ? 0 : 1, rendered ? "SUCCESS" : "幻灯片渲染失败", null);
+            }
+        }
+        return convert(request, false);
+    }
+
+    private boolean useSlides(PreviewRequest request) {
+        return slidesEnabled && slideRenderer.supports(request.getSuffix());
+    }
+
+    private ReturnResponse<SlideRenderer.SlideDeck> openSlides(PreviewRequest request) {
+        return slideRenderer.open(request.getDecodedUrl(), request.getSuffix(), request.getFileName(), request.getNeedEncode());
+    }
+
+    private ReturnResponse<String> convert(PreviewRequest request, boolean progressive) {
+        return previewPipeline.prepareOffice(request.getDecodedUrl(), request.getSuffix(), request.getFileName(),
+                request.getSelectDay(), request.getNeedEncode(), progressive);
+    }
+}
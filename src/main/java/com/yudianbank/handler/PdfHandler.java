@@ -0,0 +1,42 @@
+package com.yudianbank.handler;
+
+import com.google.common.collect.ImmutableSet;
+import org.springframework.stereotype.Component;
+import org.springframework.ui.Model;
+
+import java.util.Set;
+
+/**
+ * pdf预览(浏览器直接加载源地址)
+ */
+@Component
+public class PdfHandler implements PreviewHandler {
+
+    private static final Set<String> EXTENSIONS = ImmutableSet.of("pdf");
+
+    @Override
+    public String type() {
+        return "pdf";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return EXTENSIONS;
+    }
+
+    @Override
+    public String sniff(byte[] header, int length) {
+        return PreviewHandler.startsWith(header, length, '%', 'P', 'D', 'F') ? "pdf" : null;
+    }
+
+    @Override
+    public CachePolicy cachePolicy() {
+        return CachePolicy.NONE;
+    }
+
+    @Override
+    public String preview(PreviewRequest request, Model model) {
+        model.addAttribute("pdfUrl", request.getUrl());
+        return "pdf";
+    }
+}
@@ -0,0 +1,81 @@
+package com.yudianbank.handler;
+
+import com.google.common.collect.ImmutableSet;
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.utils.FileUtils;
+import com.yudianbank.utils.ImageTileCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.ui.Model;
+
+import javax.annotation.PostConstruct;
+import java.util.Set;
+
+/**
+ * 图片预览(超大图片使用瓦片方式)
+ */
+@Component
+public class PictureHandler implements PreviewHandler {
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    ImageTileCache imageTileCache;
+
+    private Set<String> extensions;
+
+    @PostConstruct
+    public void init() {
+        extensions = ImmutableSet.copyOf(fileUtils.listPictureTypes());
+    }
+
+    @Override
+    public String type() {
+        return "picture";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return extensions;
+    }
+
+    @Override
+    public String sniff(byte[] header, int length) {
+        if (PreviewHandler.startsWith(header, length, 0xFF, 0xD8, 0xFF)) {
+            return "jpg";
+        }
+        if (PreviewHandler.startsWith(header, length, 0x89, 'P', 'N', 'G')) {
+            return "png";
+        }
+        if (PreviewHandler.startsWith(header, length, 'G', 'I', 'F', '8')) {
+            return "gif";
+        }
+        if (PreviewHandler.startsWith(header, length, 'B', 'M')) {
+            return "bmp";
+        }
+        return null;
+    }
+
+    @Override
+    public CachePolicy cachePolicy() {
+        return CachePolicy.SOURCE;
+    }
+
+    @Override
+    public String preview(PreviewRequest request, Model model) {
+        model.addAttribute("imgurl", request.getUrl());
+        model.addAttribute("needEncode", request.getNeedEncode());
+        // 超大图片使用瓦片方式预览，只加载可见区域
+        ReturnResponse<ImageTileCache.TiledImage> described = imageTileCache.describe(request.getDecodedUrl(), request.getSuffix(), request.getNeedEncode());
+        if (0 == described.getCode() && imageTileCache.needTiles(described.getContent())) {
+            model.addAttribute("tiledImage", described.getContent());
+            return "pictureTiles";
+        }
+        return "picture";
+    }
+
+    @Override
+    public ReturnResponse<String> prepare(PreviewRequest request) {
+        ReturnResponse<ImageTileCache.TiledImage> described = imageTileCache.describe(request.getDecodedUrl(), request.getSuffix(), request.getNeedEncode());
+        return new ReturnResponse<>(described.getCode(), described.getMsg(), null);
+    }
+}
@@ -0,0 +1,105 @@
+package com.yudianbank.handler;
+
+import com.yudianbank.param.ReturnResponse;
+import org.springframework.ui.Model;
+
+import java.util.Set;
+
+/**
+ * 预览处理器：一类文件的预览方式
+ * <p>
+ *     实现类注册为spring bean即可生效，由PreviewHandlerRegistry按后缀(或文件头)分发，不需要修改controller。
+ * </p>
+ */
+public interface PreviewHandler {
+
+    /**
+     * 类型名，用于日志和监控
+     * @return
+     */
+    String type();
+
+    /**
+     * 支持的文件后缀(小写)
+     * @return
+     */
+    Set<String> extensions();
+
+    /**
+     * 根据文件头判断是否支持(url中没有可识别的后缀时使用)
+     * @param header 文件开头的字节
+     * @param length header中的有效长度
+     * @return 支持时返回对应的后缀，否则返回null
+     */
+    default String sniff(byte[] header, int length) {
+        return null;
+    }
+
+    /**
+     * 缓存方式
+     * @return
+     */
+    CachePolicy cachePolicy();
+
+    /**
+     * 在转换文件缓存中登记的key，用于批量判断是否已缓存
+     * @param request
+     * @return 不在转换文件缓存中登记时返回null
+     */
+    default String cacheKey(PreviewRequest request) {
+        return null;
+    }
+
+    /**
+     * 同时处理的最大请求数，0表示不限制
+     * @return
+     */
+    default int maxConcurrency() {
+        return 0;
+    }
+
+    /**
+     * 是否需要office转换(预转换只在有空闲office进程时开始，见PreviewWarmUp)
+     * @param request
+     * @return
+     */
+    default boolean usesOffice(PreviewRequest request) {
+        return false;
+    }
+
+    /**
+     * 预览：准备文件并填充页面数据
+     * @param request
+     * @param model
+     * @return 视图名
+     */
+    String preview(PreviewRequest request, Model model);
+
+    /**
+     * 预转换：只下载/转换并写入缓存，不渲染页面
+     * @param request
+     * @return code为0表示成功
+     */
+    default ReturnResponse<String> prepare(PreviewRequest request) {
+        return new ReturnResponse<>(0, "该类型文件不需要预转换", null);
+    }
+
+    /**
+     * 判断字节数组是否以指定的魔数开头
+     * @param header
+     * @param length
+     * @param magic
+     * @return
+     */
+    static boolean startsWith(byte[] header, int length, int... magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,216 @@
+package com.yudianbank.handler;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.utils.DownloadUtils;
+import com.yudianbank.utils.FileUtils;
+import com.yudianbank.utils.PreviewMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.ui.Model;
+
+import javax.annotation.PostConstruct;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 预览处理器注册表
+ * <p>
+ *     启动时把所有PreviewHandler的后缀汇总为一个不可变的有序map(忽略大小写)，分发时只做一次查找，不再逐个类型列表比较；
+ *     url中的后缀无法识别时读取文件开头的字节，由各处理器按魔数识别。
+ *     处理器声明了并发上限时，超过上限的请求等待一段时间后返回繁忙提示。
+ * </p>
+ */
+@Component
+public class PreviewHandlerRegistry {
+
+    private static final String NOT_SUPPORTED = "系统还不支持该格式文件的在线预览，" + "如有需要请按下方显示的邮箱地址联系系统维护人员";
+
+    @Autowired
+    List<PreviewHandler> handlers;
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    DownloadUtils downloadUtils;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    /**
+     * url后缀无法识别时是否按文件头识别
+     */
+    @Value("${preview.sniff.enabled:true}")
+    boolean sniffEnabled;
+    /**
+     * 读取文件头的超时时间(毫秒)
+     */
+    @Value("${preview.sniff.timeout.ms:5000}")
+    int sniffTimeoutMillis;
+    /**
+     * 超过处理器并发上限时的等待时间(毫秒)
+     */
+    @Value("${preview.handler.acquire.timeout.ms:30000}")
+    long acquireTimeoutMillis;
+
+    private ImmutableSortedMap<String, PreviewHandler> byExtension;
+    private Map<PreviewHandler, Semaphore> limits;
+
+    @PostConstruct
+    public void init() {
+        Map<String, PreviewHandler> extensions = new HashMap<>();
+        Map<PreviewHandler, Semaphore> semaphores = new IdentityHashMap<>();
+        for (PreviewHandler handler : handlers) {
+            for (String extension : handler.extensions()) {
+                PreviewHandler previous = extensions.put(extension.toLowerCase(), handler);
+                if (null != previous && previous != handler) {
+                    throw new IllegalStateException("文件后缀[" + extension + "]同时注册在" + previous.type() + "和" + handler.type());
+                }
+            }
+            if (handler.maxConcurrency() > 0) {
+                semaphores.put(handler, new Semaphore(handler.maxConcurrency(), true));
+            }
+        }
+        byExtension = ImmutableSortedMap.copyOf(extensions, String.CASE_INSENSITIVE_ORDER);
+        limits = semaphores.isEmpty() ? ImmutableMap.of() : semaphores;
+    }
+
+    /**
+     * 解析onlinePreview的参数
+     * @param url
+     * @param needEncode
+     * @return
+     * @throws UnsupportedEncodingException
+     */
+    public PreviewRequest parse(String url, String needEncode) throws UnsupportedEncodingException {
+        long parseStart = previewMetrics.start();
+        // 路径转码
+        String decodedUrl = URLDecoder.decode(url, "utf-8");
+        String suffix = suffixFromUrl(url);
+        String fileName = fileUtils.getFileNameFromURL(decodedUrl);
+        String selectDay = fileUtils.getFileSelectDay(decodedUrl);
+        PreviewHandler handler = byExtension.get(suffix);
+        previewMetrics.record(PreviewMetrics.URL_PARSE, parseStart, "type", null == handler ? suffix : handler.type());
+        return new PreviewRequest(url, decodedUrl, suffix, fileName, selectDay, needEncode);
+    }
+
+    /**
+     * 查看文件类型(防止参数中存在.点号或者其他特殊字符，所以先抽取文件名，然后再获取文件类型)
+     * @param url
+     * @return
+     */
+    public String suffixFromUrl(String url) {
+        String fileName ="";
+        Map<String, String> stringStringMap =fileUtils.urlSplit(url);
+        if(stringStringMap.containsKey("fileName")){
+            fileName =  stringStringMap.get("fileName");
+        }else {
+            fileName = url.substring(url.lastIndexOf("/") + 1);
+        }
+        return fileName.substring(fileName.lastIndexOf(".") + 1);
+    }
+
+    /**
+     * 按后缀查找处理器
+     * @param request
+     * @return 不支持时返回null
+     */
+    public PreviewHandler handlerFor(PreviewRequest request) {
+        return byExtension.get(request.getSuffix());
+    }
+
+    /**
+     * 确定请求的文件格式：后缀可识别时直接返回，否则按文件头识别
+     * @param request
+     * @return 后缀替换为识别结果的请求，无法识别时返回null
+     */
+    public PreviewRequest identify(PreviewRequest request) {
+        if (null != handlerFor(request)) {
+            return request;
+        }
+        if (!sniffEnabled) {
+            return null;
+        }
+        byte[] header = new byte[16];
+        int length = downloadUtils.readHead(request.getDecodedUrl(), request.getNeedEncode(), header, sniffTimeoutMillis);
+        if (length <= 0) {
+            return null;
+        }
+        for (PreviewHandler handler : handlers) {
+            String suffix = handler.sniff(header, length);
+            if (null != suffix) {
+                System.out.println("按文件头识别为" + suffix + "：" + request.getDecodedUrl());
+                return request.withSuffix(suffix);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 预览
+     * @param request identify的返回值
+     * @param model
+     * @return 视图名
+     */
+    public String preview(PreviewRequest request, Model model) {
+        PreviewHandler handler = handlerFor(request);
+        if (null == handler) {
+            model.addAttribute("msg", NOT_SUPPORTED);
+            return "fileNotSupported";
+        }
+        Semaphore semaphore = limits.get(handler);
+        if (!acquire(semaphore)) {
+            model.addAttribute("msg", "系统繁忙，请稍后再试");
+            return "fileNotSupported";
+        }
+        try {
+            return handler.preview(request, model);
+        } finally {
+            release(semaphore);
+        }
+    }
+
+    /**
+     * 预转换
+     * @param request identify的返回值
+     * @return code为0表示成功
+     */
+    public ReturnResponse<String> prepare(PreviewRequest request) {
+        PreviewHandler handler = handlerFor(request);
+        if (null == handler) {
+            return new ReturnResponse<>(1, NOT_SUPPORTED, null);
+        }
+        Semaphore semaphore = limits.get(handler);
+        if (!acquire(semaphore)) {
+            return new ReturnResponse<>(1, "系统繁忙，请稍后再试", null);
+        }
+        try {
+            return handler.prepare(request);
+        } finally {
+            release(semaphore);
+        }
+    }
+
+    private boolean acquire(Semaphore semaphore) {
+        if (null == semaphore) {
+            return true;
+        }
+        try {
+            return semaphore.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void release(Semaphore semaphore) {
+        if (null != semaphore) {
+            semaphore.release();
+        }
+    }
+}
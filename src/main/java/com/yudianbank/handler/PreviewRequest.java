@@ -0,0 +1,64 @@
+package com.yudianbank.handler;
+
+/**
+ * 一次预览请求解析后的参数
+ */
+public class PreviewRequest {
+    /**
+     * onlinePreview收到的url参数(未再次解码)
+     */
+    private final String url;
+    /**
+     * 解码后的文件地址
+     */
+    private final String decodedUrl;
+    /**
+     * 文件后缀(内容识别时为识别出的格式)
+     */
+    private final String suffix;
+    private final String fileName;
+    private final String selectDay;
+    private final String needEncode;
+
+    public PreviewRequest(String url, String decodedUrl, String suffix, String fileName, String selectDay, String needEncode) {
+        this.url = url;
+        this.decodedUrl = decodedUrl;
+        this.suffix = suffix;
+        this.fileName = fileName;
+        this.selectDay = selectDay;
+        this.needEncode = needEncode;
+    }
+
+    /**
+     * 替换后缀(内容识别出的格式与url中的后缀不一致时)
+     * @param suffix
+     * @return
+     */
+    public PreviewRequest withSuffix(String suffix) {
+        return new PreviewRequest(url, decodedUrl, suffix, fileName, selectDay, needEncode);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getDecodedUrl() {
+        return decodedUrl;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getSelectDay() {
+        return selectDay;
+    }
+
+    public String getNeedEncode() {
+        return needEncode;
+    }
+}
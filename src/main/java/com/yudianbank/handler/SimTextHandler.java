@@ -0,0 +1,63 @@
+package com.yudianbank.handler;
+
+import com.google.common.collect.ImmutableSet;
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.utils.PreviewPipeline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.ui.Model;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 类文本文件预览(分页读取)
+ */
+@Component
+public class SimTextHandler implements PreviewHandler {
+    @Autowired
+    PreviewPipeline previewPipeline;
+    @Value("${simText}")
+    String[] simText;
+
+    private Set<String> extensions;
+
+    @PostConstruct
+    public void init() {
+        extensions = ImmutableSet.copyOf(Arrays.stream(simText).map(String::toLowerCase).collect(Collectors.toList()));
+    }
+
+    @Override
+    public String type() {
+        return "simText";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return extensions;
+    }
+
+    @Override
+    public CachePolicy cachePolicy() {
+        return CachePolicy.SOURCE;
+    }
+
+    @Override
+    public String preview(PreviewRequest request, Model model) {
+        ReturnResponse<String> response = prepare(request);
+        if (0 != response.getCode()) {
+            model.addAttribute("msg", response.getMsg());
+            return "fileNotSupported";
+        }
+        model.addAttribute("ordinaryUrl", response.getMsg());
+        return "txt";
+    }
+
+    @Override
+    public ReturnResponse<String> prepare(PreviewRequest request) {
+        return previewPipeline.prepareSimText(request.getDecodedUrl(), request.getFileName(), request.getNeedEncode());
+    }
+}
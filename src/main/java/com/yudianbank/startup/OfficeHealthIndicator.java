@@ -0,0 +1,31 @@
+package com.yudianbank.startup;
+
+import com.yudianbank.utils.ConverterUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * office进程状态(/actuator/health中的office)
+ * <p>
+ *     office在后台启动，启动完成前为OUT_OF_SERVICE，不应接收转换流量。
+ * </p>
+ */
+@Component
+public class OfficeHealthIndicator implements HealthIndicator {
+    @Autowired
+    ConverterUtils converterUtils;
+
+    @Override
+    public Health health() {
+        if (!converterUtils.isOfficeStarted()) {
+            return Health.outOfService().withDetail("state", "starting").build();
+        }
+        if (!converterUtils.isOfficeRunning()) {
+            return Health.down().withDetail("state", "stopped")
+                    .withDetail("stopped", converterUtils.getStoppedOfficePorts()).build();
+        }
+        return Health.up().withDetail("ports", converterUtils.getOfficePorts()).build();
+    }
+}
@@ -0,0 +1,38 @@
+package com.yudianbank.startup;
+
+import com.yudianbank.config.LazyRedissonClient;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis连接状态(/actuator/health中的redisson)
+ * <p>
+ *     redisson在后台连接，连接完成前为OUT_OF_SERVICE。
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "converted.index.type", havingValue = "redis", matchIfMissing = true)
+public class RedissonHealthIndicator implements HealthIndicator {
+    @Autowired
+    RedissonClient redissonClient;
+
+    @Override
+    public Health health() {
+        CompletableFuture<RedissonClient> connecting = LazyRedissonClient.connecting(redissonClient);
+        if (!connecting.isDone()) {
+            return Health.outOfService().withDetail("state", "connecting").build();
+        }
+        if (connecting.isCompletedExceptionally()) {
+            return Health.down().withDetail("state", "failed").build();
+        }
+        boolean reachable = redissonClient.getNodesGroup().pingAll(1, TimeUnit.SECONDS);
+        return (reachable ? Health.up() : Health.down()).build();
+    }
+}
@@ -0,0 +1,114 @@
+package com.yudianbank.startup;
+
+import com.yudianbank.config.LazyRedissonClient;
+import com.yudianbank.utils.ConverterUtils;
+import com.yudianbank.utils.PreviewMetrics;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.cloud.alibaba.nacos.registry.NacosRegistration;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.client.serviceregistry.ServiceRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 启动过程
+ * <p>
+ *     office和redis在后台并行启动，spring上下文不再等待它们；两者都可用后才注册到nacos，
+ *     避免实例在不能转换时就收到流量(注册被推迟期间nacos的自动注册是关闭的)。
+ *     不使用redis时(converted.index.type=embedded)只等待office。
+ *     各阶段完成时距JVM启动的时间记录在preview.startup.seconds中。
+ * </p>
+ */
+@Component
+public class StartupCoordinator {
+    @Autowired
+    ConverterUtils converterUtils;
+    @Autowired(required = false)
+    RedissonClient redissonClient;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Autowired(required = false)
+    NacosRegistration registration;
+    @Autowired(required = false)
+    ServiceRegistry<Registration> serviceRegistry;
+    /**
+     * office和redis可用后才注册到nacos
+     */
+    @Value("${startup.register.when.ready:true}")
+    boolean registerWhenReady;
+
+    private volatile int port = -1;
+    private volatile boolean ready;
+
+    @PostConstruct
+    public void init() {
+        if (registerWhenReady && null != registration && null != serviceRegistry) {
+            // 关闭web容器启动时的自动注册，由本类在就绪后注册
+            registration.getNacosDiscoveryProperties().setRegisterEnabled(false);
+        }
+        stage("office", converterUtils.officeStarted());
+        if (null != redissonClient) {
+            stage("redis", LazyRedissonClient.connecting(redissonClient));
+        }
+    }
+
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        port = event.getWebServer().getPort();
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        record("context");
+        checkReady();
+    }
+
+    /**
+     * 检查office和redis是否都已可用
+     */
+    @Scheduled(fixedDelayString = "${startup.ready.check.interval.ms:1000}")
+    public synchronized void checkReady() {
+        if (ready || port < 0 || !converterUtils.isOfficeRunning()) {
+            return;
+        }
+        if (null != redissonClient) {
+            CompletableFuture<RedissonClient> connecting = LazyRedissonClient.connecting(redissonClient);
+            if (!connecting.isDone() || connecting.isCompletedExceptionally()) {
+                return;
+            }
+        }
+        ready = true;
+        record("ready");
+        if (registerWhenReady && null != registration && null != serviceRegistry) {
+            registration.getNacosDiscoveryProperties().setRegisterEnabled(true);
+            if (registration.getPort() < 0) {
+                registration.setPort(port);
+            }
+            serviceRegistry.register(registration);
+            System.out.println("office和redis已就绪，注册到nacos");
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private void stage(String stage, CompletableFuture<?> future) {
+        future.thenRun(() -> record(stage));
+    }
+
+    private void record(String stage) {
+        double seconds = ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+        System.out.println("启动阶段" + stage + "完成，距JVM启动" + seconds + "s");
+        previewMetrics.gauge("preview.startup.seconds", () -> seconds, "stage", stage);
+    }
+}
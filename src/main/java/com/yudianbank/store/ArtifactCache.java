@@ -0,0 +1,200 @@
+package com.yudianbank.store;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.yudianbank.utils.CompressedSidecarWriter;
+import com.yudianbank.utils.KeyedLocks;
+import com.yudianbank.utils.PreviewMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * file.dir作为ArtifactStore的本地读缓存
+ * <p>
+ *     转换完成后先上传再登记到redis，其他节点命中redis缓存时本地没有文件就从存储取回，不再重复转换；
+ *     预压缩副本(.gz/.br)随原文件一起上传和取回。
+ *     存储中没有的路径短时间内不再重复请求(浏览器访问的静态资源大多不在存储中)。
+ *     上传失败时重试artifact.store.put.attempts次，仍失败时其他节点取不回该文件，需要重新转换。
+ * </p>
+ */
+@Component
+public class ArtifactCache {
+
+    private static final String[] SIDECAR_SUFFIXES = {CompressedSidecarWriter.GZIP_SUFFIX, CompressedSidecarWriter.BROTLI_SUFFIX};
+
+    @Autowired
+    ArtifactStore artifactStore;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Value("${file.dir}")
+    String fileDir;
+    /**
+     * 存储中不存在的路径多久之内不再查询(秒)
+     */
+    @Value("${artifact.store.miss.ttl.seconds:30}")
+    long missTtlSeconds;
+    /**
+     * 上传的尝试次数
+     */
+    @Value("${artifact.store.put.attempts:3}")
+    int putAttempts;
+    /**
+     * 上传失败后等待多久重试(毫秒)，每次重试加倍
+     */
+    @Value("${artifact.store.put.retry.ms:200}")
+    long putRetryMillis;
+
+    private final KeyedLocks fetching = new KeyedLocks();
+    private Cache<String, Boolean> misses;
+
+    @PostConstruct
+    public void init() {
+        misses = CacheBuilder.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(missTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        System.out.println("转换结果存储：" + artifactStore.type());
+    }
+
+    /**
+     * 是否需要上传和取回(非本机存储)
+     * @return
+     */
+    public boolean isShared() {
+        return !artifactStore.isLocal();
+    }
+
+    /**
+     * 上传file.dir下的文件及其预压缩副本，失败时重试
+     * @param absolutePath 文件绝对路径
+     * @return 是否上传成功，本机存储始终返回true
+     */
+    public boolean publish(String absolutePath) {
+        if (!isShared()) {
+            return true;
+        }
+        long backoff = putRetryMillis;
+        for (int attempt = 1; attempt <= Math.max(1, putAttempts); attempt++) {
+            if (put(absolutePath)) {
+                return true;
+            }
+            if (attempt < putAttempts) {
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                backoff *= 2;
+            }
+        }
+        System.out.println(absolutePath + "上传到" + artifactStore.type() + "存储失败，其他节点需要重新转换");
+        return false;
+    }
+
+    private boolean put(String absolutePath) {
+        String relativePath = relativePathOf(absolutePath);
+        long start = previewMetrics.start();
+        boolean success = false;
+        try {
+            artifactStore.put(relativePath, new File(absolutePath));
+            for (String suffix : SIDECAR_SUFFIXES) {
+                File sidecar = new File(absolutePath + suffix);
+                if (sidecar.isFile()) {
+                    artifactStore.put(relativePath + suffix, sidecar);
+                }
+            }
+            misses.invalidate(relativePath);
+            success = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            previewMetrics.record(PreviewMetrics.ARTIFACT_PUT, start, "store", artifactStore.type(), "result", success ? "success" : "error");
+        }
+        return success;
+    }
+
+    /**
+     * 确保文件在本地：本地没有时从存储取回
+     * @param relativePath file.dir下的相对路径
+     * @return 本地文件是否可用
+     */
+    public boolean ensureLocal(String relativePath) {
+        if (null == relativePath || relativePath.contains("..")) {
+            return false;
+        }
+        File local = new File(fileDir, relativePath);
+        if (local.isFile()) {
+            return true;
+        }
+        if (!isShared() || null != misses.getIfPresent(relativePath)) {
+            return false;
+        }
+        Object lock = fetching.acquire(relativePath);
+        try {
+            synchronized (lock) {
+                if (local.isFile()) {
+                    return true;
+                }
+                boolean found = fetch(relativePath, local);
+                previewMetrics.cacheAccess("artifact", found);
+                if (!found) {
+                    misses.put(relativePath, Boolean.TRUE);
+                }
+                return found;
+            }
+        } finally {
+            fetching.release(relativePath);
+        }
+    }
+
+    /**
+     * 从存储中删除文件及其预压缩副本
+     * @param relativePath file.dir下的相对路径
+     */
+    public void remove(String relativePath) {
+        if (!isShared()) {
+            return;
+        }
+        try {
+            artifactStore.delete(relativePath);
+            for (String suffix : SIDECAR_SUFFIXES) {
+                artifactStore.delete(relativePath + suffix);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean fetch(String relativePath, File local) {
+        long start = previewMetrics.start();
+        String result = "miss";
+        try {
+            if (!artifactStore.fetch(relativePath, local)) {
+                return false;
+            }
+            result = "hit";
+            // 副本在原文件之后写入，修改时间不早于原文件，PrecompressedResourceFilter才会使用
+            for (String suffix : SIDECAR_SUFFIXES) {
+                artifactStore.fetch(relativePath + suffix, new File(local.getPath() + suffix));
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            result = "error";
+            return local.isFile();
+        } finally {
+            previewMetrics.record(PreviewMetrics.ARTIFACT_FETCH, start, "store", artifactStore.type(), "result", result);
+        }
+    }
+
+    private String relativePathOf(String absolutePath) {
+        return absolutePath.startsWith(fileDir) ? absolutePath.substring(fileDir.length()) : new File(absolutePath).getName();
+    }
+}
@@ -0,0 +1,53 @@
+package com.yudianbank.store;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 转换结果的存储
+ * <p>
+ *     redis中登记的是file.dir下的相对路径，集群中每个节点都可能命中缓存，
+ *     文件写入本地后同时保存到这里，其他节点本地没有时从这里取回(见ArtifactCache)。
+ *     通过artifact.store.type选择实现：local(只在本机，默认)、shared(共享目录)、s3(兼容S3的对象存储)。
+ * </p>
+ */
+public interface ArtifactStore {
+
+    /**
+     * 存储类型
+     * @return
+     */
+    String type();
+
+    /**
+     * 是否只在本机(本机存储不需要上传和取回)
+     * @return
+     */
+    default boolean isLocal() {
+        return false;
+    }
+
+    /**
+     * 保存文件
+     * @param relativePath file.dir下的相对路径
+     * @param file 本地文件
+     * @throws IOException
+     */
+    void put(String relativePath, File file) throws IOException;
+
+    /**
+     * 取回文件
+     * @param relativePath file.dir下的相对路径
+     * @param target 写入的本地文件
+     * @return 存储中不存在时返回false
+     * @throws IOException
+     */
+    boolean fetch(String relativePath, File target) throws IOException;
+
+    /**
+     * 删除文件，不存在时忽略
+     * @param relativePath file.dir下的相对路径
+     * @throws IOException
+     */
+    void delete(String relativePath) throws IOException;
+}
@@ -0,0 +1,37 @@
+package com.yudianbank.store;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+
+/**
+ * 只使用本机的file.dir(单节点部署)
+ */
+@Component
+@ConditionalOnProperty(name = "artifact.store.type", havingValue = "local", matchIfMissing = true)
+public class LocalArtifactStore implements ArtifactStore {
+
+    @Override
+    public String type() {
+        return "local";
+    }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+    @Override
+    public void put(String relativePath, File file) {
+    }
+
+    @Override
+    public boolean fetch(String relativePath, File target) {
+        return false;
+    }
+
+    @Override
+    public void delete(String relativePath) {
+    }
+}
@@ -0,0 +1,248 @@
+package com.yudianbank.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * 兼容S3的对象存储(aws s3、minio、ceph等)
+ * <p>
+ *     直接使用http接口和v4签名，不引入aws sdk；使用path-style地址(endpoint/bucket/key)，
+ *     本地开发和测试可以用minio代替(如artifact.store.s3.endpoint=http://127.0.0.1:9000)。
+ *     上传的内容不参与签名(UNSIGNED-PAYLOAD)，大文件不需要先读一遍计算摘要。
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "artifact.store.type", havingValue = "s3")
+public class S3ArtifactStore implements ArtifactStore {
+
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+
+    @Value("${artifact.store.s3.endpoint:http://127.0.0.1:9000}")
+    String endpoint;
+    @Value("${artifact.store.s3.bucket:preview}")
+    String bucket;
+    @Value("${artifact.store.s3.region:us-east-1}")
+    String region;
+    @Value("${artifact.store.s3.access-key:}")
+    String accessKey;
+    @Value("${artifact.store.s3.secret-key:}")
+    String secretKey;
+    /**
+     * 对象名前缀，多个环境共用一个bucket时区分
+     */
+    @Value("${artifact.store.s3.prefix:}")
+    String prefix;
+    @Value("${artifact.store.s3.timeout.ms:30000}")
+    int timeoutMillis;
+
+    @PostConstruct
+    public void init() {
+        if (endpoint.endsWith("/")) {
+            endpoint = endpoint.substring(0, endpoint.length() - 1);
+        }
+        if (!prefix.isEmpty() && !prefix.endsWith("/")) {
+            prefix = prefix + "/";
+        }
+    }
+
+    @Override
+    public String type() {
+        return "s3";
+    }
+
+    @Override
+    public void put(String relativePath, File file) throws IOException {
+        HttpURLConnection connection = open("PUT", relativePath);
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(file.length());
+        try {
+            try (OutputStream out = connection.getOutputStream()) {
+                Files.copy(file.toPath(), out);
+            }
+            int status = connection.getResponseCode();
+            if (status / 100 != 2) {
+                throw new IOException("上传失败(" + status + ")：" + relativePath);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public boolean fetch(String relativePath, File target) throws IOException {
+        HttpURLConnection connection = open("GET", relativePath);
+        try {
+            int status = connection.getResponseCode();
+            if (HttpURLConnection.HTTP_NOT_FOUND == status) {
+                return false;
+            }
+            if (status / 100 != 2) {
+                throw new IOException("下载失败(" + status + ")：" + relativePath);
+            }
+            File parent = target.getAbsoluteFile().getParentFile();
+            parent.mkdirs();
+            File temp = File.createTempFile(".artifact", ".tmp", parent);
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                temp.delete();
+            }
+            return true;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void delete(String relativePath) throws IOException {
+        HttpURLConnection connection = open("DELETE", relativePath);
+        try {
+            int status = connection.getResponseCode();
+            if (status / 100 != 2 && HttpURLConnection.HTTP_NOT_FOUND != status) {
+                throw new IOException("删除失败(" + status + ")：" + relativePath);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String method, String relativePath) throws IOException {
+        if (relativePath.contains("..")) {
+            throw new IOException("非法路径：" + relativePath);
+        }
+        String canonicalUri = "/" + encodePath(bucket) + "/" + encodePath(prefix + relativePath);
+        URL url = new URL(endpoint + canonicalUri);
+        String amzDate = amzDate(new Date());
+        SortedMap<String, String> headers = new TreeMap<>();
+        headers.put("host", hostHeader(url));
+        headers.put("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+        headers.put("x-amz-date", amzDate);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        connection.setRequestProperty("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+        connection.setRequestProperty("x-amz-date", amzDate);
+        connection.setRequestProperty("Authorization",
+                authorization(method, canonicalUri, headers, UNSIGNED_PAYLOAD, amzDate, region, accessKey, secretKey));
+        return connection;
+    }
+
+    /**
+     * 与HttpURLConnection自动添加的Host头一致：非默认端口时带端口
+     */
+    private static String hostHeader(URL url) {
+        if (-1 == url.getPort() || url.getPort() == url.getDefaultPort()) {
+            return url.getHost();
+        }
+        return url.getHost() + ":" + url.getPort();
+    }
+
+    /**
+     * v4签名的Authorization头
+     * @param method
+     * @param canonicalUri 已编码的路径
+     * @param headers 参与签名的头(小写名称)
+     * @param payloadHash 内容的sha256或UNSIGNED-PAYLOAD
+     * @param amzDate yyyyMMdd'T'HHmmss'Z'
+     * @param region
+     * @param accessKey
+     * @param secretKey
+     * @return
+     */
+    static String authorization(String method, String canonicalUri, SortedMap<String, String> headers, String payloadHash,
+                                String amzDate, String region, String accessKey, String secretKey) {
+        StringBuilder canonicalHeaders = new StringBuilder();
+        StringBuilder signedHeaders = new StringBuilder();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            canonicalHeaders.append(header.getKey()).append(':').append(header.getValue().trim()).append('\n');
+            if (signedHeaders.length() > 0) {
+                signedHeaders.append(';');
+            }
+            signedHeaders.append(header.getKey());
+        }
+        String canonicalRequest = method + "\n" + canonicalUri + "\n\n" + canonicalHeaders + "\n" + signedHeaders + "\n" + payloadHash;
+        String date = amzDate.substring(0, 8);
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n" + hex(sha256(canonicalRequest));
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        String signature = hex(hmac(key, stringToSign));
+        return ALGORITHM + " Credential=" + accessKey + "/" + scope + ",SignedHeaders=" + signedHeaders + ",Signature=" + signature;
+    }
+
+    /**
+     * 按RFC3986编码路径，保留/
+     */
+    static String encodePath(String path) {
+        try {
+            return URLEncoder.encode(path, "UTF-8")
+                    .replace("+", "%20")
+                    .replace("*", "%2A")
+                    .replace("%7E", "~")
+                    .replace("%2F", "/");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String amzDate(Date date) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(date);
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
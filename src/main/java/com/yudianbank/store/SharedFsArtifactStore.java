@@ -0,0 +1,80 @@
+package com.yudianbank.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 共享目录(nfs等各节点都挂载的目录)
+ * <p>
+ *     先写入临时文件再改名，其他节点不会读到写了一半的文件。
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "artifact.store.type", havingValue = "shared")
+public class SharedFsArtifactStore implements ArtifactStore {
+
+    /**
+     * 共享目录
+     */
+    @Value("${artifact.store.shared.dir:}")
+    String sharedDir;
+
+    @PostConstruct
+    public void init() {
+        if (sharedDir.isEmpty()) {
+            throw new IllegalStateException("artifact.store.type为shared时需要配置artifact.store.shared.dir");
+        }
+        new File(sharedDir).mkdirs();
+    }
+
+    @Override
+    public String type() {
+        return "shared";
+    }
+
+    @Override
+    public void put(String relativePath, File file) throws IOException {
+        copy(file, resolve(relativePath));
+    }
+
+    @Override
+    public boolean fetch(String relativePath, File target) throws IOException {
+        File source = resolve(relativePath);
+        if (!source.isFile()) {
+            return false;
+        }
+        copy(source, target);
+        return true;
+    }
+
+    @Override
+    public void delete(String relativePath) throws IOException {
+        Files.deleteIfExists(resolve(relativePath).toPath());
+    }
+
+    private File resolve(String relativePath) throws IOException {
+        if (relativePath.contains("..")) {
+            throw new IOException("非法路径：" + relativePath);
+        }
+        return new File(sharedDir, relativePath);
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File temp = File.createTempFile(".artifact", ".tmp", parent);
+        try {
+            Files.copy(source.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.yudianbank.utils;
+
+import java.io.IOException;
+
+/**
+ * 压缩文件超出解压限制(条目数、解压总大小、压缩比、目录层级)时抛出，
+ * 用于提前中止解析/解压，防止压缩炸弹占满file.dir
+ */
+public class ArchiveLimitExceededException extends IOException {
+
+    private static final long serialVersionUID = -3419736221758236570L;
+
+    public ArchiveLimitExceededException(String message) {
+        super(message);
+    }
+}
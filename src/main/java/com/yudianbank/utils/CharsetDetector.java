@@ -0,0 +1,157 @@
+package com.yudianbank.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.mozilla.intl.chardet.nsDetector;
+import org.mozilla.intl.chardet.nsPSMDetector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 文件编码探测(压缩文件名、类文本文件共用)
+ * <p>
+ *     只读取文件开头固定长度的样本(复用线程内的缓冲区)，按以下顺序判断：
+ *     1.BOM头；2.纯ASCII；3.按样本内容hash查缓存；4.jchardet探测。
+ *     探测耗时与文件大小无关。
+ * </p>
+ */
+@Component
+public class CharsetDetector {
+
+    /**
+     * 探测不出来时的默认编码
+     */
+    static final String DEFAULT_CHARSET = "GBK";
+
+    /**
+     * 采样字节数
+     */
+    @Value("${charset.detect.sample.bytes:65536}")
+    int sampleBytes;
+    /**
+     * 探测结果缓存条数
+     */
+    @Value("${charset.detect.cache.size:10000}")
+    long cacheSize;
+
+    @Autowired
+    PreviewMetrics previewMetrics;
+
+    private final ThreadLocal<byte[]> sampleBuffer = ThreadLocal.withInitial(() -> new byte[sampleBytes]);
+
+    private Cache<String, String> detectedCharsets;
+
+    @PostConstruct
+    public void init() {
+        detectedCharsets = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
+        previewMetrics.monitor(detectedCharsets, "charset.detect");
+    }
+
+    /**
+     * 探测文件编码
+     * @param path
+     * @return 编码名称，读取失败时返回默认编码GBK
+     */
+    public String detect(String path) {
+        byte[] buffer = sampleBuffer.get();
+        int length = 0;
+        try (InputStream in = new FileInputStream(path)) {
+            int read;
+            while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return DEFAULT_CHARSET;
+        }
+        return detect(buffer, length);
+    }
+
+    /**
+     * 探测字节样本的编码
+     * @param sample
+     * @param length 样本有效长度
+     * @return 编码名称
+     */
+    public String detect(byte[] sample, int length) {
+        String bomCharset = charsetFromBom(sample, length);
+        if (null != bomCharset) {
+            return bomCharset;
+        }
+        if (isAscii(sample, length)) {
+            return StandardCharsets.UTF_8.name();
+        }
+        String hash = Hashing.murmur3_128().hashBytes(sample, 0, length).toString();
+        String charset = detectedCharsets.getIfPresent(hash);
+        if (null == charset) {
+            charset = detectByChardet(sample, length);
+            detectedCharsets.put(hash, charset);
+        }
+        return charset;
+    }
+
+    /**
+     * 根据BOM头判断编码
+     * @param sample
+     * @param length
+     * @return 没有BOM时返回null
+     */
+    private String charsetFromBom(byte[] sample, int length) {
+        if (length >= 3 && sample[0] == (byte) 0xEF && sample[1] == (byte) 0xBB && sample[2] == (byte) 0xBF) {
+            return StandardCharsets.UTF_8.name();
+        }
+        if (length >= 2 && sample[0] == (byte) 0xFE && sample[1] == (byte) 0xFF) {
+            return StandardCharsets.UTF_16BE.name();
+        }
+        if (length >= 2 && sample[0] == (byte) 0xFF && sample[1] == (byte) 0xFE) {
+            return StandardCharsets.UTF_16LE.name();
+        }
+        return null;
+    }
+
+    private boolean isAscii(byte[] sample, int length) {
+        for (int i = 0; i < length; i++) {
+            if (sample[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String detectByChardet(byte[] sample, int length) {
+        nsDetector detector = new nsDetector(nsPSMDetector.SIMPLIFIED_CHINESE);
+        String[] notified = new String[1];
+        detector.Init(charset -> notified[0] = charset);
+        detector.DoIt(sample, length, false);
+        detector.DataEnd();
+        if (null != notified[0] && Charset.isSupported(notified[0])) {
+            return normalize(notified[0]);
+        }
+        // 没有BOM时UTF-16的候选结果不可信，跳过
+        for (String probable : detector.getProbableCharsets()) {
+            if (!"nomatch".equals(probable) && !probable.startsWith("UTF-16") && Charset.isSupported(probable)) {
+                return normalize(probable);
+            }
+        }
+        return DEFAULT_CHARSET;
+    }
+
+    /**
+     * GB2312是GBK的子集，按GB2312解码会丢掉生僻字，统一按GBK处理
+     * @param charset
+     * @return
+     */
+    private String normalize(String charset) {
+        String name = Charset.forName(charset).name();
+        return "GB2312".equals(name) ? DEFAULT_CHARSET : name;
+    }
+}
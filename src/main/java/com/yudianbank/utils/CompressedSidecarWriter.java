@@ -0,0 +1,82 @@
+package com.yudianbank.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 预压缩文件生成
+ * <p>
+ *     转换/下载完成后为html、txt等文本类结果生成一次.gz副本，访问时由PrecompressedResourceFilter
+ *     根据Accept-Encoding直接返回副本，请求时不再消耗压缩CPU。
+ *     .br副本目前没有纯java的编码器，这里不生成；如果由外部工具生成了同名.br文件，访问时同样会优先使用。
+ * </p>
+ */
+@Component
+public class CompressedSidecarWriter {
+
+    public static final String GZIP_SUFFIX = ".gz";
+    public static final String BROTLI_SUFFIX = ".br";
+
+    @Value("${precompress.enabled:true}")
+    boolean enabled;
+    /**
+     * 小于该大小的文件不压缩
+     */
+    @Value("${precompress.min.bytes:1024}")
+    long minBytes;
+    /**
+     * 生成副本的文件类型(图片等已压缩的格式不需要)
+     */
+    @Value("${precompress.suffixes:html,htm,txt}")
+    String[] suffixes;
+
+    /**
+     * 为文件生成压缩副本(先写临时文件再改名，避免读到写了一半的副本)
+     * @param filePath
+     */
+    public void writeSidecars(String filePath) {
+        File source = new File(filePath);
+        String suffix = filePath.substring(filePath.lastIndexOf(".") + 1).toLowerCase();
+        if (!enabled || !Arrays.asList(suffixes).contains(suffix) || !source.isFile() || source.length() < minBytes) {
+            return;
+        }
+        File target = new File(filePath + GZIP_SUFFIX);
+        File temp = new File(filePath + GZIP_SUFFIX + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(temp), 64 * 1024) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            Files.copy(source.toPath(), out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+        }
+    }
+
+    /**
+     * 删除文件的压缩副本
+     * @param filePath
+     */
+    public void deleteSidecars(String filePath) {
+        new File(filePath + GZIP_SUFFIX).delete();
+        new File(filePath + BROTLI_SUFFIX).delete();
+    }
+}
@@ -0,0 +1,107 @@
+package com.yudianbank.utils;
+
+import com.yudianbank.config.ConvertedIndexProperties;
+import com.yudianbank.store.ArtifactCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 转换文件缓存的文件清理
+ * <p>
+ *     监听转换文件缓存的过期、淘汰和删除事件(见ConvertedFileIndex.onEvicted)，各节点都删除本机缓存中的登记。
+ *     条目过期或被淘汰时，再删除本地文件及预压缩副本，并从共享存储中删除，文件不会比登记保留得更久；
+ *     调用remove删除登记时文件由调用方处理(例如解压中止时已删除解压目录)，这里不删除文件。
+ *     登记的是目录时(如幻灯片图片目录)删除整个目录；压缩包登记的是文件树，不对应单个文件，不在这里清理。
+ *     redis的事件回调在redisson的网络线程中执行，不能在其中访问redis或删除文件，事件交给单独的线程按顺序处理。
+ * </p>
+ */
+@Component
+public class ConvertedFileEvictions {
+
+    static final String REMOVED = "removed";
+
+    @Autowired
+    ConvertedFileIndex convertedFileIndex;
+    @Autowired
+    LocalConvertedFileIndex localConvertedFileIndex;
+    @Autowired
+    CompressedSidecarWriter compressedSidecarWriter;
+    @Autowired
+    ArtifactCache artifactCache;
+    @Autowired
+    MeterRegistry registry;
+    @Value("${file.dir}")
+    String fileDir;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "converted-file-evictions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        convertedFileIndex.onEvicted(this::evicted);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void evicted(String reason, String key, String relativePath) {
+        Counter.builder("preview.index.evictions")
+                .tag("reason", reason)
+                .tag("format", ConvertedIndexProperties.formatOf(key))
+                .register(registry)
+                .increment();
+        executor.execute(() -> {
+            try {
+                cleanUp(reason, key, relativePath);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * 删除本机缓存中的登记，过期或被淘汰时再删除文件
+     * @param reason
+     * @param key
+     * @param relativePath
+     */
+    void cleanUp(String reason, String key, String relativePath) {
+        if (convertedFileIndex.containsKey(key)) {
+            // 事件到达前已重新转换并登记
+            return;
+        }
+        localConvertedFileIndex.remove(key);
+        if (REMOVED.equals(reason)) {
+            return;
+        }
+        if (null == relativePath || relativePath.isEmpty() || relativePath.startsWith("[") || relativePath.startsWith("{") || relativePath.contains("..")) {
+            return;
+        }
+        File file = new File(fileDir + relativePath);
+        if (file.isDirectory()) {
+            FileSystemUtils.deleteRecursively(file);
+            return;
+        }
+        if (file.isFile()) {
+            file.delete();
+        }
+        compressedSidecarWriter.deleteSidecars(file.getPath());
+        artifactCache.remove(relativePath);
+    }
+}
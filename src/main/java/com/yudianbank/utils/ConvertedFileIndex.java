@@ -0,0 +1,98 @@
+package com.yudianbank.utils;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 转换文件缓存：缓存key(文件名或源文件key) -> 转换结果(相对file.dir的路径或压缩包文件树)
+ * <p>
+ *     按converted.index.type选择实现：redis(默认，RedisConvertedFileIndex，多节点共享)、
+ *     embedded(EmbeddedConvertedFileIndex，本机内存映射日志，单节点部署不需要redis)。
+ *     条目按converted.index.*的容量和过期设置淘汰，过期、淘汰和删除通过onEvicted通知(见ConvertedFileEvictions)。
+ * </p>
+ */
+public interface ConvertedFileIndex {
+
+    /**
+     * 查询
+     * @param key
+     * @return 未登记时返回null
+     */
+    String get(String key);
+
+    /**
+     * 批量查询
+     * @param keys
+     * @return 已登记的key -> value，未登记的key不在结果中
+     */
+    Map<String, String> getAll(Collection<String> keys);
+
+    /**
+     * 是否已登记
+     * @param key
+     * @return
+     */
+    default boolean containsKey(String key) {
+        return null != get(key);
+    }
+
+    /**
+     * 登记，按格式设置ttl和最大空闲时间
+     * @param key
+     * @param value
+     */
+    void put(String key, String value);
+
+    /**
+     * 删除登记
+     * @param key
+     */
+    void remove(String key);
+
+    /**
+     * 批量登记，默认逐条执行
+     * @param values key -> value
+     */
+    default void putAll(Map<String, String> values) {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 批量删除登记，默认逐条执行
+     * @param keys
+     */
+    default void removeAll(Collection<String> keys) {
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    /**
+     * 是否经过网络访问(需要超时和降级保护，见ConvertedIndexGuard)
+     * @return
+     */
+    default boolean isRemote() {
+        return true;
+    }
+
+    /**
+     * 注册条目过期、被淘汰或被删除时的回调(各节点都会收到)
+     * @param listener
+     */
+    default void onEvicted(EvictionListener listener) {
+    }
+
+    /**
+     * 条目移除的回调
+     */
+    interface EvictionListener {
+        /**
+         * @param reason expired(过期) / evicted(超过最大条目数被淘汰) / removed(调用remove删除)
+         * @param key
+         * @param value 移除前登记的值
+         */
+        void evicted(String reason, String key, String value);
+    }
+}
@@ -0,0 +1,240 @@
+package com.yudianbank.utils;
+
+import com.netflix.hystrix.HystrixCircuitBreaker;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 转换文件缓存的降级保护
+ * <p>
+ *     redis操作在hystrix命令中执行，超过converted.index.timeout.ms或熔断器打开时直接使用本机缓存(LocalConvertedFileIndex)，
+ *     redis变慢或不可用时预览不再被redis的超时和重试拖住。
+ *     redis操作的线程都忙时在队列中等待，只有队列也满了才拒绝(拒绝计入熔断的失败比例，突发请求不应直接触发熔断)。
+ *     redis命中的条目同步到本机缓存；redis不可用期间的写入和删除记录下来，补写前的查询以记录为准，
+ *     redis恢复后定时分批补写(每批一次redis往返)。
+ *     转换文件缓存不经过网络时(converted.index.type=embedded)直接读写，不需要保护。
+ * </p>
+ */
+@Component
+public class ConvertedIndexGuard {
+
+    private static final String REMOVED = "\u0000removed";
+
+    @Autowired
+    ConvertedFileIndex convertedFileIndex;
+    @Autowired
+    LocalConvertedFileIndex localConvertedFileIndex;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Autowired
+    MeterRegistry registry;
+    /**
+     * 单次redis操作的超时(毫秒)
+     */
+    @Value("${converted.index.timeout.ms:300}")
+    int timeoutMillis;
+    /**
+     * 执行redis操作的线程数
+     */
+    @Value("${converted.index.threads:20}")
+    int threads;
+    /**
+     * 线程都忙时等待执行的redis操作数，超过后拒绝并使用本机缓存
+     */
+    @Value("${converted.index.queue:200}")
+    int queue;
+    /**
+     * 10秒内失败比例超过该值(且请求数不少于20)时熔断
+     */
+    @Value("${converted.index.breaker.error-percent:50}")
+    int errorPercent;
+    /**
+     * 熔断后多久尝试恢复(毫秒)
+     */
+    @Value("${converted.index.breaker.sleep.ms:5000}")
+    int sleepMillis;
+    /**
+     * 补写时每批的条目数
+     */
+    @Value("${converted.index.reconcile.batch:100}")
+    int reconcileBatch;
+
+    /**
+     * redis不可用期间的修改：key -> value(删除为REMOVED)
+     */
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+    private HystrixCommand.Setter setter;
+
+    @PostConstruct
+    public void init() {
+        setter = HystrixCommand.Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey("converted-index"))
+                .andCommandKey(HystrixCommandKey.Factory.asKey("converted-index"))
+                .andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey("converted-index"))
+                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+                        .withExecutionTimeoutInMilliseconds(timeoutMillis)
+                        .withCircuitBreakerErrorThresholdPercentage(errorPercent)
+                        .withCircuitBreakerSleepWindowInMilliseconds(sleepMillis)
+                        .withFallbackIsolationSemaphoreMaxConcurrentRequests(1000))
+                .andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter()
+                        .withCoreSize(threads)
+                        .withMaxQueueSize(queue)
+                        .withQueueSizeRejectionThreshold(queue));
+        previewMetrics.gauge("preview.index.pending", pending::size);
+    }
+
+    public String get(String key) {
+        if (!convertedFileIndex.isRemote()) {
+            return convertedFileIndex.get(key);
+        }
+        String changed = pending.get(key);
+        if (null != changed) {
+            // redis还没有补写，本机的更新(较大的值不在本机缓存中)
+            return REMOVED.equals(changed) ? null : changed;
+        }
+        return execute("get", () -> {
+            String value = convertedFileIndex.get(key);
+            if (null != value) {
+                localConvertedFileIndex.put(key, value);
+            } else if (null != localConvertedFileIndex.get(key)) {
+                // redis中已过期或被删除
+                localConvertedFileIndex.remove(key);
+            }
+            return value;
+        }, () -> localConvertedFileIndex.get(key));
+    }
+
+    public Map<String, String> getAll(Collection<String> keys) {
+        if (!convertedFileIndex.isRemote()) {
+            return convertedFileIndex.getAll(keys);
+        }
+        Map<String, String> values = new HashMap<>(execute("getAll", () -> convertedFileIndex.getAll(keys), () -> localConvertedFileIndex.getAll(keys)));
+        if (!pending.isEmpty()) {
+            // redis还没有补写的修改
+            for (String key : keys) {
+                String changed = pending.get(key);
+                if (REMOVED.equals(changed)) {
+                    values.remove(key);
+                } else if (null != changed) {
+                    values.put(key, changed);
+                }
+            }
+        }
+        return values;
+    }
+
+    public void put(String key, String value) {
+        if (!convertedFileIndex.isRemote()) {
+            convertedFileIndex.put(key, value);
+            return;
+        }
+        localConvertedFileIndex.put(key, value);
+        execute("put", () -> {
+            convertedFileIndex.put(key, value);
+            pending.remove(key);
+            return true;
+        }, () -> {
+            pending.put(key, value);
+            return false;
+        });
+    }
+
+    public void remove(String key) {
+        if (!convertedFileIndex.isRemote()) {
+            convertedFileIndex.remove(key);
+            return;
+        }
+        localConvertedFileIndex.remove(key);
+        execute("remove", () -> {
+            convertedFileIndex.remove(key);
+            pending.remove(key);
+            return true;
+        }, () -> {
+            pending.put(key, REMOVED);
+            return false;
+        });
+    }
+
+    /**
+     * redis恢复后补写不可用期间的修改
+     */
+    @Scheduled(fixedDelayString = "${converted.index.reconcile.ms:10000}")
+    public void reconcile() {
+        if (pending.isEmpty() || isOpen()) {
+            return;
+        }
+        List<Map.Entry<String, String>> changes = new ArrayList<>(pending.entrySet());
+        int applied = 0;
+        for (int from = 0; from < changes.size(); from += reconcileBatch) {
+            List<Map.Entry<String, String>> batch = changes.subList(from, Math.min(changes.size(), from + reconcileBatch));
+            Map<String, String> puts = new HashMap<>();
+            List<String> removes = new ArrayList<>();
+            for (Map.Entry<String, String> change : batch) {
+                if (REMOVED.equals(change.getValue())) {
+                    removes.add(change.getKey());
+                } else {
+                    puts.put(change.getKey(), change.getValue());
+                }
+            }
+            boolean success = execute("reconcile", () -> {
+                convertedFileIndex.putAll(puts);
+                convertedFileIndex.removeAll(removes);
+                return true;
+            }, () -> false);
+            if (!success) {
+                break;
+            }
+            for (Map.Entry<String, String> change : batch) {
+                // 补写期间又有新的修改时保留
+                pending.remove(change.getKey(), change.getValue());
+            }
+            applied += batch.size();
+        }
+        System.out.println("redis恢复，补写转换文件缓存" + applied + "条，剩余" + pending.size() + "条");
+    }
+
+    /**
+     * 熔断器是否打开(redis被判定为不可用)
+     * @return
+     */
+    public boolean isOpen() {
+        HystrixCircuitBreaker breaker = HystrixCircuitBreaker.Factory.getInstance(HystrixCommandKey.Factory.asKey("converted-index"));
+        return null != breaker && breaker.isOpen();
+    }
+
+    private <T> T execute(String operation, Supplier<T> action, Supplier<T> fallback) {
+        return new HystrixCommand<T>(setter) {
+            @Override
+            protected T run() {
+                return action.get();
+            }
+
+            @Override
+            protected T getFallback() {
+                Counter.builder("preview.index.fallbacks")
+                        .tag("operation", operation)
+                        .register(registry)
+                        .increment();
+                return fallback.get();
+            }
+        }.execute();
+    }
+}
@@ -4,15 +4,27 @@ import com.sun.star.document.UpdateDocMode;
 import com.yudianbank.extend.ControlDocumentFormatRegistry;
 import org.artofsolving.jodconverter.OfficeDocumentConverter;
 import org.artofsolving.jodconverter.office.DefaultOfficeManagerConfiguration;
+import org.artofsolving.jodconverter.office.OfficeException;
 import org.artofsolving.jodconverter.office.OfficeManager;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 创建文件转换器
@@ -28,29 +40,276 @@ public class ConverterUtils {
     @Value("${office.port}")
     int officePort;
 //    OpenOfficeConnection connection;
-    OfficeManager officeManager;
+    /**
+     * 容器中有OfficeManager时使用该实例(如压测时的模拟转换器)，否则按office.home启动本地office
+     */
+    @Autowired(required = false)
+    volatile OfficeManager officeManager;
+    /**
+     * 任务执行超时(毫秒)，各格式的超时由ConverterWatchdog控制，这里作为兜底
+     */
+    @Value("${office.task.execution.timeout.ms:600000}")
+    long taskExecutionTimeout;
+    /**
+     * 任务排队超时(毫秒)
+     */
+    @Value("${office.task.queue.timeout.ms:1800000}")
+    long taskQueueTimeout;
+    /**
+     * 每个office进程处理多少个任务后重启(释放内存)，0表示不限制
+     */
+    @Value("${office.max.tasks.per.process:200}")
+    int maxTasksPerProcess;
+    /**
+     * 是否在后台线程中启动office(不阻塞应用启动，转换请求等待启动完成)
+     */
+    @Value("${office.start.async:true}")
+    boolean startAsync;
+    /**
+     * 转换请求等待office启动的最长时间(秒)
+     */
+    @Value("${office.start.wait.seconds:120}")
+    long startWaitSeconds;
+    /**
+     * 第一次转换之后在后台追加启动的office端口，为空表示只使用office.port
+     */
+    @Value("${office.pool.grow.ports:}")
+    int[] growPorts;
+    /**
+     * officeManager是否由本类创建(容器中提供的实例重启时只能stop/start)
+     */
+    private boolean managedLocally;
+    /**
+     * office.port的启动过程
+     */
+    private volatile CompletableFuture<Void> started;
+    /**
+     * 已启动的office实例及端口(第一个为office.port)，变更时整体替换
+     */
+    private volatile List<OfficeManager> pool = Collections.emptyList();
+    private volatile List<Integer> poolPorts = Collections.emptyList();
+    private final AtomicBoolean growing = new AtomicBoolean();
+    private final AtomicInteger next = new AtomicInteger();
 
     @PostConstruct
     public void initOfficeManager() {
         ////            connection = new SocketOpenOfficeConnection(host,8100);
 ////            connection.connect();
+        if (null == officeManager) {
+            managedLocally = true;
+            officeManager = buildOfficeManager(officePort);
+        }
+        if (startAsync) {
+            started = CompletableFuture.runAsync(this::startPrimary, daemon("office-starter"));
+        } else {
+            startPrimary();
+            started = CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void startPrimary() {
+        long start = System.currentTimeMillis();
+        officeManager.start();
+        pool = Collections.singletonList(officeManager);
+        poolPorts = Collections.singletonList(officePort);
+        System.out.println("office启动完成，端口" + officePort + "，耗时" + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private OfficeManager buildOfficeManager(int port) {
         DefaultOfficeManagerConfiguration configuration = new DefaultOfficeManagerConfiguration();
         configuration.setOfficeHome(officeHome);
-        configuration.setPortNumber(officePort);
-        officeManager = configuration.buildOfficeManager();
-        officeManager.start();
-        // 设置任务执行超时为5分钟
-        // configuration.setTaskExecutionTimeout(1000 * 60 * 5L);//
-        // 设置任务队列超时为24小时
-        // configuration.setTaskQueueTimeout(1000 * 60 * 60 * 24L);//
+        configuration.setPortNumber(port);
+        configuration.setTaskExecutionTimeout(taskExecutionTimeout);
+        configuration.setTaskQueueTimeout(taskQueueTimeout);
+        if (maxTasksPerProcess > 0) {
+            configuration.setMaxTasksPerProcess(maxTasksPerProcess);
+        }
+        return configuration.buildOfficeManager();
+    }
+
+    /**
+     * 第一次有转换请求后，在后台逐个启动office.pool.grow.ports，启动完成的实例加入轮询
+     */
+    private void growPool() {
+        if (!managedLocally || growPorts.length == 0 || !growing.compareAndSet(false, true)) {
+            return;
+        }
+        daemon("office-pool-grow").execute(() -> {
+            for (int port : growPorts) {
+                try {
+                    OfficeManager manager = buildOfficeManager(port);
+                    manager.start();
+                    synchronized (this) {
+                        List<OfficeManager> managers = new ArrayList<>(pool);
+                        managers.add(manager);
+                        List<Integer> ports = new ArrayList<>(poolPorts);
+                        ports.add(port);
+                        pool = Collections.unmodifiableList(managers);
+                        poolPorts = Collections.unmodifiableList(ports);
+                    }
+                    System.out.println("office实例扩容完成，端口" + port);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * 重启office进程(jodconverter停止后的管理器不能再次启动，本地创建的重新创建一个)
+     */
+    public synchronized void restartOfficeManager() {
+        List<OfficeManager> managers = new ArrayList<>();
+        List<Integer> ports = poolPorts.isEmpty() ? Collections.singletonList(officePort) : poolPorts;
+        List<OfficeManager> current = pool.isEmpty() ? Collections.singletonList(officeManager) : pool;
+        for (int i = 0; i < current.size(); i++) {
+            OfficeManager manager = current.get(i);
+            try {
+                manager.stop();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            if (managedLocally) {
+                manager = buildOfficeManager(ports.get(i));
+            }
+            manager.start();
+            managers.add(manager);
+        }
+        officeManager = managers.get(0);
+        pool = Collections.unmodifiableList(managers);
+        poolPorts = Collections.unmodifiableList(new ArrayList<>(ports));
+        started = CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 只重启一个office实例，其他实例上的转换不受影响
+     * @param port 实例的端口
+     */
+    public synchronized void restartOfficeInstance(int port) {
+        if (pool.isEmpty()) {
+            // office.port启动失败，整体重新启动
+            restartOfficeManager();
+            return;
+        }
+        int index = poolPorts.indexOf(port);
+        if (index < 0) {
+            return;
+        }
+        OfficeManager manager = pool.get(index);
+        try {
+            manager.stop();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        if (managedLocally) {
+            manager = buildOfficeManager(port);
+        }
+        manager.start();
+        List<OfficeManager> managers = new ArrayList<>(pool);
+        managers.set(index, manager);
+        if (0 == index) {
+            officeManager = manager;
+        }
+        pool = Collections.unmodifiableList(managers);
+    }
+
+    /**
+     * office.port是否启动完成(包括启动失败)
+     * @return
+     */
+    public boolean isOfficeStarted() {
+        return started.isDone();
+    }
+
+    /**
+     * 所有已启动的office实例是否都在运行
+     * @return
+     */
+    public boolean isOfficeRunning() {
+        return started.isDone() && !pool.isEmpty() && getStoppedOfficePorts().isEmpty();
+    }
+
+    /**
+     * 已启动但不在运行的office实例的端口
+     * @return
+     */
+    public List<Integer> getStoppedOfficePorts() {
+        List<OfficeManager> managers = pool;
+        List<Integer> ports = poolPorts;
+        List<Integer> stopped = new ArrayList<>();
+        for (int i = 0; i < managers.size() && i < ports.size(); i++) {
+            if (!managers.get(i).isRunning()) {
+                stopped.add(ports.get(i));
+            }
+        }
+        return stopped;
+    }
+
+    /**
+     * office.port的启动过程，用于统计启动耗时
+     * @return
+     */
+    public CompletableFuture<Void> officeStarted() {
+        return started;
+    }
+
+    /**
+     * 已启动的office端口
+     * @return
+     */
+    public List<Integer> getOfficePorts() {
+        return poolPorts;
     }
 
     public OfficeDocumentConverter getDocumentConverter() {
-        OfficeDocumentConverter converter = new OfficeDocumentConverter(officeManager, new ControlDocumentFormatRegistry());
+        return getDocumentConverter(nextOfficePort());
+    }
+
+    /**
+     * 轮询选择office实例(等待office.port启动完成)
+     * @return 实例的端口，传给getDocumentConverter
+     */
+    public int nextOfficePort() {
+        try {
+            started.get(startWaitSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new OfficeException("office尚未启动完成");
+        } catch (ExecutionException e) {
+            throw new OfficeException("office启动失败", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OfficeException("等待office启动时被中断", e);
+        }
+        growPool();
+        List<Integer> ports = poolPorts;
+        return ports.get(Math.floorMod(next.getAndIncrement(), ports.size()));
+    }
+
+    /**
+     * 使用指定office实例的转换器
+     * @param port nextOfficePort的返回值
+     * @return
+     */
+    public OfficeDocumentConverter getDocumentConverter(int port) {
+        List<OfficeManager> managers = pool;
+        int index = poolPorts.indexOf(port);
+        if (index < 0 || index >= managers.size()) {
+            throw new OfficeException("office实例" + port + "不可用");
+        }
+        OfficeManager manager = managers.get(index);
+        OfficeDocumentConverter converter = new OfficeDocumentConverter(manager, new ControlDocumentFormatRegistry());
         converter.setDefaultLoadProperties(getLoadProperties());
         return converter;
     }
 
+    private static Executor daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            thread.start();
+        };
+    }
+
     private Map<String,?> getLoadProperties() {
         Map<String,Object> loadProperties = new HashMap<>(10);
         loadProperties.put("Hidden", true);
@@ -62,8 +321,15 @@ public class ConverterUtils {
 
     @PreDestroy
     public void destroyOfficeManager(){
-        if (null != officeManager && officeManager.isRunning()) {
-            officeManager.stop();
+        if (!started.isDone()) {
+            // 还在启动中，启动完成后停止
+            started.thenRun(officeManager::stop);
+            return;
+        }
+        for (OfficeManager manager : pool) {
+            if (manager.isRunning()) {
+                manager.stop();
+            }
         }
     }
 
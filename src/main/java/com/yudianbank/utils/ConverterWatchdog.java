@@ -0,0 +1,211 @@
+package com.yudianbank.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * office转换看门狗
+ * <p>
+ *     每次转换按文件格式设置超时，超时的任务直接失败并重启执行该任务的office实例，排在后面的转换不再被一个坏文件卡住；
+ *     定时检查各office实例是否存活以及占用的内存(读取/proc，按端口区分进程)，超过上限的实例在其空闲时重启。
+ *     重启只针对一个实例，其他实例上的转换不受影响；转换过程中所在实例因其他任务被重启导致失败的，重试一次。
+ * </p>
+ */
+@Component
+public class ConverterWatchdog {
+
+    @Autowired
+    ConverterUtils converterUtils;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Autowired
+    MeterRegistry registry;
+    @Autowired
+    OfficeProcesses officeProcesses;
+    /**
+     * 默认转换超时(秒)
+     */
+    @Value("${office.timeout.default.seconds:120}")
+    long defaultTimeoutSeconds;
+    /**
+     * 各格式的转换超时(秒)，如：ppt:300,pptx:300
+     */
+    @Value("${office.timeout.formats:}")
+    String[] formatTimeouts;
+    /**
+     * office进程占用内存上限(MB)，0表示不检查
+     */
+    @Value("${office.max.rss.mb:2048}")
+    long maxRssMb;
+
+    private final Map<String, Long> timeoutSeconds = new HashMap<>();
+    /**
+     * office实例的端口 -> 实例状态
+     */
+    private final Map<Integer, Instance> instances = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        for (String formatTimeout : formatTimeouts) {
+            String[] pair = formatTimeout.trim().split(":");
+            if (pair.length == 2) {
+                timeoutSeconds.put(pair[0].trim().toLowerCase(), Long.parseLong(pair[1].trim()));
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        executor = previewMetrics.monitor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "office-convert-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }), "preview.converter");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在超时控制下执行转换
+     * @param format 源文件格式
+     * @param port 执行转换的office实例的端口
+     * @param conversion 转换任务
+     * @return 转换成功返回true，超时或失败返回false
+     */
+    public boolean convert(String format, int port, Callable<Boolean> conversion) {
+        Instance instance = instanceOf(port);
+        for (int attempt = 1; ; attempt++) {
+            long startGeneration = instance.generation.get();
+            instance.running.incrementAndGet();
+            Future<Boolean> future = executor.submit(conversion);
+            try {
+                return future.get(timeoutOf(format), TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                System.out.println("文件转换超时(" + format + ")，重启office实例" + port);
+                event("preview.converter.timeouts", "format", format, port);
+                restart("timeout", port);
+                return false;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                if (attempt == 1 && instance.generation.get() != startGeneration) {
+                    // office实例在转换过程中被重启过，重试一次
+                    event("preview.converter.retries", "format", format, port);
+                    continue;
+                }
+                return false;
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                if (0 == instance.running.decrementAndGet() && instance.restartWhenIdle) {
+                    restart("memory", port);
+                }
+            }
+        }
+    }
+
+    /**
+     * 定时检查office进程
+     */
+    @Scheduled(fixedDelayString = "${office.watchdog.interval.ms:30000}")
+    public void check() {
+        if (!converterUtils.isOfficeStarted()) {
+            // 首次启动尚未完成
+            return;
+        }
+        if (converterUtils.getOfficePorts().isEmpty()) {
+            System.out.println("office启动失败，重新启动");
+            restart("stopped", converterUtils.officePort);
+            return;
+        }
+        for (Integer port : converterUtils.getStoppedOfficePorts()) {
+            System.out.println("office实例" + port + "未运行，重新启动");
+            restart("stopped", port);
+        }
+        for (Integer port : converterUtils.getOfficePorts()) {
+            Instance instance = instanceOf(port);
+            long rss = -1;
+            for (String pid : officeProcesses.find(port)) {
+                // soffice和soffice.bin都带端口参数，合计为该实例的占用
+                rss = Math.max(0, rss) + Math.max(0, officeProcesses.rssBytes(pid));
+            }
+            instance.rssBytes.set(rss);
+            if (maxRssMb > 0 && rss > maxRssMb * 1024 * 1024) {
+                System.out.println("office实例" + port + "占用内存" + (rss >> 20) + "MB，超过上限，空闲时重启");
+                instance.restartWhenIdle = true;
+                if (0 == instance.running.get()) {
+                    restart("memory", port);
+                }
+            }
+        }
+    }
+
+    long timeoutOf(String format) {
+        return timeoutSeconds.getOrDefault(null == format ? "" : format.toLowerCase(), defaultTimeoutSeconds);
+    }
+
+    private synchronized void restart(String reason, int port) {
+        Instance instance = instanceOf(port);
+        List<String> pids = officeProcesses.find(port);
+        instance.restartWhenIdle = false;
+        instance.generation.incrementAndGet();
+        event("preview.converter.restarts", "reason", reason, port);
+        // 挂死的进程不一定能正常退出，先强制结束，避免新进程无法使用同一端口
+        for (String pid : pids) {
+            officeProcesses.kill(pid);
+        }
+        converterUtils.restartOfficeInstance(port);
+    }
+
+    private Instance instanceOf(int port) {
+        return instances.computeIfAbsent(port, key -> {
+            Instance instance = new Instance();
+            previewMetrics.gauge("preview.converter.rss.bytes", instance.rssBytes::get, "instance", String.valueOf(key));
+            return instance;
+        });
+    }
+
+    private void event(String name, String tagKey, String tagValue, int port) {
+        Counter.builder(name)
+                .tag(tagKey, null == tagValue ? "unknown" : tagValue)
+                .tag("instance", String.valueOf(port))
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 一个office实例的状态
+     */
+    private static class Instance {
+        final AtomicInteger running = new AtomicInteger();
+        /**
+         * 重启次数，用于判断任务执行期间实例是否被重启过
+         */
+        final AtomicLong generation = new AtomicLong();
+        final AtomicLong rssBytes = new AtomicLong(-1);
+        volatile boolean restartWhenIdle;
+    }
+}
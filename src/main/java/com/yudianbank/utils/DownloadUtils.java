@@ -19,6 +19,8 @@ public class DownloadUtils {
     String fileDir;
     @Autowired
     FileUtils fileUtils;
+    @Autowired
+    PreviewMetrics previewMetrics;
     /**
      * 一开始测试的时候发现有些文件没有下载下来，而有些可以；当时也是郁闷了好一阵，但是最终还是不得解
      * 再次测试的时候，通过前台对比url发现，原来参数中有+号特殊字符存在，但是到后之后却变成了空格，突然恍然大悟
@@ -37,14 +39,7 @@ public class DownloadUtils {
         ReturnResponse<String> response = new ReturnResponse<>(0, "下载成功!!!", "");
         URL url = null;
         try {
-            if (null != needEncode) {
-                urlAddress = encodeUrlParam(urlAddress);
-                // 因为tomcat不能处理'+'号，所以讲'+'号替换成'%20%'
-                urlAddress = urlAddress.replaceAll("\\+", "%20");
-            }else{
-                urlAddress = replacePlusMark(urlAddress);
-            }
-            url = new URL(urlAddress);
+            url = toUrl(urlAddress, needEncode);
         } catch (MalformedURLException e) {
             e.printStackTrace();
         }
@@ -60,6 +55,8 @@ public class DownloadUtils {
         if (!dirFile.exists()) {
             dirFile.mkdirs();
         }
+        String host = null == url ? null : url.getHost();
+        long start = previewMetrics.start();
         try {
             URLConnection connection = url.openConnection();
             InputStream in = connection.getInputStream();
@@ -67,17 +64,22 @@ public class DownloadUtils {
             FileOutputStream os = new FileOutputStream(realPath);
             byte[] buffer = new byte[4 * 1024];
             int read;
+            long total = 0;
             while ((read = in.read(buffer)) > 0) {
                 os.write(buffer, 0, read);
+                total += read;
             }
             os.close();
             in.close();
+            previewMetrics.record(PreviewMetrics.DOWNLOAD, start, "host", host, "result", "success");
+            previewMetrics.downloaded(host, total);
             response.setContent(realPath);
             // 同样针对类txt文件，如果成功msg包含的是转换后的文件名
             response.setMsg(fileName);
             return response;
         } catch (IOException e) {
             e.printStackTrace();
+            previewMetrics.record(PreviewMetrics.DOWNLOAD, start, "host", host, "result", "failure");
             response.setCode(1);
             response.setContent(null);
             if (e instanceof FileNotFoundException) {
@@ -89,6 +91,45 @@ public class DownloadUtils {
         }
     }
 
+    /**
+     * 读取文件开头的若干字节(用于按文件头识别类型)，通过Range请求只取需要的部分
+     * @param urlAddress
+     * @param needEncode
+     * @param buffer 读取到的字节
+     * @param timeoutMillis 连接和读取超时
+     * @return 实际读取的字节数，失败时返回-1
+     */
+    public int readHead(String urlAddress, String needEncode, byte[] buffer, int timeoutMillis) {
+        try {
+            URLConnection connection = toUrl(urlAddress, needEncode).openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setRequestProperty("Range", "bytes=0-" + (buffer.length - 1));
+            try (InputStream in = connection.getInputStream()) {
+                int total = 0;
+                int read;
+                while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0) {
+                    total += read;
+                }
+                return total;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    private URL toUrl(String urlAddress, String needEncode) throws MalformedURLException {
+        if (null != needEncode) {
+            urlAddress = encodeUrlParam(urlAddress);
+            // 因为tomcat不能处理'+'号，所以讲'+'号替换成'%20%'
+            urlAddress = urlAddress.replaceAll("\\+", "%20");
+        }else{
+            urlAddress = replacePlusMark(urlAddress);
+        }
+        return new URL(urlAddress);
+    }
+
     /**
      * 转换url参数部分的空格为加号(因为在url编解码的过程中出现+转为空格的情况)
      * @param urlAddress
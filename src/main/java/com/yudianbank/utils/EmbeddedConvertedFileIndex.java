@@ -0,0 +1,452 @@
+package com.yudianbank.utils;
+
+import com.yudianbank.config.ConvertedIndexProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * 转换文件缓存(本机，converted.index.type=embedded)
+ * <p>
+ *     单节点部署不需要redis：所有修改追加到内存映射的日志文件(converted-index.dat)，查询直接读映射内存，没有网络往返；
+ *     内存中只保留key -> 记录位置，值留在映射的文件中。重启后按日志恢复，进程崩溃时已写入映射内存的记录不会丢失。
+ * </p>
+ * <p>
+ *     记录格式：[内容长度(int)][crc32(int)][类型(P/R)][过期时间(long)][key长度(int)][key][值长度(int)][值]，
+ *     恢复时遇到长度或校验不对的记录(写到一半)即停止，并立即重写日志。
+ *     失效记录(被覆盖、删除或淘汰)的字节数超过有效记录且超过converted.index.embedded.compact.min-bytes时，
+ *     把有效记录复制到新文件后原子替换(重写)。
+ * </p>
+ * <p>
+ *     容量和过期与redis实现使用相同的converted.index.*设置：超过最大条目数时淘汰最久未访问的条目，
+ *     查询时和定时清理时移除过期或超过最大空闲时间的条目(空闲时间从本次启动开始计算)，移除时通知onEvicted的回调。
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "converted.index.type", havingValue = "embedded")
+public class EmbeddedConvertedFileIndex implements ConvertedFileIndex {
+
+    static final String FILE_NAME = "converted-index.dat";
+    private static final byte PUT = 'P';
+    private static final byte REMOVE = 'R';
+    /**
+     * 记录头：内容长度 + crc32
+     */
+    private static final int HEADER = 8;
+
+    @Autowired
+    ConvertedIndexProperties convertedIndexProperties;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    /**
+     * 日志目录(不要放在file.dir下)
+     */
+    @Value("${converted.index.embedded.dir:${user.home}/.file-preview}")
+    String dir;
+    /**
+     * 日志文件的初始映射大小(字节)，写满后按两倍扩大
+     */
+    @Value("${converted.index.embedded.initial-bytes:16777216}")
+    int initialBytes;
+    /**
+     * 失效记录超过该字节数(且超过有效记录)时重写日志
+     */
+    @Value("${converted.index.embedded.compact.min-bytes:4194304}")
+    long compactMinBytes;
+
+    private final List<EvictionListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * key -> 记录位置，按访问顺序排列(用于淘汰)
+     */
+    private LinkedHashMap<String, Entry> entries;
+    private File file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+    /**
+     * 有效记录的字节数
+     */
+    private long liveBytes;
+
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        new File(dir).mkdirs();
+        file = new File(dir, FILE_NAME);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), initialBytes));
+        long start = System.currentTimeMillis();
+        if (!replay()) {
+            System.out.println("转换文件缓存日志末尾有不完整的记录，重写日志");
+            compact();
+        }
+        System.out.println("转换文件缓存从" + file + "恢复" + entries.size() + "条，耗时" + (System.currentTimeMillis() - start) + "ms");
+        if (null != previewMetrics) {
+            previewMetrics.gauge("preview.index.embedded.entries", this::size);
+            previewMetrics.gauge("preview.index.embedded.bytes", this::fileBytes);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void destroy() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    @Override
+    public String get(String key) {
+        List<Removal> removals = new ArrayList<>(0);
+        String value;
+        synchronized (this) {
+            value = lookup(key, System.currentTimeMillis(), removals);
+        }
+        notify(removals);
+        return value;
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        List<Removal> removals = new ArrayList<>(0);
+        Map<String, String> values = new HashMap<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (String key : keys) {
+                String value = lookup(key, now, removals);
+                if (null != value) {
+                    values.put(key, value);
+                }
+            }
+        }
+        notify(removals);
+        return values;
+    }
+
+    @Override
+    public void put(String key, String value) {
+        List<Removal> removals = new ArrayList<>(0);
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long ttl = convertedIndexProperties.ttlOf(key);
+            Entry entry = append(PUT, key, value, ttl > 0 ? now + ttl * 1000 : 0, now);
+            Entry previous = entries.put(key, entry);
+            liveBytes += entry.length - (null == previous ? 0 : previous.length);
+            trim(removals);
+            compactIfNeeded();
+        }
+        notify(removals);
+    }
+
+    @Override
+    public void remove(String key) {
+        List<Removal> removals = new ArrayList<>(1);
+        synchronized (this) {
+            Entry entry = entries.remove(key);
+            if (null == entry) {
+                return;
+            }
+            removed("removed", key, entry, removals);
+            compactIfNeeded();
+        }
+        notify(removals);
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public void onEvicted(EvictionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 移除过期的条目，超过最大条目数时淘汰，并把映射内存写回磁盘
+     */
+    @Scheduled(fixedDelayString = "${converted.index.embedded.sweep.ms:60000}")
+    public void sweep() {
+        List<Removal> removals = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> next = iterator.next();
+                if (isExpired(next.getKey(), next.getValue(), now)) {
+                    iterator.remove();
+                    removed("expired", next.getKey(), next.getValue(), removals);
+                }
+            }
+            trim(removals);
+            compactIfNeeded();
+            buffer.force();
+        }
+        notify(removals);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 日志文件中已使用的字节数
+     * @return
+     */
+    public synchronized int fileBytes() {
+        return writePosition;
+    }
+
+    private String lookup(String key, long now, List<Removal> removals) {
+        Entry entry = entries.get(key);
+        if (null == entry) {
+            return null;
+        }
+        if (isExpired(key, entry, now)) {
+            entries.remove(key);
+            removed("expired", key, entry, removals);
+            return null;
+        }
+        entry.accessedAt = now;
+        return read(entry);
+    }
+
+    private boolean isExpired(String key, Entry entry, long now) {
+        if (entry.expireAt > 0 && now >= entry.expireAt) {
+            return true;
+        }
+        long maxIdle = convertedIndexProperties.maxIdleOf(key);
+        return maxIdle > 0 && now - entry.accessedAt >= maxIdle * 1000;
+    }
+
+    /**
+     * 超过最大条目数时淘汰最久未访问的条目
+     */
+    private void trim(List<Removal> removals) {
+        int maxSize = convertedIndexProperties.getMaxSize();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (maxSize > 0 && entries.size() > maxSize) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            removed("evicted", eldest.getKey(), eldest.getValue(), removals);
+        }
+    }
+
+    /**
+     * 已从entries中移除的条目：写删除记录，记下需要通知的回调
+     */
+    private void removed(String reason, String key, Entry entry, List<Removal> removals) {
+        String value = read(entry);
+        liveBytes -= entry.length;
+        append(REMOVE, key, null, 0, 0);
+        removals.add(new Removal(reason, key, value));
+    }
+
+    /**
+     * 在锁外通知回调(回调中可能再访问缓存)
+     */
+    private void notify(List<Removal> removals) {
+        for (Removal removal : removals) {
+            for (EvictionListener listener : listeners) {
+                try {
+                    listener.evicted(removal.reason, removal.key, removal.value);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 追加一条记录
+     * @return 记录的位置
+     */
+    private Entry append(byte type, String key, String value, long expireAt, long now) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = null == value ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 4 + keyBytes.length + 4 + valueBytes.length);
+        body.put(type).putLong(expireAt)
+                .putInt(keyBytes.length).put(keyBytes)
+                .putInt(valueBytes.length).put(valueBytes);
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        int length = HEADER + body.capacity();
+        ensureCapacity(length);
+        int position = writePosition;
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + HEADER);
+        target.put(body.array());
+        // 最后写长度，写到一半的记录在恢复时被丢弃
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, body.capacity());
+        writePosition += length;
+        return new Entry(position, length, expireAt, now);
+    }
+
+    private void ensureCapacity(int length) {
+        if ((long) writePosition + length <= buffer.capacity()) {
+            return;
+        }
+        long size = Math.max(buffer.capacity(), 1024);
+        while (size < (long) writePosition + length) {
+            size *= 2;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("转换文件缓存日志超过2GB，请减小converted.index.max-size");
+        }
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String read(Entry entry) {
+        ByteBuffer view = buffer.duplicate();
+        int position = entry.position + HEADER + 1 + 8;
+        position += 4 + view.getInt(position);
+        byte[] bytes = new byte[view.getInt(position)];
+        view.position(position + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按日志恢复
+     * @return 日志是否完整(没有写到一半的记录)
+     */
+    private boolean replay() {
+        long now = System.currentTimeMillis();
+        int position = 0;
+        try {
+            while (position + HEADER <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (0 == length) {
+                    // 已写入部分的末尾
+                    return true;
+                }
+                if (length < 0 || (long) position + HEADER + length > buffer.capacity()) {
+                    return false;
+                }
+                byte[] body = new byte[length];
+                ByteBuffer view = buffer.duplicate();
+                view.position(position + HEADER);
+                view.get(body);
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    return false;
+                }
+                ByteBuffer record = ByteBuffer.wrap(body);
+                byte type = record.get();
+                long expireAt = record.getLong();
+                byte[] key = new byte[record.getInt()];
+                record.get(key);
+                Entry entry = new Entry(position, HEADER + length, expireAt, now);
+                Entry previous = PUT == type
+                        ? entries.put(new String(key, StandardCharsets.UTF_8), entry)
+                        : entries.remove(new String(key, StandardCharsets.UTF_8));
+                liveBytes += (PUT == type ? entry.length : 0) - (null == previous ? 0 : previous.length);
+                position += HEADER + length;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // 记录内容损坏
+            e.printStackTrace();
+            return false;
+        } finally {
+            writePosition = position;
+        }
+    }
+
+    private void compactIfNeeded() {
+        long dead = writePosition - liveBytes;
+        if (dead > compactMinBytes && dead > liveBytes) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // 保留原日志，下次修改时重试
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 把有效记录按访问顺序复制到新文件后替换日志
+     */
+    private void compact() throws IOException {
+        File temp = new File(dir, FILE_NAME + ".tmp");
+        long size = Math.min(Integer.MAX_VALUE, Math.max(initialBytes, liveBytes * 2));
+        LinkedHashMap<String, Entry> compacted = new LinkedHashMap<>(Math.max(16, entries.size() * 4 / 3 + 1), 0.75f, true);
+        int position = 0;
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            for (Map.Entry<String, Entry> next : entries.entrySet()) {
+                Entry entry = next.getValue();
+                ByteBuffer record = buffer.duplicate();
+                record.limit(entry.position + entry.length);
+                record.position(entry.position);
+                target.position(position);
+                target.put(record);
+                compacted.put(next.getKey(), new Entry(position, entry.length, entry.expireAt, entry.accessedAt));
+                position += entry.length;
+            }
+            target.force();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        entries = compacted;
+        writePosition = position;
+        liveBytes = position;
+    }
+
+    private static class Entry {
+        final int position;
+        final int length;
+        final long expireAt;
+        long accessedAt;
+
+        Entry(int position, int length, long expireAt, long accessedAt) {
+            this.position = position;
+            this.length = length;
+            this.expireAt = expireAt;
+            this.accessedAt = accessedAt;
+        }
+    }
+
+    private static class Removal {
+        final String reason;
+        final String key;
+        final String value;
+
+        Removal(String reason, String key, String value) {
+            this.reason = reason;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
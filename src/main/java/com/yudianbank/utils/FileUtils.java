@@ -1,15 +1,19 @@
 package com.yudianbank.utils;
 
 import com.google.common.collect.Lists;
-import org.redisson.api.RMapCache;
-import org.redisson.api.RedissonClient;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -21,10 +25,10 @@ import java.util.*;
 @Component
 public class FileUtils {
 
-    final String REDIS_FILE_PREVIEW_PDF_KEY = "converted-preview-pdf-file";
-
     @Autowired
-    RedissonClient redissonClient;
+    ConvertedIndexGuard convertedIndexGuard;
+    @Autowired
+    PreviewMetrics previewMetrics;
     @Value("${file.dir}")
     String fileDir;
 
@@ -32,12 +36,12 @@ public class FileUtils {
     String charset;
 
     /**
-     * 已转换过的文件集合(redis缓存)
+     * 文件是否已转换过(redis缓存)
+     * @param key
      * @return
      */
-    public Map<String, String> listConvertedFiles() {
-        RMapCache<String, String> convertedList = redissonClient.getMapCache(REDIS_FILE_PREVIEW_PDF_KEY);
-        return convertedList;
+    public boolean containsConvertedFile(String key) {
+        return null != convertedIndexGuard.get(key);
     }
 
     /**
@@ -45,8 +49,26 @@ public class FileUtils {
      * @return
      */
     public String getConvertedFile(String key) {
-        RMapCache<String, String> convertedList = redissonClient.getMapCache(REDIS_FILE_PREVIEW_PDF_KEY);
-        return convertedList.get(key);
+        long start = previewMetrics.start();
+        String value = convertedIndexGuard.get(key);
+        previewMetrics.record(PreviewMetrics.CACHE_LOOKUP, start, "cache", "redis");
+        previewMetrics.cacheAccess("redis", null != value);
+        return value;
+    }
+
+    /**
+     * 批量获取已转换过的文件(一次redis往返)
+     * @param keys
+     * @return 已转换过的文件名 -> 缓存内容
+     */
+    public Map<String, String> getConvertedFiles(Collection<String> keys) {
+        long start = previewMetrics.start();
+        Map<String, String> values = convertedIndexGuard.getAll(keys);
+        previewMetrics.record(PreviewMetrics.CACHE_LOOKUP, start, "cache", "redis-batch");
+        for (String key : keys) {
+            previewMetrics.cacheAccess("redis", values.containsKey(key));
+        }
+        return values;
     }
 
     /**
@@ -89,6 +111,37 @@ public class FileUtils {
         }
     }
 
+    /**
+     * 规范化url，用作缓存key(协议和主机名转小写，去掉默认端口，请求参数按名称排序)
+     * @param url 已解码的url
+     * @return
+     */
+    public String canonicalUrl(String url) {
+        url = url.trim();
+        int queryIndex = url.indexOf("?");
+        String path = queryIndex == -1 ? url : url.substring(0, queryIndex);
+        int hostStart = path.indexOf("://");
+        if (hostStart != -1) {
+            int hostEnd = path.indexOf("/", hostStart + 3);
+            String authority = (hostEnd == -1 ? path : path.substring(0, hostEnd)).toLowerCase();
+            if (authority.startsWith("http://") && authority.endsWith(":80")) {
+                authority = authority.substring(0, authority.length() - 3);
+            } else if (authority.startsWith("https://") && authority.endsWith(":443")) {
+                authority = authority.substring(0, authority.length() - 4);
+            }
+            path = authority + (hostEnd == -1 ? "" : path.substring(hostEnd));
+        }
+        Map<String, String> params = new TreeMap<>(urlSplit(url));
+        if (params.isEmpty()) {
+            return path;
+        }
+        StringBuilder canonical = new StringBuilder(path).append("?");
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            canonical.append(param.getKey()).append("=").append(param.getValue()).append("&");
+        }
+        return canonical.substring(0, canonical.length() - 1);
+    }
+
     /**
      * 获取文件后缀
      * @param fileName
@@ -151,30 +204,33 @@ public class FileUtils {
         return absolutePath.substring(fileDir.length());
     }
 
+    /**
+     * 登记已转换的文件，按格式设置ttl和最大空闲时间(见ConvertedIndexProperties)
+     * @param fileName
+     * @param value
+     */
     public void addConvertedFile(String fileName, String value){
-        RMapCache<String, String> convertedList = redissonClient.getMapCache(REDIS_FILE_PREVIEW_PDF_KEY);
-        convertedList.fastPut(fileName, value);
+        convertedIndexGuard.put(fileName, value);
+    }
+
+    public void removeConvertedFile(String fileName){
+        convertedIndexGuard.remove(fileName);
     }
 
     /**
-     * 判断文件编码格式
+     * 判断zip文件中文件名的编码(只区分UTF-8和GBK)
+     * <p>
+     *     按条目名的原始字节判断(压缩后的文件内容不能说明文件名的编码)：
+     *     通用标志位11标记了UTF-8的条目总是按UTF-8读取，不参与判断；其余含非ASCII字节的条目名全部是合法的UTF-8时使用UTF-8，
+     *     否则使用GBK(windows压缩工具的默认编码)。
+     * </p>
      * @param path
      * @return
      */
     public String getFileEncodeUTFGBK(String path){
         String enc = Charset.forName("GBK").name();
-        File file = new File(path);
-        InputStream in= null;
-        try {
-            in = new FileInputStream(file);
-            byte[] b = new byte[3];
-            in.read(b);
-            in.close();
-            if (b[0] == -17 && b[1] == -69 && b[2] == -65) {
-                enc = Charset.forName("UTF-8").name();
-            }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+        try (ZipFile zipFile = new ZipFile(path)) {
+            enc = zipNameEncoding(Collections.list(zipFile.getEntries()));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -182,6 +238,50 @@ public class FileUtils {
         return enc;
     }
 
+    /**
+     * 按条目名的原始字节判断编码
+     * @param entries
+     * @return UTF-8或GBK
+     */
+    static String zipNameEncoding(Collection<ZipArchiveEntry> entries) {
+        boolean utf8 = false;
+        for (ZipArchiveEntry entry : entries) {
+            if (entry.getGeneralPurposeBit().usesUTF8ForNames()) {
+                continue;
+            }
+            byte[] rawName = entry.getRawName();
+            if (null == rawName || isAscii(rawName)) {
+                continue;
+            }
+            if (!isUtf8(rawName)) {
+                return Charset.forName("GBK").name();
+            }
+            utf8 = true;
+        }
+        return utf8 ? StandardCharsets.UTF_8.name() : Charset.forName("GBK").name();
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUtf8(byte[] bytes) {
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes));
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
     /**
      * 对转换后的文件进行操作(改变编码方式)
      * @param outFilePath
@@ -0,0 +1,217 @@
+package com.yudianbank.utils;
+
+import com.yudianbank.param.ReturnResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * 图片多分辨率缩略图缓存
+ * <p>
+ *     原图通过SourceFileCache只下载一次，只在生成缩略图时才需要原图；按固定的几档宽度生成缩略图(jpg/bmp生成渐进式jpg，png生成png)，
+ *     解码时按目标宽度设置ImageIO的隔行采样，大图不会完整解码到内存。
+ *     gif可能是动图，直接使用原图。
+ *     生成的缩略图登记到转换文件缓存(key为rendition:文件名)，随登记过期或被淘汰时由ConvertedFileEvictions删除，
+ *     rendition目录不会无限增长。
+ * </p>
+ */
+@Component
+public class ImageRenditionCache {
+
+    static final String RENDITION_DIR = "rendition";
+    /**
+     * 缓存key前缀，与转换后的文件名区分
+     */
+    static final String CACHE_KEY_PREFIX = "rendition:";
+
+    @Value("${file.dir}")
+    String fileDir;
+    /**
+     * 缩略图宽度档位(升序)
+     */
+    @Value("${image.rendition.widths:320,640,1280,1920}")
+    int[] widths;
+    /**
+     * jpg缩略图质量
+     */
+    @Value("${image.rendition.jpeg.quality:0.85}")
+    float jpegQuality;
+    @Autowired
+    SourceFileCache sourceFileCache;
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    PreviewMetrics previewMetrics;
+
+    /**
+     * 同一张缩略图同时只生成一次
+     */
+    private final KeyedLocks rendering = new KeyedLocks();
+
+    /**
+     * 获取与请求宽度最接近的缩略图
+     * @param url 已解码的图片url
+     * @param suffix 图片后缀
+     * @param requestedWidth 期望宽度(视口宽度 * 设备像素比)
+     * @param needEncode
+     * @return code为0时content为缩略图(或原图)的绝对路径
+     */
+    public ReturnResponse<String> getRendition(String url, String suffix, int requestedWidth, String needEncode) {
+        if ("gif".equalsIgnoreCase(suffix)) {
+            return fetchSource(url, suffix, needEncode);
+        }
+        int width = chooseWidth(requestedWidth);
+        String format = "png".equalsIgnoreCase(suffix) ? "png" : "jpg";
+        String digest = DigestUtils.md5DigestAsHex(fileUtils.canonicalUrl(url).getBytes(StandardCharsets.UTF_8));
+        File rendition = new File(fileDir + RENDITION_DIR + File.separator + digest + "_" + width + "." + format);
+        boolean hit = rendition.isFile();
+        previewMetrics.cacheAccess("image.rendition", hit);
+        if (hit) {
+            // 缩略图只取决于url，命中时不需要原图
+            return new ReturnResponse<>(0, rendition.getName(), rendition.getAbsolutePath());
+        }
+        String key = rendition.getName();
+        Object lock = rendering.acquire(key);
+        ReturnResponse<String> source = null;
+        try {
+            synchronized (lock) {
+                if (!rendition.isFile()) {
+                    source = fetchSource(url, suffix, needEncode);
+                    if (0 != source.getCode()) {
+                        return source;
+                    }
+                    render(new File(source.getContent()), rendition, width, format);
+                    fileUtils.addConvertedFile(CACHE_KEY_PREFIX + key, RENDITION_DIR + File.separator + key);
+                }
+            }
+            return new ReturnResponse<>(0, rendition.getName(), rendition.getAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            // 无法解码时退回原图
+            return source;
+        } finally {
+            rendering.release(key);
+        }
+    }
+
+    private ReturnResponse<String> fetchSource(String url, String suffix, String needEncode) {
+        return sourceFileCache.fetch(url, suffix.toLowerCase(), fileUtils.getFileNameFromURL(url), needEncode);
+    }
+
+    /**
+     * 档位宽度列表
+     * @return
+     */
+    public int[] getWidths() {
+        return Arrays.copyOf(widths, widths.length);
+    }
+
+    /**
+     * 选择不小于请求宽度的最小档位，都小于请求宽度时取最大档位
+     * @param requestedWidth
+     * @return
+     */
+    int chooseWidth(int requestedWidth) {
+        for (int width : widths) {
+            if (width >= requestedWidth) {
+                return width;
+            }
+        }
+        return widths[widths.length - 1];
+    }
+
+    /**
+     * 隔行采样解码并缩放到目标宽度
+     * @param source
+     * @param target
+     * @param width
+     * @param format
+     * @throws IOException
+     */
+    private void render(File source, File target, int width, String format) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("不支持的图片格式：" + source.getName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int sourceWidth = reader.getWidth(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, sourceWidth / width);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        image = scaleToWidth(image, width, "jpg".equals(format));
+        target.getParentFile().mkdirs();
+        File temp = new File(target.getPath() + ".tmp");
+        write(image, temp, format);
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private BufferedImage scaleToWidth(BufferedImage image, int width, boolean opaque) {
+        int targetWidth = Math.min(width, image.getWidth());
+        int targetHeight = Math.max(1, (int) ((long) image.getHeight() * targetWidth / image.getWidth()));
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        if (targetWidth == image.getWidth() && image.getType() == type) {
+            return image;
+        }
+        BufferedImage scaled = new BufferedImage(targetWidth, targetHeight, type);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (opaque) {
+                g.setColor(java.awt.Color.WHITE);
+                g.fillRect(0, 0, targetWidth, targetHeight);
+            }
+            g.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private void write(BufferedImage image, File target, String format) throws IOException {
+        if (!"jpg".equals(format)) {
+            ImageIO.write(image, format, target);
+            return;
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
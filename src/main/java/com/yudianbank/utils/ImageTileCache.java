@@ -0,0 +1,285 @@
+package com.yudianbank.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.yudianbank.param.ReturnResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 超大图片的金字塔瓦片(DZI方式：第maxLevel层为原图，每往下一层宽高减半，直到1x1)
+ * <p>
+ *     瓦片在第一次被请求时生成：按瓦片在原图中的区域设置ImageIO的sourceRegion和隔行采样读取，
+ *     内存占用只和瓦片大小有关。生成的瓦片写到file.dir/tiles下，按总字节数做LRU淘汰。
+ * </p>
+ */
+@Component
+public class ImageTileCache {
+
+    static final String TILE_DIR = "tiles";
+
+    @Value("${file.dir}")
+    String fileDir;
+    /**
+     * 瓦片边长
+     */
+    @Value("${image.tile.size:256}")
+    int tileSize;
+    /**
+     * 像素数超过该值的图片使用瓦片方式预览
+     */
+    @Value("${image.tile.threshold.pixels:25000000}")
+    long thresholdPixels;
+    /**
+     * 瓦片缓存占用的最大磁盘空间
+     */
+    @Value("${image.tile.cache.max.bytes:1073741824}")
+    long maxBytes;
+    @Autowired
+    SourceFileCache sourceFileCache;
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    PreviewMetrics previewMetrics;
+
+    private Cache<String, File> tiles;
+
+    @PostConstruct
+    public void init() {
+        tiles = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, File>weigher((key, file) -> (int) Math.min(Integer.MAX_VALUE, file.length()))
+                .<String, File>removalListener(notification -> {
+                    if (notification.getCause() == RemovalCause.SIZE) {
+                        notification.getValue().delete();
+                    }
+                })
+                .recordStats()
+                .build();
+        previewMetrics.monitor(tiles, "image.tile");
+    }
+
+    /**
+     * 读取图片尺寸(只读文件头，不解码)
+     * @param url 已解码的图片url
+     * @param suffix
+     * @param needEncode
+     * @return code为0时content为图片信息
+     */
+    public ReturnResponse<TiledImage> describe(String url, String suffix, String needEncode) {
+        ReturnResponse<String> source = sourceFileCache.fetch(url, suffix.toLowerCase(), fileUtils.getFileNameFromURL(url), needEncode);
+        if (0 != source.getCode()) {
+            return new ReturnResponse<>(source.getCode(), source.getMsg(), null);
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(new File(source.getContent()))) {
+            ImageReader reader = openReader(in);
+            try {
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                return new ReturnResponse<>(0, source.getContent(), new TiledImage(width, height, tileSize, formatOf(suffix)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ReturnResponse<>(1, e.getMessage(), null);
+        }
+    }
+
+    /**
+     * 是否需要使用瓦片方式预览
+     * @param image
+     * @return
+     */
+    public boolean needTiles(TiledImage image) {
+        return (long) image.getWidth() * image.getHeight() > thresholdPixels;
+    }
+
+    /**
+     * 获取瓦片，不存在时生成
+     * @param url 已解码的图片url
+     * @param suffix
+     * @param needEncode
+     * @param level 层级，0为1x1，maxLevel为原图
+     * @param col
+     * @param row
+     * @return code为0时content为瓦片的绝对路径
+     */
+    public ReturnResponse<String> getTile(String url, String suffix, String needEncode, int level, int col, int row) {
+        String digest = DigestUtils.md5DigestAsHex(fileUtils.canonicalUrl(url).getBytes(StandardCharsets.UTF_8));
+        File tile = new File(fileDir + TILE_DIR + File.separator + digest + File.separator + level
+                + File.separator + col + "_" + row + "." + formatOf(suffix));
+        // 已生成过的瓦片直接返回，不再读取原图
+        if (tile.isFile()) {
+            if (null == tiles.getIfPresent(tile.getPath())) {
+                tiles.put(tile.getPath(), tile);
+            }
+            return new ReturnResponse<>(0, tile.getName(), tile.getAbsolutePath());
+        }
+        ReturnResponse<TiledImage> described = describe(url, suffix, needEncode);
+        if (0 != described.getCode()) {
+            return new ReturnResponse<>(described.getCode(), described.getMsg(), null);
+        }
+        TiledImage image = described.getContent();
+        if (level < 0 || level > image.getMaxLevel() || col < 0 || row < 0
+                || col >= image.columns(level) || row >= image.rows(level)) {
+            return new ReturnResponse<>(1, "瓦片不存在", null);
+        }
+        try {
+            File cached = tiles.get(tile.getPath(), () -> {
+                if (!tile.isFile()) {
+                    renderTile(new File(described.getMsg()), tile, image, level, col, row);
+                }
+                return tile;
+            });
+            return new ReturnResponse<>(0, tile.getName(), cached.getAbsolutePath());
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return new ReturnResponse<>(1, e.getCause().getMessage(), null);
+        }
+    }
+
+    private String formatOf(String suffix) {
+        return "png".equalsIgnoreCase(suffix) ? "png" : "jpg";
+    }
+
+    private void renderTile(File source, File target, TiledImage image, int level, int col, int row) throws IOException {
+        int scale = 1 << (image.getMaxLevel() - level);
+        int tileWidth = Math.min(tileSize, image.levelWidth(level) - col * tileSize);
+        int tileHeight = Math.min(tileSize, image.levelHeight(level) - row * tileSize);
+        long sourceX = (long) col * tileSize * scale;
+        long sourceY = (long) row * tileSize * scale;
+        Rectangle region = new Rectangle((int) sourceX, (int) sourceY,
+                (int) Math.min((long) tileWidth * scale, image.getWidth() - sourceX),
+                (int) Math.min((long) tileHeight * scale, image.getHeight() - sourceY));
+        BufferedImage read;
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            ImageReader reader = openReader(in);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                param.setSourceSubsampling(scale, scale, 0, 0);
+                read = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        boolean opaque = "jpg".equals(image.getFormat());
+        BufferedImage tileImage = new BufferedImage(tileWidth, tileHeight, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = tileImage.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            if (opaque) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, tileWidth, tileHeight);
+            }
+            g.drawImage(read, 0, 0, tileWidth, tileHeight, null);
+        } finally {
+            g.dispose();
+        }
+        target.getParentFile().mkdirs();
+        File temp = new File(target.getPath() + ".tmp");
+        ImageIO.write(tileImage, opaque ? "jpeg" : "png", temp);
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ImageReader openReader(ImageInputStream in) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            throw new IOException("不支持的图片格式");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+        return reader;
+    }
+
+    /**
+     * 瓦片金字塔描述
+     */
+    public static class TiledImage {
+        private final int width;
+        private final int height;
+        private final int tileSize;
+        private final int maxLevel;
+        private final String format;
+
+        public TiledImage(int width, int height, int tileSize, String format) {
+            this.width = width;
+            this.height = height;
+            this.tileSize = tileSize;
+            this.format = format;
+            int level = 0;
+            while ((1L << level) < Math.max(width, height)) {
+                level++;
+            }
+            this.maxLevel = level;
+        }
+
+        int levelWidth(int level) {
+            return (int) ((width + (1L << (maxLevel - level)) - 1) >> (maxLevel - level));
+        }
+
+        int levelHeight(int level) {
+            return (int) ((height + (1L << (maxLevel - level)) - 1) >> (maxLevel - level));
+        }
+
+        int columns(int level) {
+            return (levelWidth(level) + tileSize - 1) / tileSize;
+        }
+
+        int rows(int level) {
+            return (levelHeight(level) + tileSize - 1) / tileSize;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getTileSize() {
+            return tileSize;
+        }
+
+        public int getMaxLevel() {
+            return maxLevel;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        /**
+         * DZI描述文件
+         * @return
+         */
+        public String toDzi() {
+            return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" TileSize=\"" + tileSize
+                    + "\" Overlap=\"0\" Format=\"" + format + "\"><Size Width=\"" + width + "\" Height=\"" + height + "\"/></Image>";
+        }
+    }
+}
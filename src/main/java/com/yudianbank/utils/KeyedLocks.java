@@ -0,0 +1,53 @@
+package com.yudianbank.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按key加锁(同一个key的下载、转换同时只执行一次)
+ * <p>
+ *     锁对象按引用计数保留，最后一个持有或等待它的线程释放后才移除；
+ *     不会出现锁对象被先完成的线程移除后，新来的线程拿到另一个锁对象、与仍在等待的线程同时执行的情况。
+ *     用法：Object lock = locks.acquire(key); try { synchronized (lock) {...} } finally { locks.release(key); }
+ * </p>
+ */
+public class KeyedLocks {
+
+    private final Map<String, Lock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * 获取key对应的锁对象(引用计数加一)，调用方在finally中release
+     * @param key
+     * @return
+     */
+    public Object acquire(String key) {
+        return locks.compute(key, (k, lock) -> {
+            Lock acquired = null == lock ? new Lock() : lock;
+            acquired.users++;
+            return acquired;
+        });
+    }
+
+    /**
+     * 释放(引用计数减一，为0时移除)
+     * @param key
+     */
+    public void release(String key) {
+        locks.computeIfPresent(key, (k, lock) -> --lock.users == 0 ? null : lock);
+    }
+
+    /**
+     * 正在持有或等待锁的key数
+     * @return
+     */
+    public int size() {
+        return locks.size();
+    }
+
+    private static class Lock {
+        /**
+         * 只在compute中修改
+         */
+        private int users;
+    }
+}
@@ -0,0 +1,191 @@
+package com.yudianbank.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 本机的转换文件缓存(redis不可用时使用，见ConvertedIndexGuard)
+ * <p>
+ *     内存中按LRU保留最近使用的条目，每次修改追加一行到日志文件，重启后从日志恢复；
+ *     日志行数超过条目数的两倍时重写日志。
+ *     超过converted.index.local.max-value-length的值(如大压缩包的文件树)不保留，redis不可用时这些文件按未转换处理，
+ *     本机缓存的内存和日志大小不超过条目数乘以该长度。
+ *     日志不放在file.dir下(file.dir可以通过http直接访问)。
+ * </p>
+ */
+@Component
+public class LocalConvertedFileIndex {
+
+    private static final char PUT = 'P';
+    private static final char REMOVE = 'R';
+
+    @Value("${converted.index.local.dir:${user.home}/.file-preview}")
+    String dir;
+    /**
+     * 最多保留的条目数
+     */
+    @Value("${converted.index.local.max-entries:100000}")
+    int maxEntries;
+    /**
+     * 保留的值的最大长度(字符数)
+     */
+    @Value("${converted.index.local.max-value-length:8192}")
+    int maxValueLength;
+
+    private LinkedHashMap<String, String> entries;
+    private File journalFile;
+    private Writer journal;
+    private int journalLines;
+
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        new File(dir).mkdirs();
+        journalFile = new File(dir, "converted-index.log");
+        if (journalFile.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while (null != (line = reader.readLine())) {
+                    replay(line);
+                }
+            } catch (IOException e) {
+                // 日志损坏时丢弃，本机缓存只是redis的备份
+                e.printStackTrace();
+                entries.clear();
+            }
+        }
+        compact();
+    }
+
+    @PreDestroy
+    public synchronized void destroy() throws IOException {
+        if (null != journal) {
+            journal.close();
+        }
+    }
+
+    public synchronized String get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> values = new HashMap<>();
+        for (String key : keys) {
+            String value = entries.get(key);
+            if (null != value) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    public synchronized void put(String key, String value) {
+        if (value.length() > maxValueLength) {
+            remove(key);
+            return;
+        }
+        if (value.equals(entries.put(key, value))) {
+            return;
+        }
+        append(PUT + "\t" + escape(key) + "\t" + escape(value));
+    }
+
+    public synchronized void remove(String key) {
+        if (null != entries.remove(key)) {
+            append(REMOVE + "\t" + escape(key));
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void replay(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields[0].length() != 1) {
+            return;
+        }
+        if (fields.length == 3 && fields[0].charAt(0) == PUT) {
+            String value = unescape(fields[2]);
+            if (value.length() > maxValueLength) {
+                // 之前的版本没有限制值的长度
+                entries.remove(unescape(fields[1]));
+            } else {
+                entries.put(unescape(fields[1]), value);
+            }
+        } else if (fields.length == 2 && fields[0].charAt(0) == REMOVE) {
+            entries.remove(unescape(fields[1]));
+        }
+    }
+
+    private void append(String line) {
+        try {
+            journal.write(line);
+            journal.write('\n');
+            journal.flush();
+            if (++journalLines > Math.max(2 * entries.size(), 1000)) {
+                compact();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 按当前条目重写日志
+     */
+    private void compact() throws IOException {
+        if (null != journal) {
+            journal.close();
+        }
+        File temp = new File(dir, "converted-index.log.tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writer.write(PUT + "\t" + escape(entry.getKey()) + "\t" + escape(entry.getValue()) + "\n");
+            }
+        }
+        Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), StandardCharsets.UTF_8));
+        journalLines = entries.size();
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static String unescape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
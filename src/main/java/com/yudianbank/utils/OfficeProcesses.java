@@ -0,0 +1,80 @@
+package com.yudianbank.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本机的office进程(读取/proc，只支持linux)
+ * <p>
+ *     看门狗通过本类按端口查找、统计内存和强制结束office进程；测试和压测中替换为不操作真实进程的实现，
+ *     避免结束本机上其他程序使用同一端口启动的office。
+ * </p>
+ */
+@Component
+public class OfficeProcesses {
+
+    /**
+     * 查找office实例的soffice进程
+     * @param port 实例的端口
+     * @return 进程号
+     */
+    public List<String> find(int port) {
+        List<String> pids = new ArrayList<>();
+        File[] processes = new File("/proc").listFiles((dir, name) -> name.chars().allMatch(Character::isDigit));
+        if (null == processes) {
+            return pids;
+        }
+        for (File process : processes) {
+            try {
+                String cmdline = new String(Files.readAllBytes(new File(process, "cmdline").toPath()), StandardCharsets.UTF_8);
+                if (cmdline.contains("soffice") && (cmdline.contains("port=" + port + ";") || cmdline.endsWith("port=" + port))) {
+                    pids.add(process.getName());
+                }
+            } catch (IOException e) {
+                // 进程已退出或无权限
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * 进程占用的物理内存
+     * @param pid
+     * @return 进程已退出时返回-1
+     */
+    public long rssBytes(String pid) {
+        try {
+            for (String line : Files.readAllLines(new File("/proc/" + pid + "/status").toPath(), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // 进程已退出
+        }
+        return -1;
+    }
+
+    /**
+     * 强制结束进程(挂死的进程不一定能正常退出)
+     * @param pid
+     */
+    public void kill(String pid) {
+        if (!new File("/proc/" + pid).exists()) {
+            return;
+        }
+        try {
+            Runtime.getRuntime().exec(new String[]{"kill", "-9", pid}).waitFor();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,14 +1,58 @@
 package com.yudianbank.utils;
+import com.yudianbank.extend.ControlDocumentFormatRegistry;
 import org.artofsolving.jodconverter.OfficeDocumentConverter;
+import org.artofsolving.jodconverter.document.DocumentFormat;
+import org.artofsolving.jodconverter.office.OfficeException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @Component
 public class OfficeToPdf {
     @Autowired
     ConverterUtils converterUtils;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Autowired
+    ConverterWatchdog converterWatchdog;
+    /**
+     * 正在进行的转换数
+     */
+    private final AtomicInteger converting = new AtomicInteger();
+    /**
+     * office实例的端口 -> 该实例上正在进行的转换数
+     */
+    private final Map<Integer, AtomicInteger> convertingByPort = new ConcurrentHashMap<>();
+
+    /**
+     * 实例上正在进行的转换数，第一次使用时注册该实例的指标
+     * @param port
+     * @return
+     */
+    private AtomicInteger convertingOn(int port) {
+        return convertingByPort.computeIfAbsent(port, key -> {
+            AtomicInteger busy = new AtomicInteger();
+            String instance = String.valueOf(key);
+            previewMetrics.gauge("preview.converter.busy", busy::get, "instance", instance);
+            // 每个office进程同时处理一个转换，其余的在jodconverter中排队
+            previewMetrics.gauge("preview.converter.utilization", () -> Math.min(1.0, busy.get()), "instance", instance);
+            return busy;
+        });
+    }
+
+    /**
+     * 是否有空闲的office进程(正在进行的转换数少于进程数)
+     * @return
+     */
+    public boolean hasIdleInstance() {
+        return converting.get() < Math.max(1, converterUtils.getOfficePorts().size());
+    }
+
     /**
      * 使Office2003-2007全部格式的文档(.doc|.docx|.xls|.xlsx|.ppt|.pptx) 转化为pdf文件<br>
      *
@@ -16,10 +60,49 @@ public class OfficeToPdf {
      *            源文件路径，如："e:/test.docx"
      * @param outputFilePath
      *            目标文件路径，如："e:/test_docx.pdf"
-     * @return
+     * @return 转换超时或失败时返回false
      */
     public  boolean openOfficeToPDF(String inputFilePath, String outputFilePath) {
-        return office2pdf(inputFilePath, outputFilePath);
+        return openOfficeToPDF(inputFilePath, outputFilePath, null);
+    }
+
+    /**
+     * 只转换指定页为pdf(用于先显示前几页)
+     *
+     * @param inputFilePath
+     * @param outputFilePath
+     * @param pageRange 页码范围，如："1-10"，为null时转换全部
+     * @return 转换超时或失败时返回false
+     */
+    public  boolean openOfficeToPDF(String inputFilePath, String outputFilePath, String pageRange) {
+        long start = previewMetrics.start();
+        boolean success = false;
+        int port = converterUtils.officePort;
+        converting.incrementAndGet();
+        try {
+            port = converterUtils.nextOfficePort();
+            int instance = port;
+            AtomicInteger busy = convertingOn(port);
+            busy.incrementAndGet();
+            try {
+                success = converterWatchdog.convert(getPostfix(inputFilePath), port,
+                        () -> office2pdf(inputFilePath, outputFilePath, pageRange, instance));
+            } finally {
+                busy.decrementAndGet();
+            }
+            return success;
+        } catch (OfficeException e) {
+            // office未启动完成或启动失败
+            e.printStackTrace();
+            return false;
+        } finally {
+            converting.decrementAndGet();
+            previewMetrics.record(PreviewMetrics.CONVERT, start,
+                    "format", getPostfix(inputFilePath).toLowerCase(),
+                    "target", (null == outputFilePath ? "pdf" : getPostfix(outputFilePath).toLowerCase()) + (null == pageRange ? "" : ".range"),
+                    "instance", String.valueOf(port),
+                    "result", success ? "success" : "failure");
+        }
     }
 
     /**
@@ -42,6 +125,27 @@ public class OfficeToPdf {
         converter.convert(inputFile, outputFile);
     }
 
+    /**
+     * 按指定格式转换文件
+     *
+     * @param inputFile
+     * @param outputFilePath_end
+     * @param converter
+     * @param format 为null时按输出文件后缀确定格式
+     */
+    public static void converterFile(File inputFile, String outputFilePath_end,
+                                     OfficeDocumentConverter converter, DocumentFormat format) {
+        if (null == format) {
+            converterFile(inputFile, outputFilePath_end, null, null, converter);
+            return;
+        }
+        File outputFile = new File(outputFilePath_end);
+        if (!outputFile.getParentFile().exists()) {
+            outputFile.getParentFile().mkdirs();
+        }
+        converter.convert(inputFile, outputFile, format);
+    }
+
     /**
      * 使Office2003-2007全部格式的文档(.doc|.docx|.xls|.xlsx|.ppt|.pptx) 转化为pdf文件
      *
@@ -52,8 +156,34 @@ public class OfficeToPdf {
      * @return
      */
     public  boolean office2pdf(String inputFilePath, String outputFilePath) {
+        return office2pdf(inputFilePath, outputFilePath, null);
+    }
+
+    /**
+     * 转化为pdf文件，可以只转换部分页
+     *
+     * @param inputFilePath
+     * @param outputFilePath
+     * @param pageRange 页码范围，为null时转换全部
+     * @return
+     */
+    public  boolean office2pdf(String inputFilePath, String outputFilePath, String pageRange) {
+        return office2pdf(inputFilePath, outputFilePath, pageRange, converterUtils.nextOfficePort());
+    }
+
+    /**
+     * 在指定office实例上转化为pdf文件
+     *
+     * @param inputFilePath
+     * @param outputFilePath
+     * @param pageRange 页码范围，为null时转换全部
+     * @param port office实例的端口
+     * @return
+     */
+    public  boolean office2pdf(String inputFilePath, String outputFilePath, String pageRange, int port) {
+        DocumentFormat format = null == pageRange ? null : ControlDocumentFormatRegistry.pdfPageRange(pageRange);
         boolean flag = false;
-        OfficeDocumentConverter converter = converterUtils.getDocumentConverter();
+        OfficeDocumentConverter converter = converterUtils.getDocumentConverter(port);
         if (null != inputFilePath) {
             File inputFile = new File(inputFilePath);
             // 判断目标文件路径是否为空
@@ -61,14 +191,12 @@ public class OfficeToPdf {
                 // 转换后的文件路径
                 String outputFilePath_end = getOutputFilePath(inputFilePath);
                 if (inputFile.exists()) {// 找不到源文件, 则返回
-                    converterFile(inputFile, outputFilePath_end, inputFilePath,
-                            outputFilePath, converter);
+                    converterFile(inputFile, outputFilePath_end, converter, format);
                     flag = true;
                 }
             } else {
                 if (inputFile.exists()) {// 找不到源文件, 则返回
-                    converterFile(inputFile, outputFilePath, inputFilePath,
-                            outputFilePath, converter);
+                    converterFile(inputFile, outputFilePath, converter, format);
                     flag = true;
                 }
             }
@@ -0,0 +1,151 @@
+package com.yudianbank.utils;
+
+import com.google.common.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 预览各阶段的监控指标(通过actuator以prometheus格式输出：/actuator/prometheus)
+ * 阶段耗时同时累计到RequestTimings，用于当前请求的Server-Timing响应头
+ * <ul>
+ *     <li>preview.stage.&lt;阶段&gt;：各阶段耗时(如preview.stage.download)，标签见调用处</li>
+ *     <li>preview.cache.requests：缓存命中/未命中次数，cache标签区分缓存</li>
+ *     <li>preview.download.bytes：下载字节数，按host区分</li>
+ *     <li>executor.*：线程池活动线程数与排队任务数</li>
+ *     <li>cache.*：本地guava缓存的命中率与大小</li>
+ * </ul>
+ * prometheus要求同名指标的标签key完全相同：每个阶段单独一个指标名，同一阶段的各调用处传相同的标签key，
+ * 值为null的标签记为none。
+ */
+@Component
+public class PreviewMetrics {
+
+    public static final String URL_PARSE = "url.parse";
+    public static final String CACHE_LOOKUP = "cache.lookup";
+    public static final String DOWNLOAD = "download";
+    public static final String CONVERT = "convert";
+    public static final String ARCHIVE_PARSE = "archive.parse";
+    public static final String ARCHIVE_EXTRACT = "archive.extract";
+    public static final String FILE_SERVE = "file.serve";
+    public static final String ARTIFACT_PUT = "artifact.put";
+    public static final String ARTIFACT_FETCH = "artifact.fetch";
+
+    @Autowired
+    MeterRegistry registry;
+
+    /**
+     * gauge只弱引用被观察的对象，这里保持引用防止被回收
+     */
+    private final List<Object> gaugeSources = new CopyOnWriteArrayList<>();
+
+    /**
+     * 开始计时
+     * @return 开始时间(纳秒)，传给record
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录阶段耗时
+     * @param stage 阶段，见本类常量
+     * @param startNanos start()的返回值
+     * @param tags 额外标签，key/value交替，同一阶段的各调用处key必须相同
+     * @return 耗时(纳秒)
+     */
+    public long record(String stage, long startNanos, String... tags) {
+        long elapsed = System.nanoTime() - startNanos;
+        Timer.builder("preview.stage." + stage)
+                .tags(tagsOf(tags))
+                .register(registry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        RequestTimings.add(stage, elapsed);
+        return elapsed;
+    }
+
+    /**
+     * 记录缓存命中
+     * @param cache 缓存名
+     * @param hit
+     */
+    public void cacheAccess(String cache, boolean hit) {
+        Counter.builder("preview.cache.requests")
+                .tag("cache", cache)
+                .tag("result", hit ? "hit" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 记录下载字节数
+     * @param host
+     * @param bytes
+     */
+    public void downloaded(String host, long bytes) {
+        DistributionSummary.builder("preview.download.bytes")
+                .baseUnit("bytes")
+                .tag("host", null == host ? "none" : host)
+                .register(registry)
+                .record(bytes);
+    }
+
+    /**
+     * 监控线程池(活动线程数、排队任务数、完成任务数)
+     * @param executor
+     * @param name
+     * @return 包装后的线程池，需使用返回值提交任务
+     */
+    public ExecutorService monitor(ExecutorService executor, String name) {
+        return ExecutorServiceMetrics.monitor(registry, executor, name);
+    }
+
+    /**
+     * 监控guava缓存(需开启recordStats)
+     * @param cache
+     * @param name
+     */
+    public void monitor(Cache<?, ?> cache, String name) {
+        GuavaCacheMetrics.monitor(registry, cache, name);
+    }
+
+    /**
+     * 值为null的标签记为none
+     * @param tags key/value交替
+     * @return
+     */
+    static String[] tagsOf(String... tags) {
+        String[] normalized = tags.clone();
+        for (int i = 1; i < normalized.length; i += 2) {
+            if (null == normalized[i]) {
+                normalized[i] = "none";
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * 注册数值型指标
+     * @param name
+     * @param value
+     * @param tags
+     */
+    public void gauge(String name, Supplier<Number> value, String... tags) {
+        gaugeSources.add(value);
+        Gauge.builder(name, value, supplier -> supplier.get().doubleValue())
+                .tags(tags)
+                .register(registry);
+    }
+}
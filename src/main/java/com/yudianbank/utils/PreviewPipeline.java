@@ -0,0 +1,346 @@
+package com.yudianbank.utils;
+
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.store.ArtifactCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 预览前的下载与转换流程(在线预览和预转换共用)
+ * <p>
+ *     同一个输出文件同时只转换一次，预转换和用户请求同时到达时后到的一方等待并直接使用缓存结果。
+ *     在线预览较大的office文件时先只导出前几页返回，完整文件在后台转换完成后由页面替换。
+ *     后台转换期间在转换文件缓存中登记partial:&lt;文件名&gt;(值为前几页的文件)，其他节点据此返回前几页而不重复转换；
+ *     完整文件转换结束(成功或失败)后删除该登记、前几页的文件及其共享存储中的副本。
+ * </p>
+ * @author yudian-it
+ */
+@Component
+public class PreviewPipeline {
+
+    /**
+     * office文件只转换了前几页，完整文件在后台转换中
+     */
+    public static final String PARTIAL = "PARTIAL";
+    /**
+     * 正在后台转换完整文件的登记：转换文件缓存的key前缀
+     */
+    public static final String PARTIAL_KEY_PREFIX = "partial:";
+
+    @Autowired
+    OfficeToPdf officeToPdf;
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    DownloadUtils downloadUtils;
+    @Autowired
+    ZipReader zipReader;
+    @Autowired
+    SimTextUtil simTextUtil;
+    @Autowired
+    CompressedSidecarWriter compressedSidecarWriter;
+    @Autowired
+    ArtifactCache artifactCache;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Value("${file.dir}")
+    String fileDir;
+    /**
+     * 较大的文件先转换前几页，完整文件在后台转换
+     */
+    @Value("${office.progressive.enabled:true}")
+    boolean progressiveEnabled;
+    /**
+     * 先转换的页数
+     */
+    @Value("${office.progressive.pages:10}")
+    int progressivePages;
+    /**
+     * 源文件大于该值(字节)时才先转换前几页
+     */
+    @Value("${office.progressive.min.bytes:1048576}")
+    long progressiveMinBytes;
+    /**
+     * 后台完整转换的线程数
+     */
+    @Value("${office.progressive.threads:2}")
+    int progressiveThreads;
+
+    /**
+     * 同一个缓存key同时只处理一次
+     */
+    private final KeyedLocks converting = new KeyedLocks();
+    /**
+     * 已返回前几页、本节点正在后台完整转换的文件
+     */
+    private final Set<String> finishing = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor backgroundExecutor;
+    private ExecutorService monitoredBackgroundExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        backgroundExecutor = new ThreadPoolExecutor(progressiveThreads, progressiveThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(100), runnable -> {
+            Thread thread = new Thread(runnable, "office-finish-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        monitoredBackgroundExecutor = previewMetrics.monitor(backgroundExecutor, "preview.office.finish");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        backgroundExecutor.shutdownNow();
+    }
+
+    /**
+     * 压缩包：下载并抽取文件列表
+     * @param decodedUrl 已解码的url
+     * @param suffix
+     * @param fileName
+     * @param needEncode
+     * @return code为0时content为文件树(json)，为null表示压缩格式不受支持
+     */
+    public ReturnResponse<String> prepareCompress(String decodedUrl, String suffix, String fileName, String needEncode) {
+        Object lock = converting.acquire(fileName);
+        try {
+            synchronized (lock) {
+                // 判断文件名是否存在(redis缓存读取)
+                String fileTree = fileUtils.getConvertedFile(fileName);
+                if (!StringUtils.hasText(fileTree)) {
+                    ReturnResponse<String> response = downloadUtils.downLoad(decodedUrl, suffix, fileName, needEncode);
+                    if (0 != response.getCode()) {
+                        return response;
+                    }
+                    String filePath = response.getContent();
+                    fileTree = null;
+                    // 文件树由zipReader在开始解压前登记，解压中止时删除
+                    if ("zip".equalsIgnoreCase(suffix)
+                            || "jar".equalsIgnoreCase(suffix)
+                            || "gzip".equalsIgnoreCase(suffix)) {
+                        fileTree = zipReader.readZipFile(filePath, fileName);
+                    } else if ("rar".equalsIgnoreCase(suffix)) {
+                        fileTree = zipReader.unRar(filePath, fileName);
+                    }
+                }
+                return new ReturnResponse<>(0, "SUCCESS", fileTree);
+            }
+        } finally {
+            converting.release(fileName);
+        }
+    }
+
+    /**
+     * office文件：下载并转换为pdf(excel转换为html)
+     * @param decodedUrl 已解码的url
+     * @param suffix
+     * @param fileName
+     * @param selectDay
+     * @param needEncode
+     * @return code为0时content为转换后的文件名
+     */
+    public ReturnResponse<String> prepareOffice(String decodedUrl, String suffix, String fileName, String selectDay, String needEncode) {
+        return prepareOffice(decodedUrl, suffix, fileName, selectDay, needEncode, false);
+    }
+
+    /**
+     * office文件：下载并转换为pdf(excel转换为html)
+     * @param decodedUrl 已解码的url
+     * @param suffix
+     * @param fileName
+     * @param selectDay
+     * @param needEncode
+     * @param progressive 较大的文件是否先只转换前几页
+     * @return code为0时content为转换后的文件名；msg为PARTIAL时只有前几页(见partialNameOf)，完整文件在后台转换中
+     */
+    public ReturnResponse<String> prepareOffice(String decodedUrl, String suffix, String fileName, String selectDay, String needEncode, boolean progressive) {
+        String pdfName = officeOutputName(fileName, suffix, selectDay);
+        System.out.println(pdfName);
+        Object lock = converting.acquire(pdfName);
+        try {
+            synchronized (lock) {
+                // 判断之前是否已转换过，如果转换过，直接返回，否则执行转换
+                String relativePath = fileUtils.getConvertedFile(pdfName);
+                boolean converted = StringUtils.hasText(relativePath) && artifactCache.ensureLocal(relativePath);
+                if (!converted && isFinishing(pdfName)) {
+                    return new ReturnResponse<>(0, PARTIAL, pdfName);
+                }
+                if (!converted && StringUtils.hasText(relativePath)) {
+                    // 其他节点转换的文件在本地和存储中都不存在了，重新转换
+                    System.out.println(pdfName + "已登记但文件不可用，重新转换");
+                }
+                if (!converted) {
+                    System.out.println(pdfName+"转化过程中。。。");
+                    String filePath = fileDir + fileName;
+                    if (!new File(filePath).exists()) {
+                        ReturnResponse<String> response = downloadUtils.downLoad(decodedUrl, suffix, null, needEncode);
+                        if (0 != response.getCode()) {
+                            return response;
+                        }
+                        filePath = response.getContent();
+                    }
+                    String outFilePath = fileDir + pdfName;
+                    if (progressive && convertFirstPages(filePath, pdfName)) {
+                        return new ReturnResponse<>(0, PARTIAL, pdfName);
+                    }
+                    if (!convert(filePath, outFilePath, pdfName, suffix)) {
+                        return new ReturnResponse<>(1, "文件转换失败或超时，请稍后再试", null);
+                    }
+                }
+                return new ReturnResponse<>(0, "SUCCESS", pdfName);
+            }
+        } finally {
+            converting.release(pdfName);
+        }
+    }
+
+    /**
+     * office文件转换后的文件名(转换文件缓存的key)
+     * @param fileName
+     * @param suffix
+     * @param selectDay
+     * @return excel转换为html，其他转换为pdf
+     */
+    public static String officeOutputName(String fileName, String suffix, String selectDay) {
+        return "("+selectDay+")"+fileName.substring(0, fileName.lastIndexOf(".") + 1)
+                + ((suffix.equalsIgnoreCase("xls") || suffix.equalsIgnoreCase("xlsx")) ?
+                "html" : "pdf");
+    }
+
+    /**
+     * 转换后的文件状态(用于只返回了前几页时查询完整文件)
+     * @param pdfName prepareOffice返回的文件名
+     * @return code为0且msg为SUCCESS时完整文件已可用，msg为PARTIAL时仍在转换
+     */
+    public ReturnResponse<String> officeStatus(String pdfName) {
+        if (StringUtils.hasText(fileUtils.getConvertedFile(pdfName))) {
+            return new ReturnResponse<>(0, "SUCCESS", pdfName);
+        }
+        if (finishing.contains(pdfName) || StringUtils.hasText(fileUtils.getConvertedFile(PARTIAL_KEY_PREFIX + pdfName))) {
+            return new ReturnResponse<>(0, PARTIAL, pdfName);
+        }
+        return new ReturnResponse<>(1, "文件转换失败，请刷新重试", null);
+    }
+
+    /**
+     * 只转换了前几页时的文件名
+     * @param pdfName
+     * @return
+     */
+    public static String partialNameOf(String pdfName) {
+        return pdfName.substring(0, pdfName.lastIndexOf(".")) + ".first.pdf";
+    }
+
+    /**
+     * 完整文件是否正在后台转换(本节点或其他节点)
+     * @param pdfName
+     * @return 其他节点在转换时，前几页的文件可用才返回true
+     */
+    private boolean isFinishing(String pdfName) {
+        if (finishing.contains(pdfName)) {
+            return true;
+        }
+        String partialName = fileUtils.getConvertedFile(PARTIAL_KEY_PREFIX + pdfName);
+        return StringUtils.hasText(partialName) && artifactCache.ensureLocal(partialName);
+    }
+
+    /**
+     * 先转换前几页，成功后在后台转换完整文件
+     * @return 是否已转换前几页
+     */
+    private boolean convertFirstPages(String filePath, String pdfName) {
+        if (!progressiveEnabled || !pdfName.endsWith(".pdf") || new File(filePath).length() < progressiveMinBytes) {
+            return false;
+        }
+        String partialName = partialNameOf(pdfName);
+        if (!officeToPdf.openOfficeToPDF(filePath, fileDir + partialName, "1-" + progressivePages)) {
+            // 部分转换失败，直接转换完整文件
+            new File(fileDir + partialName).delete();
+            return false;
+        }
+        artifactCache.publish(fileDir + partialName);
+        fileUtils.addConvertedFile(PARTIAL_KEY_PREFIX + pdfName, partialName);
+        finishing.add(pdfName);
+        try {
+            monitoredBackgroundExecutor.execute(() -> {
+                try {
+                    convert(filePath, fileDir + pdfName, pdfName, "pdf");
+                } finally {
+                    finishing.remove(pdfName);
+                    removePartial(pdfName);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 后台队列已满，在当前线程转换完整文件
+            finishing.remove(pdfName);
+            removePartial(pdfName);
+            return false;
+        }
+    }
+
+    /**
+     * 删除前几页的登记、文件及共享存储中的副本(完整文件已登记，页面会切换到完整文件)
+     * @param pdfName
+     */
+    private void removePartial(String pdfName) {
+        String partialName = partialNameOf(pdfName);
+        fileUtils.removeConvertedFile(PARTIAL_KEY_PREFIX + pdfName);
+        new File(fileDir + partialName).delete();
+        artifactCache.remove(partialName);
+    }
+
+    /**
+     * 转换完整文件并加入缓存
+     * @return 是否转换成功
+     */
+    private boolean convert(String filePath, String outFilePath, String pdfName, String suffix) {
+        boolean success = officeToPdf.openOfficeToPDF(filePath, outFilePath);
+        File f = new File(filePath);
+        if (f.exists()) {
+            f.delete();
+        }
+        if (!success) {
+            // 超时或转换失败，删除不完整的输出，不加入缓存
+            new File(outFilePath).delete();
+            return false;
+        }
+        if (suffix.equalsIgnoreCase("xls")
+                || suffix.equalsIgnoreCase("xlsx")) {
+            // 对转换后的文件进行操作(改变编码方式)
+            fileUtils.doActionConvertedFile(outFilePath);
+            // 生成预压缩副本
+            compressedSidecarWriter.writeSidecars(outFilePath);
+        }
+        // 先保存到共享存储再加入缓存，其他节点命中缓存时能取到文件(上传失败时其他节点取不到文件会重新转换)
+        artifactCache.publish(outFilePath);
+        fileUtils.addConvertedFile(pdfName, fileUtils.getRelativePath(outFilePath));
+        return true;
+    }
+
+    /**
+     * 类文本文件：下载到本地缓存
+     * @param decodedUrl 已解码的url
+     * @param fileName
+     * @param needEncode
+     * @return code为0时msg为文件相对路径
+     */
+    public ReturnResponse<String> prepareSimText(String decodedUrl, String fileName, String needEncode) {
+        return simTextUtil.readSimText(decodedUrl, fileName, needEncode);
+    }
+}
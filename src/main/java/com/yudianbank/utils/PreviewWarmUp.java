@@ -0,0 +1,324 @@
+package com.yudianbank.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.yudianbank.handler.CachePolicy;
+import com.yudianbank.handler.PreviewHandler;
+import com.yudianbank.handler.PreviewHandlerRegistry;
+import com.yudianbank.handler.PreviewRequest;
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.store.ArtifactCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量预转换
+ * <p>
+ *     在后台线程中按在线预览相同的流程下载并转换文件，用户打开时直接命中缓存。
+ *     预转换让给在线预览：同时最多执行warmup.concurrency个，需要office转换的文件只在有空闲office进程时开始，
+ *     office进程都在处理转换时等待(线程优先级在linux上不起作用，不能依赖)；图片、压缩包等不需要等待office。
+ *     提交时先批量查询一次转换文件缓存，已缓存且文件可用(本地或共享存储中存在)的url直接标记为DONE，不再排队；
+ *     已登记但文件不可用的url照常排队，由转换流程重新转换。
+ *     任务队列有上限，队列满时该url标记为REJECTED，不会阻塞调用方。
+ *     批次状态只保存在本机内存中，过期后自动清除。
+ * </p>
+ */
+@Component
+public class PreviewWarmUp {
+
+    public static final String PENDING = "PENDING";
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+    public static final String SKIPPED = "SKIPPED";
+    public static final String REJECTED = "REJECTED";
+
+    /**
+     * 预转换线程数
+     */
+    @Value("${warmup.threads:2}")
+    int threads;
+    /**
+     * 等待中的预转换任务上限
+     */
+    @Value("${warmup.queue.capacity:10000}")
+    int queueCapacity;
+    /**
+     * 批次状态保留时间(分钟)
+     */
+    @Value("${warmup.batch.retention.minutes:1440}")
+    long retentionMinutes;
+    /**
+     * 同时执行的预转换数
+     */
+    @Value("${warmup.concurrency:1}")
+    int concurrency;
+    /**
+     * office进程都在忙时，等待多久后再检查(毫秒)
+     */
+    @Value("${warmup.idle.check.ms:500}")
+    long idleCheckMillis;
+    @Autowired
+    PreviewHandlerRegistry previewHandlerRegistry;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    OfficeToPdf officeToPdf;
+    @Autowired
+    ArtifactCache artifactCache;
+
+    private ThreadPoolExecutor executor;
+    /**
+     * 带监控的executor，提交任务使用
+     */
+    private ExecutorService monitoredExecutor;
+    private Cache<String, Batch> batches;
+    private Semaphore permits;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "preview-warmup-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        permits = new Semaphore(Math.max(1, concurrency));
+        monitoredExecutor = previewMetrics.monitor(executor, "preview.warmup");
+        batches = CacheBuilder.newBuilder().expireAfterWrite(retentionMinutes, TimeUnit.MINUTES).build();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交一批预转换
+     * @param urls 与onlinePreview的url参数一致
+     * @param needEncode
+     * @return 批次状态
+     */
+    public Batch submit(List<String> urls, String needEncode) {
+        Batch batch = new Batch(UUID.randomUUID().toString().replace("-", ""), urls);
+        batches.put(batch.getId(), batch);
+        Map<String, String> cacheKeys = cacheKeys(batch.items.keySet(), needEncode);
+        Map<String, String> cached = fileUtils.getConvertedFiles(cacheKeys.values());
+        for (String url : batch.items.keySet()) {
+            if (isAvailable(cached.get(cacheKeys.get(url)))) {
+                batch.update(url, DONE, "已缓存");
+                continue;
+            }
+            try {
+                monitoredExecutor.execute(() -> warmUp(batch, url, needEncode));
+            } catch (RejectedExecutionException e) {
+                batch.update(url, REJECTED, "预转换队列已满");
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * 查询批次状态
+     * @param batchId
+     * @return 不存在或已过期时返回null
+     */
+    public Batch getBatch(String batchId) {
+        return null == batchId ? null : batches.getIfPresent(batchId);
+    }
+
+    /**
+     * 按后缀可以确定缓存key的url
+     * @param urls
+     * @param needEncode
+     * @return url -> 转换文件缓存的key
+     */
+    private Map<String, String> cacheKeys(Iterable<String> urls, String needEncode) {
+        Map<String, String> cacheKeys = new HashMap<>();
+        for (String url : urls) {
+            try {
+                PreviewRequest request = previewHandlerRegistry.parse(url, needEncode);
+                PreviewHandler handler = previewHandlerRegistry.handlerFor(request);
+                String cacheKey = null == handler ? null : handler.cacheKey(request);
+                if (null != cacheKey) {
+                    cacheKeys.put(url, cacheKey);
+                }
+            } catch (UnsupportedEncodingException | RuntimeException e) {
+                // 由预转换任务处理并记录失败
+            }
+        }
+        return cacheKeys;
+    }
+
+    /**
+     * 已登记的转换结果是否可用
+     * @param value 转换文件缓存的值，未登记时为null
+     * @return 压缩包登记的是文件树，只要已登记就可用；其他检查文件在本地或能从共享存储取回
+     */
+    private boolean isAvailable(String value) {
+        if (null == value) {
+            return false;
+        }
+        if (value.startsWith("[") || value.startsWith("{")) {
+            return true;
+        }
+        return artifactCache.ensureLocal(value);
+    }
+
+    private void warmUp(Batch batch, String url, String needEncode) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.update(url, FAILED, "预转换已停止");
+            return;
+        }
+        try {
+            prepare(batch, url, needEncode);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.update(url, FAILED, "预转换已停止");
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 等待空闲的office进程，在线预览的转换优先
+     * @throws InterruptedException
+     */
+    private void awaitIdleInstance() throws InterruptedException {
+        while (!officeToPdf.hasIdleInstance()) {
+            Thread.sleep(idleCheckMillis);
+        }
+    }
+
+    private void prepare(Batch batch, String url, String needEncode) throws InterruptedException {
+        try {
+            PreviewRequest request = previewHandlerRegistry.identify(previewHandlerRegistry.parse(url, needEncode));
+            PreviewHandler handler = null == request ? null : previewHandlerRegistry.handlerFor(request);
+            if (null == handler || CachePolicy.NONE == handler.cachePolicy()) {
+                batch.update(url, SKIPPED, "该类型文件不需要预转换");
+                return;
+            }
+            if (handler.usesOffice(request)) {
+                awaitIdleInstance();
+            }
+            batch.update(url, RUNNING, null);
+            ReturnResponse<String> response = previewHandlerRegistry.prepare(request);
+            batch.update(url, 0 == response.getCode() ? DONE : FAILED, response.getMsg());
+        } catch (UnsupportedEncodingException | RuntimeException e) {
+            e.printStackTrace();
+            batch.update(url, FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * 批次状态
+     */
+    public static class Batch {
+        private final String id;
+        private final long createTime = System.currentTimeMillis();
+        private final Map<String, Item> items = new LinkedHashMap<>();
+
+        Batch(String id, List<String> urls) {
+            this.id = id;
+            for (String url : urls) {
+                items.put(url, new Item(url));
+            }
+        }
+
+        synchronized void update(String url, String status, String msg) {
+            Item item = items.get(url);
+            item.status = status;
+            item.msg = msg;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getCreateTime() {
+            return createTime;
+        }
+
+        /**
+         * 各状态的url数量
+         * @return
+         */
+        public synchronized Map<String, Integer> getSummary() {
+            Map<String, Integer> summary = new LinkedHashMap<>();
+            for (Item item : items.values()) {
+                summary.merge(item.status, 1, Integer::sum);
+            }
+            return summary;
+        }
+
+        public synchronized boolean isFinished() {
+            for (Item item : items.values()) {
+                if (PENDING.equals(item.status) || RUNNING.equals(item.status)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public synchronized List<Item> getItems() {
+            List<Item> copy = new ArrayList<>();
+            for (Item item : items.values()) {
+                copy.add(new Item(item.url, item.status, item.msg));
+            }
+            return copy;
+        }
+    }
+
+    public static class Item {
+        private final String url;
+        private String status;
+        private String msg;
+
+        Item(String url) {
+            this(url, PENDING, null);
+        }
+
+        Item(String url, String status, String msg) {
+            this.url = url;
+            this.status = status;
+            this.msg = msg;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getMsg() {
+            return msg;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.yudianbank.utils;
+
+import com.yudianbank.config.CompactValueCodec;
+import com.yudianbank.config.ConvertedIndexProperties;
+import com.yudianbank.config.LazyRedissonClient;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RSetCache;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.map.event.EntryExpiredListener;
+import org.redisson.api.map.event.EntryRemovedListener;
+import org.redisson.client.codec.Codec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 转换文件缓存(redis)
+ * <p>
+ *     按key的哈希分散到converted.index.buckets个RMapCache中(converted-preview-pdf-file:0 ~ n-1)，
+ *     redis集群中各分桶落在不同的slot上，读写和过期清理不再集中在一个大hash上。
+ *     分桶数确定后不要修改，修改后原有登记找不到(相当于清空缓存)。
+ * </p>
+ * <p>
+ *     迁移：旧版本的整个缓存在一个hash(converted-preview-pdf-file)中。连接redis后由一个节点(分布式锁)
+ *     把旧hash中的条目复制到分桶，完成后整体删除旧hash(整体删除不会逐条触发删除事件，文件不会被清理)；
+ *     迁移完成前分桶中找不到的key再查一次旧hash。
+ * </p>
+ * <p>
+ *     值使用CompactValueCodec编码(大的值压缩存储)，key的编码不变，旧编码的值仍能读取。
+ * </p>
+ * <p>
+ *     连接后设置各分桶的最大条目数(超过后redisson按最久未访问淘汰)；过期、淘汰和删除通过分桶的事件通知，每个节点都会收到。
+ *     redisson的淘汰和删除都发删除事件，remove前先把key记入converted-preview-pdf-file:removing(短时过期)，
+ *     收到删除事件时据此区分是调用remove删除还是被淘汰。
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "converted.index.type", havingValue = "redis", matchIfMissing = true)
+public class RedisConvertedFileIndex implements ConvertedFileIndex {
+
+    static final String LEGACY_KEY = "converted-preview-pdf-file";
+    static final String REMOVING_KEY = LEGACY_KEY + ":removing";
+    private static final int MIGRATION_BATCH = 500;
+    /**
+     * remove标记的保留时间，只需覆盖删除事件送达各节点的时间
+     */
+    private static final long REMOVING_TTL_SECONDS = 60;
+
+    @Autowired
+    RedissonClient redissonClient;
+    @Autowired
+    ConvertedIndexProperties convertedIndexProperties;
+
+    /**
+     * 旧hash已不存在
+     */
+    private volatile boolean legacyGone;
+    private volatile Codec codec;
+
+    @PostConstruct
+    public void init() {
+        LazyRedissonClient.connecting(redissonClient).thenAccept(client -> {
+            if (maxSizePerBucket() > 0) {
+                for (RMapCache<String, String> bucket : buckets()) {
+                    bucket.setMaxSize(maxSizePerBucket());
+                }
+            }
+            Thread thread = new Thread(this::migrate, "converted-index-migration");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * 查询
+     * @param key
+     * @return 未登记时返回null
+     */
+    @Override
+    public String get(String key) {
+        String value = bucketOf(key).get(key);
+        if (null == value && !legacyGone) {
+            value = legacyGet(key);
+        }
+        return value;
+    }
+
+    /**
+     * 批量查询：按分桶分组后在一个pipeline中执行，只有一次往返
+     * @param keys
+     * @return 已登记的key -> value，未登记的key不在结果中
+     */
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        Map<Integer, Set<String>> keysByBucket = new HashMap<>();
+        for (String key : keys) {
+            keysByBucket.computeIfAbsent(bucketIndex(key, bucketCount()), index -> new HashSet<>()).add(key);
+        }
+        Map<String, String> values = new HashMap<>();
+        if (keysByBucket.isEmpty()) {
+            return values;
+        }
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+        List<RFuture<Map<String, String>>> futures = new ArrayList<>(keysByBucket.size());
+        for (Map.Entry<Integer, Set<String>> bucket : keysByBucket.entrySet()) {
+            futures.add(batch.<String, String>getMapCache(LEGACY_KEY + ":" + bucket.getKey(), codec()).getAllAsync(bucket.getValue()));
+        }
+        batch.execute();
+        for (RFuture<Map<String, String>> future : futures) {
+            values.putAll(future.getNow());
+        }
+        if (!legacyGone && values.size() < keys.size()) {
+            Set<String> missing = new HashSet<>(keys);
+            missing.removeAll(values.keySet());
+            values.putAll(legacy().getAll(missing));
+        }
+        return values;
+    }
+
+    /**
+     * 登记，按格式设置ttl和最大空闲时间
+     * @param key
+     * @param value
+     */
+    @Override
+    public void put(String key, String value) {
+        bucketOf(key).fastPut(key, value,
+                convertedIndexProperties.ttlOf(key), TimeUnit.SECONDS,
+                convertedIndexProperties.maxIdleOf(key), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 删除登记
+     * @param key
+     */
+    @Override
+    public void remove(String key) {
+        removing().add(key, REMOVING_TTL_SECONDS, TimeUnit.SECONDS);
+        bucketOf(key).fastRemove(key);
+        if (!legacyGone) {
+            legacy().fastRemove(key);
+        }
+    }
+
+    /**
+     * 批量登记：在一个pipeline中执行
+     * @param values
+     */
+    @Override
+    public void putAll(Map<String, String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String key = entry.getKey();
+            batch.<String, String>getMapCache(LEGACY_KEY + ":" + bucketIndex(key, bucketCount()), codec()).fastPutAsync(key, entry.getValue(),
+                    convertedIndexProperties.ttlOf(key), TimeUnit.SECONDS,
+                    convertedIndexProperties.maxIdleOf(key), TimeUnit.SECONDS);
+        }
+        batch.execute();
+    }
+
+    /**
+     * 批量删除登记：在一个pipeline中先记入removing再删除
+     * @param keys
+     */
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults());
+        for (String key : keys) {
+            batch.<String>getSetCache(REMOVING_KEY, redissonClient.getConfig().getCodec()).addAsync(key, REMOVING_TTL_SECONDS, TimeUnit.SECONDS);
+            batch.<String, String>getMapCache(LEGACY_KEY + ":" + bucketIndex(key, bucketCount()), codec()).fastRemoveAsync(key);
+            if (!legacyGone) {
+                batch.<String, String>getMapCache(LEGACY_KEY, codec()).fastRemoveAsync(key);
+            }
+        }
+        batch.execute();
+    }
+
+    /**
+     * redis连接后在各分桶上注册过期和删除事件；删除事件按removing标记区分删除(removed)和淘汰(evicted)
+     * @param listener
+     */
+    @Override
+    public void onEvicted(EvictionListener listener) {
+        // redis可能在后台连接，连接后再注册
+        LazyRedissonClient.connecting(redissonClient).thenRun(() -> {
+            for (RMapCache<String, String> bucket : buckets()) {
+                bucket.addListener((EntryExpiredListener<String, String>) event ->
+                        listener.evicted("expired", event.getKey(), event.getValue()));
+                // 事件回调在redisson的线程中执行，不能同步访问redis
+                bucket.addListener((EntryRemovedListener<String, String>) event ->
+                        removing().containsAsync(event.getKey()).whenComplete((removed, e) -> {
+                            if (null != e) {
+                                // 无法区分时按删除处理，不删除文件
+                                e.printStackTrace();
+                            }
+                            listener.evicted(null == e && !removed ? "evicted" : "removed", event.getKey(), event.getValue());
+                        }));
+            }
+        }).exceptionally(e -> {
+            e.printStackTrace();
+            return null;
+        });
+    }
+
+    /**
+     * 所有分桶
+     * @return
+     */
+    public List<RMapCache<String, String>> buckets() {
+        List<RMapCache<String, String>> buckets = new ArrayList<>(bucketCount());
+        for (int i = 0; i < bucketCount(); i++) {
+            buckets.add(redissonClient.getMapCache(LEGACY_KEY + ":" + i, codec()));
+        }
+        return buckets;
+    }
+
+    /**
+     * 每个分桶的最大条目数
+     * @return 0表示不限制
+     */
+    public int maxSizePerBucket() {
+        int maxSize = convertedIndexProperties.getMaxSize();
+        return maxSize <= 0 ? 0 : (maxSize + bucketCount() - 1) / bucketCount();
+    }
+
+    RMapCache<String, String> bucketOf(String key) {
+        return redissonClient.getMapCache(LEGACY_KEY + ":" + bucketIndex(key, bucketCount()), codec());
+    }
+
+    static int bucketIndex(String key, int buckets) {
+        return Math.floorMod(key.hashCode(), buckets);
+    }
+
+    private int bucketCount() {
+        return Math.max(1, convertedIndexProperties.getBuckets());
+    }
+
+    private RSetCache<String> removing() {
+        return redissonClient.getSetCache(REMOVING_KEY, redissonClient.getConfig().getCodec());
+    }
+
+    private RMapCache<String, String> legacy() {
+        return redissonClient.getMapCache(LEGACY_KEY, codec());
+    }
+
+    /**
+     * key使用redisson配置的编码(与旧版本一致)，值使用紧凑编码
+     */
+    private Codec codec() {
+        if (null == codec) {
+            codec = new CompactValueCodec(redissonClient.getConfig().getCodec(), convertedIndexProperties.getCompressThresholdBytes());
+        }
+        return codec;
+    }
+
+    private String legacyGet(String key) {
+        RMapCache<String, String> legacy = legacy();
+        String value = legacy.get(key);
+        if (null == value && !legacy.isExists()) {
+            legacyGone = true;
+        }
+        return value;
+    }
+
+    /**
+     * 把旧hash中的条目复制到分桶
+     */
+    private void migrate() {
+        try {
+            RMapCache<String, String> legacy = legacy();
+            if (!legacy.isExists()) {
+                legacyGone = true;
+                return;
+            }
+            RLock lock = redissonClient.getLock(LEGACY_KEY + ":migration");
+            if (!lock.tryLock()) {
+                // 其他节点正在迁移
+                return;
+            }
+            try {
+                long start = System.currentTimeMillis();
+                int migrated = 0;
+                for (Map.Entry<String, String> entry : legacy.entrySet(MIGRATION_BATCH)) {
+                    // 迁移期间新登记的条目优先
+                    bucketOf(entry.getKey()).fastPutIfAbsent(entry.getKey(), entry.getValue(),
+                            convertedIndexProperties.ttlOf(entry.getKey()), TimeUnit.SECONDS,
+                            convertedIndexProperties.maxIdleOf(entry.getKey()), TimeUnit.SECONDS);
+                    migrated++;
+                }
+                legacy.delete();
+                legacyGone = true;
+                System.out.println("转换文件缓存迁移到分桶完成，共" + migrated + "条，耗时" + (System.currentTimeMillis() - start) + "ms");
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            // 迁移失败时保留旧hash，查询仍会回退到旧hash，下次启动重试
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.yudianbank.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 当前请求各阶段耗时(线程内累计)
+ * <p>
+ *     PreviewMetrics记录阶段耗时时同时累计到当前线程，请求结束时由拦截器输出到Server-Timing响应头和慢请求日志。
+ *     在后台线程中执行的阶段(如压缩包解压)不计入请求。
+ * </p>
+ */
+public final class RequestTimings {
+
+    private static final ThreadLocal<Map<String, Long>> CURRENT = new ThreadLocal<>();
+
+    private RequestTimings() {
+    }
+
+    /**
+     * 开始记录当前线程的请求
+     */
+    public static void begin() {
+        CURRENT.set(new LinkedHashMap<>());
+    }
+
+    /**
+     * 累计阶段耗时，当前线程没有在记录时忽略
+     * @param stage
+     * @param nanos
+     */
+    public static void add(String stage, long nanos) {
+        Map<String, Long> timings = CURRENT.get();
+        if (null != timings) {
+            timings.merge(stage, nanos, Long::sum);
+        }
+    }
+
+    /**
+     * 当前请求已记录的阶段耗时(纳秒)，按阶段第一次出现的顺序
+     * @return
+     */
+    public static Map<String, Long> current() {
+        Map<String, Long> timings = CURRENT.get();
+        return null == timings ? Collections.emptyMap() : Collections.unmodifiableMap(timings);
+    }
+
+    /**
+     * 结束记录
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 转换为Server-Timing响应头，如：download;dur=12.5, convert;dur=830.1
+     * @param timings 阶段耗时(纳秒)
+     * @return
+     */
+    public static String toServerTiming(Map<String, Long> timings) {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, Long> entry : timings.entrySet()) {
+            if (header.length() > 0) {
+                header.append(", ");
+            }
+            header.append(entry.getKey()).append(";dur=").append(toMillis(entry.getValue()));
+        }
+        return header.toString();
+    }
+
+    /**
+     * 纳秒转毫秒，保留一位小数
+     * @param nanos
+     * @return
+     */
+    public static double toMillis(long nanos) {
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+}
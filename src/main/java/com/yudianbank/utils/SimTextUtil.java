@@ -15,10 +15,10 @@ public class SimTextUtil {
     @Value("${file.dir}")
     String fileDir;
     @Autowired
-    DownloadUtils downloadUtils;
+    SourceFileCache sourceFileCache;
 
     public ReturnResponse<String> readSimText(String url, String fileName, String needEncode){
-        ReturnResponse<String> response = downloadUtils.downLoad(url, "txt", fileName, needEncode);
+        ReturnResponse<String> response = sourceFileCache.fetch(url, "txt", fileName, needEncode);
         return response;
     }
 }
@@ -0,0 +1,473 @@
+package com.yudianbank.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.yudianbank.param.ReturnResponse;
+import org.apache.poi.hslf.model.Slide;
+import org.apache.poi.hslf.usermodel.SlideShow;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 演示文稿(ppt/pptx)按页渲染为图片，不经过office转换
+ * <p>
+ *     使用poi的HSLF/XSLF绘制到Java2D(应用以headless方式运行)。一个文稿拆分给多个渲染任务并行执行，
+ *     每个任务各自解析一份文稿(poi的文稿对象不能多线程共用)，按页号间隔领取页面；第1页最先渲染，
+ *     请求只等待第1页，其余页面在后台继续渲染，浏览器请求到还没渲染完的页面时等待该页。
+ *     每份解析后的文稿占用的内存约为源文件的数倍，任务数按slides.render.parse.budget.bytes除以源文件大小限制，大文稿少用几个任务。
+ *     开始渲染时把源文件读入内存，各任务从内存解析，渲染期间源文件被SourceFileCache淘汰也不影响。
+ *     每页图片保存在file.dir/slides/文稿摘要/下，全部完成后写入deck.properties，重启后直接使用；
+ *     目录登记到转换文件缓存(key为slides:文稿摘要)，随登记过期或被淘汰时由ConvertedFileEvictions删除，重启后也会清理。
+ * </p>
+ */
+@Component
+public class SlideRenderer {
+
+    static final String SLIDE_DIR = "slides";
+    /**
+     * 转换文件缓存的key前缀
+     */
+    static final String CACHE_KEY_PREFIX = "slides:";
+    private static final String DECK_FILE = "deck.properties";
+
+    @Value("${file.dir}")
+    String fileDir;
+    /**
+     * 并行渲染的线程数
+     */
+    @Value("${slides.render.parallelism:4}")
+    int parallelism;
+    /**
+     * 图片宽度(像素)
+     */
+    @Value("${slides.render.width:1280}")
+    int renderWidth;
+    /**
+     * 等待单页渲染的最长时间(秒)
+     */
+    @Value("${slides.wait.seconds:60}")
+    long waitSeconds;
+    /**
+     * 保留的文稿数，超过后删除最久未使用的文稿图片
+     */
+    @Value("${slides.cache.max.decks:200}")
+    long maxDecks;
+    /**
+     * 一个文稿的各渲染任务按源文件大小合计不超过该字节数(每个任务各自解析一份)，至少一个任务
+     */
+    @Value("${slides.render.parse.budget.bytes:33554432}")
+    long parseBudgetBytes;
+    @Autowired
+    SourceFileCache sourceFileCache;
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    PreviewMetrics previewMetrics;
+
+    private ForkJoinPool pool;
+    private ExecutorService monitoredPool;
+    private Cache<String, SlideDeck> decks;
+
+    @PostConstruct
+    public void init() {
+        pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("slide-render-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        monitoredPool = previewMetrics.monitor(pool, "preview.slides");
+        decks = CacheBuilder.newBuilder()
+                .maximumSize(maxDecks)
+                .<String, SlideDeck>removalListener(notification -> {
+                    if (notification.getCause() == RemovalCause.SIZE) {
+                        FileSystemUtils.deleteRecursively(notification.getValue().dir);
+                    }
+                })
+                .recordStats()
+                .build();
+        previewMetrics.monitor(decks, "preview.slides");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 是否支持按页渲染
+     * @param suffix
+     * @return
+     */
+    public boolean supports(String suffix) {
+        return "ppt".equalsIgnoreCase(suffix) || "pptx".equalsIgnoreCase(suffix);
+    }
+
+    /**
+     * 打开文稿：开始渲染(已渲染过的直接返回)，并等待第1页完成
+     * @param url 已解码的url
+     * @param suffix ppt或pptx
+     * @param fileName
+     * @param needEncode
+     * @return code为0时content为文稿信息
+     */
+    public ReturnResponse<SlideDeck> open(String url, String suffix, String fileName, String needEncode) {
+        String key = DigestUtils.md5DigestAsHex((fileName + "|" + url).getBytes(StandardCharsets.UTF_8));
+        try {
+            SlideDeck deck = decks.get(key, () -> {
+                SlideDeck rendered = load(key);
+                if (null != rendered) {
+                    return rendered;
+                }
+                ReturnResponse<String> source = sourceFileCache.fetch(url, suffix.toLowerCase(), fileName, needEncode);
+                if (0 != source.getCode()) {
+                    throw new IOException(source.getMsg());
+                }
+                return start(key, new File(source.getContent()), suffix);
+            });
+            deck.slide(0).get(waitSeconds, TimeUnit.SECONDS);
+            register(key);
+            return new ReturnResponse<>(0, "SUCCESS", deck);
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            decks.invalidate(key);
+            return new ReturnResponse<>(1, e.getCause().getMessage(), null);
+        } catch (TimeoutException e) {
+            return new ReturnResponse<>(1, "幻灯片渲染超时", null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ReturnResponse<>(1, "幻灯片渲染被中断", null);
+        }
+    }
+
+    /**
+     * 获取某一页的图片，还在渲染时等待
+     * @param key 文稿摘要
+     * @param index 页号，从0开始
+     * @return code为0时content为图片的绝对路径
+     */
+    public ReturnResponse<String> getSlide(String key, int index) {
+        if (null == key || !key.matches("[0-9a-f]{32}")) {
+            return new ReturnResponse<>(1, "幻灯片不存在", null);
+        }
+        SlideDeck deck = decks.getIfPresent(key);
+        if (null == deck) {
+            deck = load(key);
+            if (null == deck) {
+                return new ReturnResponse<>(1, "幻灯片不存在", null);
+            }
+            decks.put(key, deck);
+        }
+        if (index < 0 || index >= deck.getCount()) {
+            return new ReturnResponse<>(1, "幻灯片不存在", null);
+        }
+        try {
+            File image = deck.slide(index).get(waitSeconds, TimeUnit.SECONDS);
+            if (!image.isFile()) {
+                // 目录已随转换文件缓存的登记过期被删除，重新打开时渲染
+                decks.invalidate(key);
+                return new ReturnResponse<>(1, "幻灯片不存在", null);
+            }
+            return new ReturnResponse<>(0, image.getName(), image.getAbsolutePath());
+        } catch (ExecutionException e) {
+            return new ReturnResponse<>(1, e.getCause().getMessage(), null);
+        } catch (TimeoutException e) {
+            return new ReturnResponse<>(1, "幻灯片渲染超时", null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ReturnResponse<>(1, "幻灯片渲染被中断", null);
+        }
+    }
+
+    /**
+     * 读取已全部渲染完成的文稿
+     */
+    private SlideDeck load(String key) {
+        File dir = new File(fileDir + SLIDE_DIR + File.separator + key);
+        File deckFile = new File(dir, DECK_FILE);
+        if (!deckFile.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(deckFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        SlideDeck deck = new SlideDeck(key, dir, Integer.parseInt(properties.getProperty("count")),
+                Integer.parseInt(properties.getProperty("width")), Integer.parseInt(properties.getProperty("height")));
+        for (int i = 0; i < deck.getCount(); i++) {
+            File image = deck.imageFile(i);
+            if (!image.isFile()) {
+                return null;
+            }
+            deck.slides[i].complete(image);
+        }
+        return deck;
+    }
+
+    /**
+     * 文稿目录登记到转换文件缓存(已登记时只刷新访问时间)
+     * @param key
+     */
+    private void register(String key) {
+        if (!fileUtils.containsConvertedFile(CACHE_KEY_PREFIX + key)) {
+            fileUtils.addConvertedFile(CACHE_KEY_PREFIX + key, SLIDE_DIR + File.separator + key);
+        }
+    }
+
+    /**
+     * 渲染任务数：不超过线程数和页数，解析的文稿合计不超过内存预算
+     * @param sourceBytes 源文件大小
+     * @param slideCount
+     * @return
+     */
+    int workersFor(long sourceBytes, int slideCount) {
+        long byBudget = sourceBytes <= 0 ? parallelism : parseBudgetBytes / sourceBytes;
+        return (int) Math.max(1, Math.min(Math.min(parallelism, slideCount), byBudget));
+    }
+
+    private SlideDeck start(String key, File source, String suffix) throws IOException {
+        long start = previewMetrics.start();
+        // 源文件读入内存，渲染期间不再依赖本地文件
+        byte[] content = Files.readAllBytes(source.toPath());
+        SlideSource first = SlideSource.open(content, suffix);
+        Dimension pageSize = first.pageSize();
+        int width = renderWidth;
+        int height = (int) Math.round((double) pageSize.height * renderWidth / pageSize.width);
+        File dir = new File(fileDir + SLIDE_DIR + File.separator + key);
+        dir.mkdirs();
+        SlideDeck deck = new SlideDeck(key, dir, first.count(), width, height);
+        // 开始渲染时登记，渲染失败留下的目录也会被清理
+        register(key);
+        int workers = workersFor(content.length, deck.getCount());
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            int worker = w;
+            // 第一个任务使用已解析的文稿，从第1页开始
+            tasks[w] = CompletableFuture.runAsync(() -> renderSlides(deck, worker == 0 ? first : null, content, suffix, worker, workers), monitoredPool);
+        }
+        CompletableFuture.allOf(tasks).whenComplete((done, e) -> {
+            previewMetrics.record(PreviewMetrics.CONVERT, start, "format", suffix.toLowerCase(), "target", "slides",
+                    "instance", "poi", "result", null == e ? "success" : "failure");
+            if (null == e) {
+                writeDeckFile(deck);
+            } else {
+                // 有页面渲染失败，下次打开时重新渲染
+                decks.invalidate(key);
+            }
+        });
+        return deck;
+    }
+
+    private void renderSlides(SlideDeck deck, SlideSource opened, byte[] content, String suffix, int worker, int workers) {
+        SlideSource slides = opened;
+        for (int index = worker; index < deck.getCount(); index += workers) {
+            try {
+                if (null == slides) {
+                    slides = SlideSource.open(content, suffix);
+                }
+                File image = deck.imageFile(index);
+                renderSlide(slides, index, deck, image);
+                deck.slides[index].complete(image);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                deck.slides[index].completeExceptionally(e);
+            }
+        }
+        for (int index = worker; index < deck.getCount(); index += workers) {
+            if (deck.slides[index].isCompletedExceptionally()) {
+                throw new IllegalStateException("幻灯片渲染失败");
+            }
+        }
+    }
+
+    private void renderSlide(SlideSource slides, int index, SlideDeck deck, File target) throws IOException {
+        Dimension pageSize = slides.pageSize();
+        BufferedImage image = new BufferedImage(deck.getWidth(), deck.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, deck.getWidth(), deck.getHeight());
+            g.scale((double) deck.getWidth() / pageSize.width, (double) deck.getHeight() / pageSize.height);
+            slides.draw(index, g);
+        } finally {
+            g.dispose();
+        }
+        File temp = new File(target.getPath() + ".tmp");
+        ImageIO.write(image, "png", temp);
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeDeckFile(SlideDeck deck) {
+        Properties properties = new Properties();
+        properties.setProperty("count", String.valueOf(deck.getCount()));
+        properties.setProperty("width", String.valueOf(deck.getWidth()));
+        properties.setProperty("height", String.valueOf(deck.getHeight()));
+        try (OutputStream out = new FileOutputStream(new File(deck.dir, DECK_FILE))) {
+            properties.store(out, null);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 一份已解析的文稿
+     */
+    private interface SlideSource {
+
+        int count();
+
+        Dimension pageSize();
+
+        void draw(int index, Graphics2D g);
+
+        static SlideSource open(byte[] content, String suffix) throws IOException {
+            try (InputStream in = new ByteArrayInputStream(content)) {
+                if ("pptx".equalsIgnoreCase(suffix)) {
+                    XMLSlideShow show = new XMLSlideShow(in);
+                    XSLFSlide[] slides = show.getSlides();
+                    return new SlideSource() {
+                        @Override
+                        public int count() {
+                            return slides.length;
+                        }
+
+                        @Override
+                        public Dimension pageSize() {
+                            return show.getPageSize();
+                        }
+
+                        @Override
+                        public void draw(int index, Graphics2D g) {
+                            slides[index].draw(g);
+                        }
+                    };
+                }
+                SlideShow show = new SlideShow(in);
+                Slide[] slides = show.getSlides();
+                return new SlideSource() {
+                    @Override
+                    public int count() {
+                        return slides.length;
+                    }
+
+                    @Override
+                    public Dimension pageSize() {
+                        return show.getPageSize();
+                    }
+
+                    @Override
+                    public void draw(int index, Graphics2D g) {
+                        slides[index].draw(g);
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * 文稿信息及各页的渲染进度
+     */
+    public static class SlideDeck {
+        private final String key;
+        private final File dir;
+        private final int count;
+        private final int width;
+        private final int height;
+        private final CompletableFuture<File>[] slides;
+
+        @SuppressWarnings("unchecked")
+        SlideDeck(String key, File dir, int count, int width, int height) {
+            this.key = key;
+            this.dir = dir;
+            this.count = count;
+            this.width = width;
+            this.height = height;
+            this.slides = new CompletableFuture[count];
+            for (int i = 0; i < count; i++) {
+                slides[i] = new CompletableFuture<>();
+            }
+        }
+
+        CompletableFuture<File> slide(int index) {
+            return 0 == count ? CompletableFuture.completedFuture(null) : slides[index];
+        }
+
+        File imageFile(int index) {
+            return new File(dir, (index + 1) + ".png");
+        }
+
+        /**
+         * 等待全部页面渲染完成
+         * @param timeout
+         * @param unit
+         * @return 全部成功时返回true
+         */
+        public boolean await(long timeout, TimeUnit unit) {
+            try {
+                CompletableFuture.allOf(slides).get(timeout, unit);
+                return true;
+            } catch (ExecutionException | TimeoutException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.yudianbank.utils;
+
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.store.ArtifactCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 源文件缓存(读穿透)
+ * <p>
+ *     以规范化后的url为key，下载过的源文件登记到转换文件缓存(与转换后的文件同一套redis缓存)，
+ *     再次预览时直接使用本地文件(或从共享存储取回)。登记是各节点共享的：本节点没有该文件时重新下载到本地，不删除登记，
+ *     登记随ttl过期(见ConvertedFileEvictions)。
+ *     本地磁盘按LRU控制总大小，超出时只删除本地最久未使用的文件，登记和共享存储中的文件保留给其他节点。
+ *     启动时按文件名(url摘要_文件名)扫描file.dir中上次运行留下的源文件，按修改时间从旧到新计入LRU，
+ *     重启前的文件同样受source.cache.max.bytes限制。
+ * </p>
+ */
+@Component
+public class SourceFileCache {
+
+    /**
+     * 缓存key前缀，与转换后的文件名区分
+     */
+    static final String CACHE_KEY_PREFIX = "source:";
+    /**
+     * 源文件的本地文件名：url摘要的前8位_文件名
+     */
+    private static final Pattern LOCAL_NAME = Pattern.compile("[0-9a-f]{8}_.+");
+
+    @Value("${file.dir}")
+    String fileDir;
+    /**
+     * 源文件缓存占用的最大磁盘空间
+     */
+    @Value("${source.cache.max.bytes:2147483648}")
+    long maxBytes;
+    @Autowired
+    DownloadUtils downloadUtils;
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    CompressedSidecarWriter compressedSidecarWriter;
+    @Autowired
+    ArtifactCache artifactCache;
+    @Autowired
+    PreviewMetrics previewMetrics;
+
+    /**
+     * 按访问顺序排列的缓存文件：相对file.dir的路径 -> 文件大小
+     */
+    private final LinkedHashMap<String, Long> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    /**
+     * 同一个url同时只下载一次
+     */
+    private final KeyedLocks downloading = new KeyedLocks();
+
+    /**
+     * 把上次运行留下的源文件计入LRU
+     */
+    @PostConstruct
+    public void init() {
+        File[] files = new File(fileDir).listFiles(file -> file.isFile() && LOCAL_NAME.matcher(file.getName()).matches() && !isSidecar(file));
+        if (null == files) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            track(file.getName(), file.length());
+        }
+        System.out.println("源文件缓存：本地已有" + lru.size() + "个文件，共" + (totalBytes >> 20) + "MB");
+    }
+
+    /**
+     * 是否是另一个文件的压缩副本(源文件本身也可能是.gz)
+     * @param file
+     * @return
+     */
+    private static boolean isSidecar(File file) {
+        String path = file.getPath();
+        for (String suffix : new String[]{CompressedSidecarWriter.GZIP_SUFFIX, CompressedSidecarWriter.BROTLI_SUFFIX}) {
+            if (path.endsWith(suffix) && new File(path.substring(0, path.length() - suffix.length())).isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取源文件，本地有缓存时直接返回，否则下载并登记缓存
+     * @param url 已解码的url
+     * @param type 下载后的文件后缀
+     * @param fileName 文件名
+     * @param needEncode
+     * @return 与DownloadUtils.downLoad一致：content为文件绝对路径，msg为文件名
+     */
+    public ReturnResponse<String> fetch(String url, String type, String fileName, String needEncode) {
+        String cacheKey = CACHE_KEY_PREFIX + fileUtils.canonicalUrl(url);
+        ReturnResponse<String> cached = lookup(cacheKey);
+        previewMetrics.cacheAccess("source", null != cached);
+        if (null != cached) {
+            return cached;
+        }
+        Object lock = downloading.acquire(cacheKey);
+        try {
+            synchronized (lock) {
+                cached = lookup(cacheKey);
+                if (null != cached) {
+                    return cached;
+                }
+                // 文件名加上url摘要，防止不同url的同名文件互相覆盖
+                String digest = DigestUtils.md5DigestAsHex(cacheKey.getBytes(StandardCharsets.UTF_8)).substring(0, 8);
+                String localName = null == fileName ? null : digest + "_" + fileName;
+                ReturnResponse<String> response = downloadUtils.downLoad(url, type, localName, needEncode);
+                if (0 == response.getCode()) {
+                    compressedSidecarWriter.writeSidecars(response.getContent());
+                    artifactCache.publish(response.getContent());
+                    fileUtils.addConvertedFile(cacheKey, response.getMsg());
+                    track(response.getMsg(), new File(response.getContent()).length());
+                }
+                return response;
+            }
+        } finally {
+            downloading.release(cacheKey);
+        }
+    }
+
+    private ReturnResponse<String> lookup(String cacheKey) {
+        String relativePath = fileUtils.getConvertedFile(cacheKey);
+        if (!StringUtils.hasText(relativePath)) {
+            return null;
+        }
+        File file = new File(fileDir + relativePath);
+        if (!artifactCache.ensureLocal(relativePath)) {
+            // 本节点没有该文件(其他节点下载的，或已被本地LRU清理)，重新下载，登记保留给其他节点
+            return null;
+        }
+        track(relativePath, file.length());
+        return new ReturnResponse<>(0, relativePath, file.getAbsolutePath());
+    }
+
+    /**
+     * 记录访问并按LRU淘汰
+     * @param relativePath
+     * @param size
+     */
+    private synchronized void track(String relativePath, long size) {
+        Long previous = lru.put(relativePath, size);
+        if (null != previous) {
+            totalBytes -= previous;
+        }
+        totalBytes += size;
+        Iterator<Map.Entry<String, Long>> iterator = lru.entrySet().iterator();
+        while (totalBytes > maxBytes && lru.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            // 只清理本地副本：登记和共享存储中的文件其他节点可能还在使用
+            new File(fileDir + eldest.getKey()).delete();
+            compressedSidecarWriter.deleteSidecars(fileDir + eldest.getKey());
+        }
+    }
+}
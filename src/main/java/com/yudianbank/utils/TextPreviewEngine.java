@@ -0,0 +1,363 @@
+package com.yudianbank.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 大文本文件分页预览
+ * <p>
+ *     首次访问时用内存映射扫描一遍文件建立行偏移索引(每隔checkpointLines行记录一个偏移量，
+ *     索引大小只有总行数/checkpointLines)，之后按页读取时从最近的检查点开始定位，
+ *     按探测出的编码解码成字符串返回。内存占用和传输量只与页大小有关，与文件大小无关。
+ * </p>
+ */
+@Component
+public class TextPreviewEngine {
+
+    @Autowired
+    CharsetDetector charsetDetector;
+    /**
+     * 每隔多少行记录一个偏移量
+     */
+    @Value("${text.index.checkpoint.lines:128}")
+    int checkpointLines;
+    /**
+     * 每次映射的窗口大小
+     */
+    @Value("${text.index.map.window.bytes:67108864}")
+    int mapWindowBytes;
+    /**
+     * 单行最多返回的字节数，超出部分截断(防止单行几百兆的文件)
+     */
+    @Value("${text.page.max.line.bytes:65536}")
+    int maxLineBytes;
+    /**
+     * 缓存的索引个数
+     */
+    @Value("${text.index.cache.size:200}")
+    long indexCacheSize;
+
+    @Autowired
+    PreviewMetrics previewMetrics;
+
+    private Cache<String, LineIndex> indexes;
+
+    @PostConstruct
+    public void init() {
+        indexes = CacheBuilder.newBuilder().maximumSize(indexCacheSize).recordStats().build();
+        previewMetrics.monitor(indexes, "text.index");
+    }
+
+    /**
+     * 读取一页内容
+     * @param filePath 文件绝对路径
+     * @param page 页码，从1开始
+     * @param pageSize 每页行数
+     * @return
+     * @throws IOException
+     */
+    public TextPage readPage(String filePath, int page, int pageSize) throws IOException {
+        File file = new File(filePath);
+        LineIndex index = getIndex(file);
+        long startLine = (long) (page - 1) * pageSize;
+        List<String> lines = new ArrayList<>(pageSize);
+        if (startLine < index.lineCount) {
+            int checkpoint = (int) (startLine / checkpointLines);
+            long skip = startLine - (long) checkpoint * checkpointLines;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                MappedScanner scanner = new MappedScanner(channel, index.checkpoints[checkpoint], index.fileLength, index.unitSize, index.bigEndian);
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                while (lines.size() < pageSize && !scanner.finished()) {
+                    boolean hasNewLine = scanner.nextLine(skip > 0 ? null : line, maxLineBytes);
+                    if (skip > 0) {
+                        skip--;
+                    } else {
+                        lines.add(decodeLine(line, index.charset, scanner.truncated()));
+                        line.reset();
+                    }
+                    if (!hasNewLine) {
+                        break;
+                    }
+                }
+            }
+        }
+        long totalPages = (index.lineCount + pageSize - 1) / pageSize;
+        return new TextPage(page, pageSize, index.lineCount, totalPages, index.charset.name(), lines);
+    }
+
+    private LineIndex getIndex(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        LineIndex index = indexes.getIfPresent(key);
+        if (null != index && (index.fileLength != file.length() || index.lastModified != file.lastModified())) {
+            indexes.invalidate(key);
+        }
+        try {
+            return indexes.get(key, () -> buildIndex(file));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * 扫描整个文件建立行偏移索引
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private LineIndex buildIndex(File file) throws IOException {
+        Charset charset = Charset.forName(charsetDetector.detect(file.getAbsolutePath()));
+        boolean utf16 = charset.name().startsWith("UTF-16");
+        int unitSize = utf16 ? 2 : 1;
+        boolean bigEndian = !StandardCharsets.UTF_16LE.equals(charset);
+        long fileLength = file.length();
+        long lastModified = file.lastModified();
+        long[] checkpoints = new long[16];
+        int checkpointCount = 0;
+        long lineCount = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long start = bomLength(channel, charset);
+            checkpoints[checkpointCount++] = start;
+            MappedScanner scanner = new MappedScanner(channel, start, fileLength, unitSize, bigEndian);
+            while (!scanner.finished()) {
+                scanner.nextLine(null, 0);
+                lineCount++;
+                if (lineCount % checkpointLines == 0 && !scanner.finished()) {
+                    if (checkpointCount == checkpoints.length) {
+                        checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+                    }
+                    checkpoints[checkpointCount++] = scanner.position();
+                }
+            }
+        }
+        return new LineIndex(charset, unitSize, bigEndian, fileLength, lastModified,
+                Arrays.copyOf(checkpoints, checkpointCount), lineCount);
+    }
+
+    private long bomLength(FileChannel channel, Charset charset) throws IOException {
+        if (channel.size() < 2) {
+            return 0;
+        }
+        MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(3, channel.size()));
+        if (StandardCharsets.UTF_8.equals(charset) && head.limit() == 3
+                && head.get(0) == (byte) 0xEF && head.get(1) == (byte) 0xBB && head.get(2) == (byte) 0xBF) {
+            return 3;
+        }
+        boolean utf16Bom = (head.get(0) == (byte) 0xFE && head.get(1) == (byte) 0xFF)
+                || (head.get(0) == (byte) 0xFF && head.get(1) == (byte) 0xFE);
+        return charset.name().startsWith("UTF-16") && utf16Bom ? 2 : 0;
+    }
+
+    private String decodeLine(ByteArrayOutputStream line, Charset charset, boolean truncated) {
+        if (truncated) {
+            return decodeComplete(line.toByteArray(), charset) + "……";
+        }
+        String text = new String(line.toByteArray(), charset);
+        if (text.endsWith("\r")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text;
+    }
+
+    /**
+     * 解码截断的行：截断处可能在多字节字符(UTF-8、GBK、UTF-16代理对)中间，末尾不完整的字符不输出
+     * @param bytes
+     * @param charset
+     * @return
+     */
+    static String decodeComplete(byte[] bytes, Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer out = CharBuffer.allocate((int) (bytes.length * (double) decoder.maxCharsPerByte()) + 1);
+        // 不是输入末尾：不完整的字符留在输入中，不会被替换为乱码
+        decoder.decode(ByteBuffer.wrap(bytes), out, false);
+        out.flip();
+        return out.toString();
+    }
+
+    /**
+     * 按窗口映射文件并逐行扫描，换行符按编码单元(UTF-16为2字节)判断
+     */
+    private class MappedScanner {
+        private final FileChannel channel;
+        private final long fileLength;
+        private final int unitSize;
+        private final boolean bigEndian;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+        private boolean truncated;
+
+        MappedScanner(FileChannel channel, long start, long fileLength, int unitSize, boolean bigEndian) {
+            this.channel = channel;
+            this.fileLength = fileLength;
+            this.unitSize = unitSize;
+            this.bigEndian = bigEndian;
+            this.position = start;
+        }
+
+        boolean finished() {
+            return position + unitSize > fileLength;
+        }
+
+        long position() {
+            return position;
+        }
+
+        boolean truncated() {
+            return truncated;
+        }
+
+        /**
+         * 读取一行(不含换行符)，定位到下一行开头
+         * @param out 行内容输出，为null时只跳过
+         * @param maxBytes 最多输出的字节数
+         * @return 是否遇到了换行符(false表示到了文件末尾)
+         * @throws IOException
+         */
+        boolean nextLine(ByteArrayOutputStream out, int maxBytes) throws IOException {
+            truncated = false;
+            int written = 0;
+            while (!finished()) {
+                ensureMapped();
+                int offset = (int) (position - windowStart);
+                byte first = window.get(offset);
+                if (unitSize == 1) {
+                    position++;
+                    if (first == '\n') {
+                        return true;
+                    }
+                    if (null != out) {
+                        if (written < maxBytes) {
+                            out.write(first);
+                            written++;
+                        } else {
+                            truncated = true;
+                        }
+                    }
+                } else {
+                    byte second = window.get(offset + 1);
+                    position += 2;
+                    if ((bigEndian && first == 0 && second == '\n') || (!bigEndian && first == '\n' && second == 0)) {
+                        return true;
+                    }
+                    if (null != out) {
+                        if (written < maxBytes) {
+                            out.write(first);
+                            out.write(second);
+                            written += 2;
+                        } else {
+                            truncated = true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 保证当前位置(含一个完整编码单元)在映射窗口内
+         * @throws IOException
+         */
+        private void ensureMapped() throws IOException {
+            if (null != window && position >= windowStart && position + unitSize <= windowStart + window.limit()) {
+                return;
+            }
+            windowStart = position;
+            long size = Math.min(mapWindowBytes, fileLength - windowStart);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+        }
+    }
+
+    /**
+     * 行偏移索引
+     */
+    private static class LineIndex {
+        private final Charset charset;
+        private final int unitSize;
+        private final boolean bigEndian;
+        private final long fileLength;
+        private final long lastModified;
+        private final long[] checkpoints;
+        private final long lineCount;
+
+        LineIndex(Charset charset, int unitSize, boolean bigEndian, long fileLength, long lastModified, long[] checkpoints, long lineCount) {
+            this.charset = charset;
+            this.unitSize = unitSize;
+            this.bigEndian = bigEndian;
+            this.fileLength = fileLength;
+            this.lastModified = lastModified;
+            this.checkpoints = checkpoints;
+            this.lineCount = lineCount;
+        }
+    }
+
+    /**
+     * 一页文本内容
+     */
+    public static class TextPage {
+        private int page;
+        private int pageSize;
+        private long totalLines;
+        private long totalPages;
+        private String charset;
+        private List<String> lines;
+
+        public TextPage(int page, int pageSize, long totalLines, long totalPages, String charset, List<String> lines) {
+            this.page = page;
+            this.pageSize = pageSize;
+            this.totalLines = totalLines;
+            this.totalPages = totalPages;
+            this.charset = charset;
+            this.lines = lines;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public long getTotalLines() {
+            return totalLines;
+        }
+
+        public long getTotalPages() {
+            return totalPages;
+        }
+
+        public String getCharset() {
+            return charset;
+        }
+
+        public List<String> getLines() {
+            return lines;
+        }
+    }
+}
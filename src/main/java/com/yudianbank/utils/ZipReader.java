@@ -7,12 +7,14 @@ import com.github.junrar.exception.RarException;
 import com.github.junrar.rarfile.FileHeader;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.yudianbank.store.ArtifactCache;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
@@ -28,11 +30,40 @@ public class ZipReader {
 
     @Autowired
     FileUtils fileUtils;
+    @Autowired
+    PreviewMetrics previewMetrics;
+    @Autowired
+    ArtifactCache artifactCache;
     @Value("${file.dir}")
     String fileDir;
+    /**
+     * 单个压缩文件允许的最大条目数
+     */
+    @Value("${archive.max.entries:10000}")
+    int maxEntries;
+    /**
+     * 单个压缩文件解压后允许的最大总字节数
+     */
+    @Value("${archive.max.total.bytes:1073741824}")
+    long maxTotalBytes;
+    /**
+     * 单个条目允许的最大压缩比(解压后大小/压缩后大小)
+     */
+    @Value("${archive.max.compression.ratio:100}")
+    long maxCompressionRatio;
+    /**
+     * 压缩文件内允许的最大目录层级
+     */
+    @Value("${archive.max.depth:20}")
+    int maxDepth;
 
     ExecutorService executors = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 
+    @PostConstruct
+    public void initMetrics() {
+        executors = previewMetrics.monitor(executors, "archive.extract");
+    }
+
     /**
      * 读取压缩文件
      * 文件压缩到统一目录fileDir下，并且命名使用压缩文件名+文件名因为文件名
@@ -47,42 +78,88 @@ public class ZipReader {
      *     加入节点的时候都会获取父节点是否存在，存在则会获取父节点的value并将当前节点加入到父节点的childList中(这里利用
      *     的是java语言的引用的特性)。
      * </p>
+     * <p>
+     *     文件树在开始解压前登记到转换文件缓存，解压超出限制而中止时删除登记，之后的请求不会拿到指向不存在文件的文件树。
+     * </p>
      * @param filePath
+     * @param cacheKey 转换文件缓存的key
      */
-    public String readZipFile(String filePath) {
-        String archiveSeparator = "/";
-        Map<String, FileNode> appender = Maps.newHashMap();
+    public String readZipFile(String filePath, String cacheKey) {
         String archiveFileName = fileUtils.getFileNameFromPath(filePath);
+        ZipFile zipFile = null;
+        long start = previewMetrics.start();
+        String result = "failure";
         try {
-            ZipFile zipFile = new ZipFile(filePath, fileUtils.getFileEncodeUTFGBK(filePath));
-            Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
-            // 排序
-            entries = sortZipEntries(entries);
+            zipFile = new ZipFile(filePath, fileUtils.getFileEncodeUTFGBK(filePath));
             List<Map<String, ZipArchiveEntry>> entriesToBeExtracted = Lists.newArrayList();
-            while (entries.hasMoreElements()){
-                ZipArchiveEntry entry = entries.nextElement();
-                String fullName = entry.getName();
-                int level = fullName.split(archiveSeparator).length;
-                // 展示名
-                String originName = getLastFileName(fullName, archiveSeparator);
-                String childName = level + "_" + originName;
-                boolean directory = entry.isDirectory();
-                if (!directory) {
-                    childName = archiveFileName + "_" + originName;
-                    entriesToBeExtracted.add(Collections.singletonMap(childName, entry));
-                }
-                String parentName = getLast2FileName(fullName, archiveSeparator, archiveFileName);
-                parentName = (level-1) + "_" + parentName;
-                FileNode node = new FileNode(originName, childName, parentName, new ArrayList<>(), directory);
-                addNodes(appender, parentName, node);
-                appender.put(childName, node);
-            }
+            ArchiveBudget budget = new ArchiveBudget();
+            FileNode root = buildZipTree(zipFile.getEntries(), archiveFileName, budget, entriesToBeExtracted);
+            String fileTree = new ObjectMapper().writeValueAsString(root);
+            fileUtils.addConvertedFile(cacheKey, fileTree);
             // 开启新的线程处理文件解压
-            executors.submit(new ZipExtractorWorker(entriesToBeExtracted, zipFile, filePath));
-            return new ObjectMapper().writeValueAsString(appender.get(""));
+            executors.submit(new ZipExtractorWorker(entriesToBeExtracted, zipFile, filePath, budget, cacheKey));
+            result = "success";
+            return fileTree;
+        } catch (ArchiveLimitExceededException e) {
+            System.out.println("压缩文件超出解压限制，终止解析：" + filePath + "，" + e.getMessage());
+            result = "limit";
+            closeQuietly(zipFile);
+            new File(filePath).delete();
+            return null;
         } catch (IOException e) {
             e.printStackTrace();
+            closeQuietly(zipFile);
             return null;
+        } finally {
+            previewMetrics.record(PreviewMetrics.ARCHIVE_PARSE, start, "format", "zip", "result", result);
+        }
+    }
+
+    /**
+     * 根据zip条目构造文件树
+     * @param entries 压缩文件条目
+     * @param archiveFileName 压缩文件名
+     * @param budget 解压限制
+     * @param entriesToBeExtracted 需要解压的文件，构造过程中加入
+     * @return 根节点
+     * @throws ArchiveLimitExceededException 超出解压限制
+     */
+    FileNode buildZipTree(Enumeration<ZipArchiveEntry> entries, String archiveFileName, ArchiveBudget budget,
+                          List<Map<String, ZipArchiveEntry>> entriesToBeExtracted) throws ArchiveLimitExceededException {
+        String archiveSeparator = "/";
+        Map<String, FileNode> appender = Maps.newHashMap();
+        // 排序
+        entries = sortZipEntries(entries);
+        while (entries.hasMoreElements()){
+            ZipArchiveEntry entry = entries.nextElement();
+            String fullName = entry.getName();
+            int level = fullName.split(archiveSeparator).length;
+            budget.checkEntry(fullName, level, entry.getSize(), entry.getCompressedSize());
+            // 展示名
+            String originName = getLastFileName(fullName, archiveSeparator);
+            String childName = level + "_" + originName;
+            boolean directory = entry.isDirectory();
+            if (!directory) {
+                childName = archiveFileName + "_" + originName;
+                entriesToBeExtracted.add(Collections.singletonMap(childName, entry));
+            }
+            String parentName = getLast2FileName(fullName, archiveSeparator, archiveFileName);
+            parentName = (level-1) + "_" + parentName;
+            FileNode node = new FileNode(originName, childName, parentName, new ArrayList<>(), directory);
+            addNodes(appender, parentName, node);
+            appender.put(childName, node);
+        }
+        return appender.get("");
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (null == closeable) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -99,14 +176,24 @@ public class ZipReader {
         return Collections.enumeration(sortedEntries);
     }
 
-    public String unRar(String filePath){
+    /**
+     * 读取rar文件，文件树的登记同readZipFile
+     * @param filePath
+     * @param cacheKey 转换文件缓存的key
+     * @return
+     */
+    public String unRar(String filePath, String cacheKey){
         Map<String, FileNode> appender = Maps.newHashMap();
+        Archive archive = null;
+        long start = previewMetrics.start();
+        String result = "failure";
         try {
-            Archive archive = new Archive(new File(filePath));
+            archive = new Archive(new File(filePath));
             List<FileHeader> headers = archive.getFileHeaders();
             headers = sortedHeaders(headers);
             String archiveFileName = fileUtils.getFileNameFromPath(filePath);
             List<Map<String, FileHeader>> headersToBeExtracted = Lists.newArrayList();
+            ArchiveBudget budget = new ArchiveBudget();
             for (FileHeader header : headers) {
                 String fullName;
                 if (header.isUnicode()) {
@@ -114,6 +201,8 @@ public class ZipReader {
                 }else {
                     fullName = header.getFileNameString();
                 }
+                budget.checkEntry(fullName, fullName.split("\\\\").length,
+                        header.getFullUnpackSize(), header.getFullPackSize());
                 // 展示名
                 String originName = getLastFileName(fullName, "\\");
                 String childName = originName;
@@ -127,12 +216,22 @@ public class ZipReader {
                 addNodes(appender, parentName, node);
                 appender.put(childName, node);
             }
-            executors.submit(new RarExtractorWorker(headersToBeExtracted, archive, filePath));
-            return new ObjectMapper().writeValueAsString(appender.get(""));
+            String fileTree = new ObjectMapper().writeValueAsString(appender.get(""));
+            fileUtils.addConvertedFile(cacheKey, fileTree);
+            executors.submit(new RarExtractorWorker(headersToBeExtracted, archive, filePath, budget, cacheKey));
+            result = "success";
+            return fileTree;
+        } catch (ArchiveLimitExceededException e) {
+            System.out.println("压缩文件超出解压限制，终止解析：" + filePath + "，" + e.getMessage());
+            result = "limit";
+            closeQuietly(archive);
+            new File(filePath).delete();
         } catch (RarException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            previewMetrics.record(PreviewMetrics.ARCHIVE_PARSE, start, "format", "rar", "result", result);
         }
         return null;
     }
@@ -274,6 +373,115 @@ public class ZipReader {
             this.directory = directory;
         }
     }
+    /**
+     * 压缩文件的解压预算，解析目录时校验声明的大小，解压时按实际写出的字节数校验
+     * (目录中声明的大小可以伪造，所以两处都要检查)
+     */
+    class ArchiveBudget {
+        private int entryCount;
+        private long declaredBytes;
+        private long extractedBytes;
+
+        /**
+         * 解析目录时检查条目数、层级、声明的解压大小和压缩比
+         * @param fullName
+         * @param level
+         * @param size 解压后大小，未知时为-1
+         * @param compressedSize 压缩后大小，未知时为-1
+         * @throws ArchiveLimitExceededException
+         */
+        void checkEntry(String fullName, int level, long size, long compressedSize) throws ArchiveLimitExceededException {
+            if (++entryCount > maxEntries) {
+                throw new ArchiveLimitExceededException("条目数超过" + maxEntries);
+            }
+            if (level > maxDepth) {
+                throw new ArchiveLimitExceededException("目录层级超过" + maxDepth + "：" + fullName);
+            }
+            if (size > 0) {
+                declaredBytes += size;
+                if (declaredBytes > maxTotalBytes) {
+                    throw new ArchiveLimitExceededException("解压总大小超过" + maxTotalBytes + "字节");
+                }
+                if (compressedSize > 0 && size / compressedSize > maxCompressionRatio) {
+                    throw new ArchiveLimitExceededException("压缩比超过" + maxCompressionRatio + "：" + fullName);
+                }
+            }
+        }
+
+        /**
+         * 包装单个条目的输出流，写出的字节数超过剩余总预算或压缩比上限时抛出异常
+         * @param out
+         * @param compressedSize 压缩后大小，未知时为-1
+         * @return
+         */
+        OutputStream limit(OutputStream out, long compressedSize) {
+            long entryLimit = Long.MAX_VALUE;
+            if (compressedSize > 0 && compressedSize <= Long.MAX_VALUE / maxCompressionRatio) {
+                entryLimit = compressedSize * maxCompressionRatio;
+            }
+            return new LimitedOutputStream(out, entryLimit);
+        }
+
+        /**
+         * 限制写出字节数的输出流
+         */
+        private class LimitedOutputStream extends FilterOutputStream {
+            private final long entryLimit;
+            private long written;
+
+            LimitedOutputStream(OutputStream out, long entryLimit) {
+                super(out);
+                this.entryLimit = entryLimit;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                count(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                count(len);
+                out.write(b, off, len);
+            }
+
+            private void count(int len) throws ArchiveLimitExceededException {
+                written += len;
+                extractedBytes += len;
+                if (extractedBytes > maxTotalBytes) {
+                    throw new ArchiveLimitExceededException("解压总大小超过" + maxTotalBytes + "字节");
+                }
+                if (written > entryLimit) {
+                    throw new ArchiveLimitExceededException("压缩比超过" + maxCompressionRatio);
+                }
+            }
+        }
+    }
+
+    /**
+     * 中止解压时删除已经解压出来的文件和文件树的登记
+     * @param extracted
+     * @param cacheKey
+     */
+    private void deleteExtracted(List<String> extracted, String cacheKey) {
+        fileUtils.removeConvertedFile(cacheKey);
+        for (String outPath : extracted) {
+            new File(outPath).delete();
+        }
+    }
+
+    /**
+     * 解压出来的文件保存到共享存储，其他节点也能预览压缩包内的文件
+     * @param extracted
+     */
+    private void publishExtracted(List<String> extracted) {
+        for (String outPath : extracted) {
+            if (new File(outPath).isFile()) {
+                artifactCache.publish(outPath);
+            }
+        }
+    }
 
     /**
      * Zip文件抽取线程
@@ -283,21 +491,36 @@ public class ZipReader {
         private List<Map<String, ZipArchiveEntry>> entriesToBeExtracted;
         private ZipFile zipFile;
         private String filePath;
+        private ArchiveBudget budget;
+        private String cacheKey;
 
-        public ZipExtractorWorker(List<Map<String, ZipArchiveEntry>> entriesToBeExtracted, ZipFile zipFile, String filePath) {
+        public ZipExtractorWorker(List<Map<String, ZipArchiveEntry>> entriesToBeExtracted, ZipFile zipFile, String filePath,
+                                  ArchiveBudget budget, String cacheKey) {
             this.entriesToBeExtracted = entriesToBeExtracted;
             this.zipFile = zipFile;
             this.filePath = filePath;
+            this.budget = budget;
+            this.cacheKey = cacheKey;
         }
 
         @Override
         public void run() {
             System.out.println("解析压缩文件开始《《《《《《《《《《《《《《《《《《《《《《《");
+            long start = previewMetrics.start();
+            String result = "success";
+            List<String> extracted = Lists.newArrayList();
             for (Map<String, ZipArchiveEntry> entryMap : entriesToBeExtracted) {
                 String childName = entryMap.keySet().iterator().next();
                 ZipArchiveEntry entry = entryMap.values().iterator().next();
-                try {
-                    extractZipFile(childName, zipFile.getInputStream(entry));
+                String outPath = fileDir + childName;
+                extracted.add(outPath);
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    extractZipFile(outPath, in, entry.getCompressedSize());
+                } catch (ArchiveLimitExceededException e) {
+                    System.out.println("压缩文件超出解压限制，终止解压：" + filePath + "，" + e.getMessage());
+                    result = "limit";
+                    deleteExtracted(extracted, cacheKey);
+                    break;
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -310,23 +533,30 @@ public class ZipReader {
             if (new File(filePath).exists()) {
                 new File(filePath).delete();
             }
+            if ("success".equals(result)) {
+                publishExtracted(extracted);
+            }
+            previewMetrics.record(PreviewMetrics.ARCHIVE_EXTRACT, start, "format", "zip", "result", result);
             System.out.println("解析压缩文件结束《《《《《《《《《《《《《《《《《《《《《《《");
         }
 
 
         /**
          * 读取压缩文件并写入到fileDir文件夹下
-         * @param childName
+         * @param outPath
          * @param zipFile
+         * @param compressedSize
+         * @throws ArchiveLimitExceededException 超出解压限制
          */
-        private void extractZipFile(String childName, InputStream zipFile) {
-            String outPath = fileDir + childName;
-            try (OutputStream ot = new FileOutputStream(outPath)){
+        private void extractZipFile(String outPath, InputStream zipFile, long compressedSize) throws ArchiveLimitExceededException {
+            try (OutputStream ot = budget.limit(new FileOutputStream(outPath), compressedSize)){
                 byte[] inByte = new byte[1024];
                 int len;
                 while ((-1 != (len = zipFile.read(inByte)))){
                     ot.write(inByte, 0, len);
                 }
+            } catch (ArchiveLimitExceededException e) {
+                throw e;
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
             } catch (IOException e) {
@@ -345,19 +575,36 @@ public class ZipReader {
          * 用以删除源文件
          */
         private String filePath;
+        private ArchiveBudget budget;
+        private String cacheKey;
 
-        public RarExtractorWorker(List<Map<String, FileHeader>> headersToBeExtracted, Archive archive, String filePath) {
+        public RarExtractorWorker(List<Map<String, FileHeader>> headersToBeExtracted, Archive archive, String filePath,
+                                  ArchiveBudget budget, String cacheKey) {
             this.headersToBeExtracted = headersToBeExtracted;
             this.archive = archive;
             this.filePath = filePath;
+            this.budget = budget;
+            this.cacheKey = cacheKey;
         }
 
         @Override
         public void run() {
             System.out.println("解析压缩文件开始《《《《《《《《《《《《《《《《《《《《《《《");
+            long start = previewMetrics.start();
+            String result = "success";
+            List<String> extracted = Lists.newArrayList();
             for (Map<String, FileHeader> entryMap : headersToBeExtracted) {
                 String childName = entryMap.keySet().iterator().next();
-                extractRarFile(childName, entryMap.values().iterator().next(), archive);
+                String outPath = fileDir + childName;
+                extracted.add(outPath);
+                try {
+                    extractRarFile(outPath, entryMap.values().iterator().next(), archive);
+                } catch (ArchiveLimitExceededException e) {
+                    System.out.println("压缩文件超出解压限制，终止解压：" + filePath + "，" + e.getMessage());
+                    result = "limit";
+                    deleteExtracted(extracted, cacheKey);
+                    break;
+                }
             }
             try {
                 archive.close();
@@ -367,24 +614,34 @@ public class ZipReader {
             if (new File(filePath).exists()) {
                 new File(filePath).delete();
             }
+            if ("success".equals(result)) {
+                publishExtracted(extracted);
+            }
+            previewMetrics.record(PreviewMetrics.ARCHIVE_EXTRACT, start, "format", "rar", "result", result);
             System.out.println("解析压缩文件结束《《《《《《《《《《《《《《《《《《《《《《《");
         }
 
         /**
          * 抽取rar文件到指定目录下
-         * @param childName
+         * @param outPath
          * @param header
          * @param archive
+         * @throws ArchiveLimitExceededException 超出解压限制
          */
-        private void extractRarFile(String childName, FileHeader header, Archive archive) {
-            String outPath = fileDir + childName;
-            try(OutputStream ot = new FileOutputStream(outPath)) {
+        private void extractRarFile(String outPath, FileHeader header, Archive archive) throws ArchiveLimitExceededException {
+            try(OutputStream ot = budget.limit(new FileOutputStream(outPath), header.getFullPackSize())) {
                 archive.extractFile(header, ot);
+            } catch (ArchiveLimitExceededException e) {
+                throw e;
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
             } catch (IOException e) {
                 e.printStackTrace();
             } catch (RarException e) {
+                // junrar会把写出时的IOException包装成RarException
+                if (e.getCause() instanceof ArchiveLimitExceededException) {
+                    throw (ArchiveLimitExceededException) e.getCause();
+                }
                 e.printStackTrace();
             }
         }
@@ -0,0 +1,28 @@
+package com.yudianbank.web.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yudianbank.utils.PreviewPipeline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 转换进度查询(预览页面只显示了前几页时轮询)
+ * @author yudian-it
+ */
+@RestController
+public class ConvertStatusController {
+    @Autowired
+    PreviewPipeline previewPipeline;
+
+    /**
+     * @param name 转换后的文件名
+     * @return msg为SUCCESS时完整文件已可用，PARTIAL时仍在转换
+     */
+    @RequestMapping(value = "convertStatus", method = RequestMethod.GET)
+    public String convertStatus(String name) throws JsonProcessingException {
+        return new ObjectMapper().writeValueAsString(previewPipeline.officeStatus(name));
+    }
+}
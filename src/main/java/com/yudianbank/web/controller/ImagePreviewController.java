@@ -0,0 +1,128 @@
+package com.yudianbank.web.controller;
+
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.utils.FileUtils;
+import com.yudianbank.utils.ImageRenditionCache;
+import com.yudianbank.utils.ImageTileCache;
+import com.yudianbank.utils.PreviewMetrics;
+import com.yudianbank.utils.SlideRenderer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+
+/**
+ * 图片代理：按视口宽度返回缓存的缩略图、超大图片的瓦片以及幻灯片图片
+ * @author yudian-it
+ */
+@RestController
+public class ImagePreviewController {
+    @Autowired
+    FileUtils fileUtils;
+    @Autowired
+    ImageRenditionCache imageRenditionCache;
+    @Autowired
+    ImageTileCache imageTileCache;
+    @Autowired
+    SlideRenderer slideRenderer;
+    @Autowired
+    PreviewMetrics previewMetrics;
+
+    /**
+     * @param url 与onlinePreview的url参数一致
+     * @param width 期望宽度(像素)
+     * @param needEncode
+     */
+    @RequestMapping(value = "picture/rendition", method = RequestMethod.GET)
+    public void rendition(String url, @RequestParam(defaultValue = "1280") int width, String needEncode,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String decodedUrl = URLDecoder.decode(url, "utf-8");
+        ReturnResponse<String> rendition = imageRenditionCache.getRendition(decodedUrl, suffixOf(decodedUrl), width, needEncode);
+        if (0 != rendition.getCode()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, rendition.getMsg());
+            return;
+        }
+        writeImage(new File(rendition.getContent()), request, response);
+    }
+
+    /**
+     * 超大图片的DZI描述
+     * @param url 与onlinePreview的url参数一致
+     * @param needEncode
+     */
+    @RequestMapping(value = "picture/dzi", method = RequestMethod.GET, produces = "application/xml;charset=UTF-8")
+    public String dzi(String url, String needEncode, HttpServletResponse response) throws IOException {
+        String decodedUrl = URLDecoder.decode(url, "utf-8");
+        ReturnResponse<ImageTileCache.TiledImage> described = imageTileCache.describe(decodedUrl, suffixOf(decodedUrl), needEncode);
+        if (0 != described.getCode()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, described.getMsg());
+            return null;
+        }
+        return described.getContent().toDzi();
+    }
+
+    /**
+     * 超大图片的瓦片
+     * @param url 与onlinePreview的url参数一致
+     * @param level 层级，0为1x1
+     * @param col
+     * @param row
+     * @param needEncode
+     */
+    @RequestMapping(value = "picture/tile", method = RequestMethod.GET)
+    public void tile(String url, int level, int col, int row, String needEncode,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String decodedUrl = URLDecoder.decode(url, "utf-8");
+        ReturnResponse<String> tile = imageTileCache.getTile(decodedUrl, suffixOf(decodedUrl), needEncode, level, col, row);
+        if (0 != tile.getCode()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, tile.getMsg());
+            return;
+        }
+        writeImage(new File(tile.getContent()), request, response);
+    }
+
+    /**
+     * 幻灯片图片，还在渲染时等待该页完成
+     * @param key 文稿摘要
+     * @param index 页号，从0开始
+     */
+    @RequestMapping(value = "slides/image", method = RequestMethod.GET)
+    public void slide(String key, int index, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ReturnResponse<String> slide = slideRenderer.getSlide(key, index);
+        if (0 != slide.getCode()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, slide.getMsg());
+            return;
+        }
+        writeImage(new File(slide.getContent()), request, response);
+    }
+
+    private String suffixOf(String decodedUrl) {
+        String fileName = fileUtils.getFileNameFromURL(decodedUrl);
+        return fileName.substring(fileName.lastIndexOf(".") + 1);
+    }
+
+    private void writeImage(File file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long lastModified = file.lastModified() / 1000 * 1000;
+        long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        if (ifModifiedSince != -1 && lastModified <= ifModifiedSince) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        String mimeType = request.getServletContext().getMimeType(file.getName());
+        response.setContentType(null == mimeType ? "application/octet-stream" : mimeType);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Cache-Control", "max-age=86400");
+        response.setContentLengthLong(file.length());
+        long start = previewMetrics.start();
+        Files.copy(file.toPath(), response.getOutputStream());
+        previewMetrics.record(PreviewMetrics.FILE_SERVE, start, "kind", "image", "encoding", null);
+    }
+}
@@ -0,0 +1,65 @@
+package com.yudianbank.web.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.utils.PreviewMetrics;
+import com.yudianbank.utils.TextPreviewEngine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 类文本文件分页读取
+ * @author yudian-it
+ */
+@RestController
+public class TextPreviewController {
+    @Value("${file.dir}")
+    String fileDir;
+    @Value("${text.page.max.size:1000}")
+    int maxPageSize;
+    @Autowired
+    TextPreviewEngine textPreviewEngine;
+    @Autowired
+    PreviewMetrics previewMetrics;
+
+    /**
+     * 按页读取file.dir下已下载的类文本文件
+     * @param fileName 文件名(onlinePreview返回的ordinaryUrl)
+     * @param page 页码，从1开始
+     * @param size 每页行数
+     * @return
+     */
+    @RequestMapping(value = "textPage", method = RequestMethod.GET, produces = "application/json;charset=UTF-8")
+    public String textPage(String fileName,
+                           @RequestParam(defaultValue = "1") int page,
+                           @RequestParam(defaultValue = "200") int size) throws JsonProcessingException {
+        if (null == fileName || fileName.isEmpty()) {
+            return new ObjectMapper().writeValueAsString(new ReturnResponse<String>(1, "缺少参数fileName", null));
+        }
+        // 只允许读取file.dir下的文件
+        fileName = fileName.substring(Math.max(fileName.lastIndexOf("/"), fileName.lastIndexOf("\\")) + 1);
+        File file = new File(fileDir + fileName);
+        if (!file.isFile()) {
+            return new ObjectMapper().writeValueAsString(new ReturnResponse<String>(1, "文件不存在!!!", null));
+        }
+        page = Math.max(page, 1);
+        size = Math.min(Math.max(size, 1), maxPageSize);
+        try {
+            long start = previewMetrics.start();
+            TextPreviewEngine.TextPage textPage = textPreviewEngine.readPage(file.getAbsolutePath(), page, size);
+            previewMetrics.record(PreviewMetrics.FILE_SERVE, start, "kind", "textPage", "encoding", null);
+            return new ObjectMapper().writeValueAsString(new ReturnResponse<>(0, "SUCCESS", textPage));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ObjectMapper().writeValueAsString(new ReturnResponse<String>(1, e.getMessage(), null));
+        }
+    }
+}
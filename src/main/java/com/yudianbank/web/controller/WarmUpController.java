@@ -0,0 +1,61 @@
+package com.yudianbank.web.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.utils.PreviewWarmUp;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 批量预转换接口
+ * @author yudian-it
+ */
+@RestController
+public class WarmUpController {
+    @Autowired
+    PreviewWarmUp previewWarmUp;
+    /**
+     * 单批次最多url个数
+     */
+    @Value("${warmup.batch.max.size:1000}")
+    int maxBatchSize;
+
+    /**
+     * 提交预转换
+     * @param urls url列表，每个url与onlinePreview的url参数一致
+     * @param needEncode
+     * @return content为批次状态，可用其中的id查询进度
+     */
+    @RequestMapping(value = "warmUp", method = RequestMethod.POST)
+    public String warmUp(@RequestBody List<String> urls, String needEncode) throws JsonProcessingException {
+        if (null == urls || urls.isEmpty()) {
+            return new ObjectMapper().writeValueAsString(new ReturnResponse<String>(1, "url列表不能为空", null));
+        }
+        if (urls.size() > maxBatchSize) {
+            return new ObjectMapper().writeValueAsString(new ReturnResponse<String>(1, "单批次最多" + maxBatchSize + "个url", null));
+        }
+        PreviewWarmUp.Batch batch = previewWarmUp.submit(urls, needEncode);
+        return new ObjectMapper().writeValueAsString(new ReturnResponse<>(0, "SUCCESS", batch));
+    }
+
+    /**
+     * 查询预转换进度
+     * @param batchId
+     * @return
+     */
+    @RequestMapping(value = "warmUp/status", method = RequestMethod.GET)
+    public String status(String batchId) throws JsonProcessingException {
+        PreviewWarmUp.Batch batch = previewWarmUp.getBatch(batchId);
+        if (null == batch) {
+            return new ObjectMapper().writeValueAsString(new ReturnResponse<String>(1, "批次不存在或已过期", null));
+        }
+        return new ObjectMapper().writeValueAsString(new ReturnResponse<>(0, "SUCCESS", batch));
+    }
+}
@@ -0,0 +1,71 @@
+package com.yudianbank.web.interceptor;
+
+import com.yudianbank.utils.RequestTimings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static net.logstash.logback.argument.StructuredArguments.entries;
+
+/**
+ * 预览请求耗时拆分
+ * <p>
+ *     处理完成后(视图渲染前)把各阶段耗时写到Server-Timing响应头；
+ *     总耗时超过阈值的请求通过logstash输出结构化日志(每个阶段一个字段)。
+ * </p>
+ * @author yudian-it
+ */
+public class ServerTimingInterceptor implements HandlerInterceptor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerTimingInterceptor.class);
+    private static final String START_ATTRIBUTE = ServerTimingInterceptor.class.getName() + ".start";
+
+    private final long slowThresholdMillis;
+
+    public ServerTimingInterceptor(long slowThresholdMillis) {
+        this.slowThresholdMillis = slowThresholdMillis;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        RequestTimings.begin();
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        Map<String, Long> timings = new LinkedHashMap<>(RequestTimings.current());
+        timings.put("handler", System.nanoTime() - (Long) request.getAttribute(START_ATTRIBUTE));
+        if (!response.isCommitted()) {
+            response.setHeader("Server-Timing", RequestTimings.toServerTiming(timings));
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        try {
+            long total = System.nanoTime() - (Long) request.getAttribute(START_ATTRIBUTE);
+            if (RequestTimings.toMillis(total) < slowThresholdMillis) {
+                return;
+            }
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("preview_uri", request.getRequestURI());
+            fields.put("preview_url", request.getParameter("url"));
+            fields.put("preview_status", response.getStatus());
+            fields.put("preview_total_ms", RequestTimings.toMillis(total));
+            for (Map.Entry<String, Long> entry : RequestTimings.current().entrySet()) {
+                fields.put("preview_" + entry.getKey().replace('.', '_') + "_ms", RequestTimings.toMillis(entry.getValue()));
+            }
+            LOGGER.warn("慢预览请求 {}", entries(fields));
+        } finally {
+            RequestTimings.end();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * 超大图片瓦片查看器
+ * 只请求当前视口内、当前缩放级别的瓦片；瓦片未加载完成时用已加载的低层级瓦片放大占位
+ * options: width, height, tileSize, maxLevel, tileUrl(level, col, row)
+ */
+(function (window) {
+    var MAX_CACHED_TILES = 300;
+
+    function TileViewer(canvas, options) {
+        this.canvas = canvas;
+        this.ctx = canvas.getContext("2d");
+        this.options = options;
+        // 图片坐标(原图像素)到屏幕坐标: screen = image * scale + offset
+        this.scale = 1;
+        this.offsetX = 0;
+        this.offsetY = 0;
+        this.tiles = {};
+        this.tileCount = 0;
+        this.useClock = 0;
+        this.pending = false;
+        this.resize();
+        this.fit();
+        this.bindEvents();
+    }
+
+    TileViewer.prototype.resize = function () {
+        var ratio = window.devicePixelRatio || 1;
+        this.ratio = ratio;
+        this.canvas.width = this.canvas.clientWidth * ratio;
+        this.canvas.height = this.canvas.clientHeight * ratio;
+        this.draw();
+    };
+
+    TileViewer.prototype.fit = function () {
+        var o = this.options;
+        this.scale = Math.min(this.canvas.width / o.width, this.canvas.height / o.height);
+        this.offsetX = (this.canvas.width - o.width * this.scale) / 2;
+        this.offsetY = (this.canvas.height - o.height * this.scale) / 2;
+        this.draw();
+    };
+
+    /**
+     * 以屏幕上的(x, y)为中心缩放，未指定时以画布中心缩放
+     */
+    TileViewer.prototype.zoomBy = function (factor, x, y) {
+        var o = this.options;
+        var minScale = Math.min(this.canvas.width / o.width, this.canvas.height / o.height) / 2;
+        var newScale = Math.max(minScale, Math.min(this.scale * factor, 4));
+        x = x === undefined ? this.canvas.width / 2 : x;
+        y = y === undefined ? this.canvas.height / 2 : y;
+        this.offsetX = x - (x - this.offsetX) * newScale / this.scale;
+        this.offsetY = y - (y - this.offsetY) * newScale / this.scale;
+        this.scale = newScale;
+        this.draw();
+    };
+
+    TileViewer.prototype.panBy = function (dx, dy) {
+        this.offsetX += dx;
+        this.offsetY += dy;
+        this.draw();
+    };
+
+    /**
+     * 当前缩放比例对应的层级：第maxLevel层为原图，每降一层宽高减半
+     */
+    TileViewer.prototype.levelFor = function (scale) {
+        var level = this.options.maxLevel + Math.ceil(Math.log(scale) / Math.LN2);
+        return Math.max(0, Math.min(this.options.maxLevel, level));
+    };
+
+    TileViewer.prototype.draw = function () {
+        var self = this;
+        if (self.pending) {
+            return;
+        }
+        self.pending = true;
+        (window.requestAnimationFrame || function (fn) { setTimeout(fn, 16); })(function () {
+            self.pending = false;
+            self.render();
+        });
+    };
+
+    TileViewer.prototype.render = function () {
+        var ctx = this.ctx;
+        var level = this.levelFor(this.scale);
+        ctx.clearRect(0, 0, this.canvas.width, this.canvas.height);
+        // 先画低层级作为占位，再画当前层级
+        var fallback = Math.max(0, level - 3);
+        for (var l = fallback; l < level; l++) {
+            this.renderLevel(l, false);
+        }
+        this.renderLevel(level, true);
+        this.evict();
+    };
+
+    TileViewer.prototype.renderLevel = function (level, load) {
+        var o = this.options;
+        var levelScale = Math.pow(2, o.maxLevel - level);
+        var levelWidth = Math.ceil(o.width / levelScale);
+        var levelHeight = Math.ceil(o.height / levelScale);
+        var columns = Math.ceil(levelWidth / o.tileSize);
+        var rows = Math.ceil(levelHeight / o.tileSize);
+        // 一个瓦片在屏幕上的边长
+        var size = o.tileSize * levelScale * this.scale;
+        var firstCol = Math.max(0, Math.floor(-this.offsetX / size));
+        var firstRow = Math.max(0, Math.floor(-this.offsetY / size));
+        var lastCol = Math.min(columns - 1, Math.floor((this.canvas.width - this.offsetX) / size));
+        var lastRow = Math.min(rows - 1, Math.floor((this.canvas.height - this.offsetY) / size));
+        for (var row = firstRow; row <= lastRow; row++) {
+            for (var col = firstCol; col <= lastCol; col++) {
+                var tile = load ? this.tile(level, col, row) : this.tiles[level + "/" + col + "/" + row];
+                if (tile && tile.loaded) {
+                    tile.used = ++this.useClock;
+                    var x = this.offsetX + col * size;
+                    var y = this.offsetY + row * size;
+                    this.ctx.drawImage(tile.image, x, y,
+                            tile.image.width * levelScale * this.scale, tile.image.height * levelScale * this.scale);
+                }
+            }
+        }
+    };
+
+    TileViewer.prototype.tile = function (level, col, row) {
+        var key = level + "/" + col + "/" + row;
+        var tile = this.tiles[key];
+        if (tile) {
+            return tile;
+        }
+        var self = this;
+        tile = {image: new Image(), loaded: false, used: ++this.useClock, level: level};
+        tile.image.onload = function () {
+            tile.loaded = true;
+            self.draw();
+        };
+        tile.image.src = this.options.tileUrl(level, col, row);
+        this.tiles[key] = tile;
+        this.tileCount++;
+        return tile;
+    };
+
+    /**
+     * 瓦片数量超出上限时丢弃最久未绘制的瓦片(0层始终保留作为占位)
+     */
+    TileViewer.prototype.evict = function () {
+        if (this.tileCount <= MAX_CACHED_TILES) {
+            return;
+        }
+        var self = this;
+        var keys = Object.keys(this.tiles).filter(function (key) {
+            return self.tiles[key].level > 0;
+        }).sort(function (a, b) {
+            return self.tiles[a].used - self.tiles[b].used;
+        });
+        for (var i = 0; i < keys.length && this.tileCount > MAX_CACHED_TILES; i++) {
+            var tile = this.tiles[keys[i]];
+            tile.image.onload = null;
+            tile.image.src = "";
+            delete this.tiles[keys[i]];
+            this.tileCount--;
+        }
+    };
+
+    TileViewer.prototype.bindEvents = function () {
+        var self = this;
+        var canvas = this.canvas;
+        var last = null;
+        var pinch = null;
+
+        canvas.addEventListener("mousedown", function (e) {
+            last = {x: e.clientX, y: e.clientY};
+        });
+        window.addEventListener("mousemove", function (e) {
+            if (last) {
+                self.panBy((e.clientX - last.x) * self.ratio, (e.clientY - last.y) * self.ratio);
+                last = {x: e.clientX, y: e.clientY};
+            }
+        });
+        window.addEventListener("mouseup", function () {
+            last = null;
+        });
+        canvas.addEventListener("wheel", function (e) {
+            e.preventDefault();
+            var rect = canvas.getBoundingClientRect();
+            self.zoomBy(e.deltaY < 0 ? 1.25 : 0.8, (e.clientX - rect.left) * self.ratio, (e.clientY - rect.top) * self.ratio);
+        });
+        canvas.addEventListener("dblclick", function (e) {
+            var rect = canvas.getBoundingClientRect();
+            self.zoomBy(2, (e.clientX - rect.left) * self.ratio, (e.clientY - rect.top) * self.ratio);
+        });
+
+        function distance(touches) {
+            var dx = touches[0].clientX - touches[1].clientX;
+            var dy = touches[0].clientY - touches[1].clientY;
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+        canvas.addEventListener("touchstart", function (e) {
+            if (e.touches.length === 1) {
+                last = {x: e.touches[0].clientX, y: e.touches[0].clientY};
+            } else if (e.touches.length === 2) {
+                last = null;
+                pinch = distance(e.touches);
+            }
+        });
+        canvas.addEventListener("touchmove", function (e) {
+            e.preventDefault();
+            if (e.touches.length === 1 && last) {
+                self.panBy((e.touches[0].clientX - last.x) * self.ratio, (e.touches[0].clientY - last.y) * self.ratio);
+                last = {x: e.touches[0].clientX, y: e.touches[0].clientY};
+            } else if (e.touches.length === 2 && pinch) {
+                var current = distance(e.touches);
+                var rect = canvas.getBoundingClientRect();
+                var x = ((e.touches[0].clientX + e.touches[1].clientX) / 2 - rect.left) * self.ratio;
+                var y = ((e.touches[0].clientY + e.touches[1].clientY) / 2 - rect.top) * self.ratio;
+                self.zoomBy(current / pinch, x, y);
+                pinch = current;
+            }
+        });
+        canvas.addEventListener("touchend", function () {
+            last = null;
+            pinch = null;
+        });
+        window.addEventListener("resize", function () {
+            self.resize();
+        });
+    };
+
+    window.TileViewer = TileViewer;
+})(window);
@@ -8,19 +8,57 @@
             padding:0;
             border:0;
         }
+        #partialTip{
+            padding: 6px 12px;
+            font-size: 14px;
+            color: #8a6d3b;
+            background: #fcf8e3;
+        }
     </style>
 </head>
 <body>
+<#if fullPdfName??>
+    <div id="partialTip">当前只显示了前几页，完整文档正在转换，完成后自动显示。</div>
+</#if>
     <iframe src="${pdfUrl}" width="100%" frameborder="0"></iframe>
 </body>
 <script type="text/javascript">
-    document.getElementsByTagName('iframe')[0].height = document.documentElement.clientHeight-10;
+    function resize() {
+        var tip = document.getElementById("partialTip");
+        document.getElementsByTagName('iframe')[0].height = document.documentElement.clientHeight - 10
+                - (tip ? tip.offsetHeight : 0);
+    }
+    resize();
     /**
      * 页面变化调整高度
      */
-    window.onresize = function(){
-        var fm = document.getElementsByTagName("iframe")[0];
-        fm.height = window.document.documentElement.clientHeight-10;
-    }
+    window.onresize = resize;
+<#if fullPdfName??>
+    /**
+     * 轮询完整文件是否转换完成，完成后替换
+     */
+    (function poll() {
+        var name = "${fullPdfName?js_string}";
+        var xhr = new XMLHttpRequest();
+        xhr.open("GET", "convertStatus?name=" + encodeURIComponent(name));
+        xhr.onload = function () {
+            var result = JSON.parse(xhr.responseText);
+            var tip = document.getElementById("partialTip");
+            if (result.code === 0 && result.msg === "SUCCESS") {
+                tip.parentNode.removeChild(tip);
+                document.getElementsByTagName('iframe')[0].src = name;
+                resize();
+            } else if (result.code === 0) {
+                setTimeout(poll, 2000);
+            } else {
+                tip.innerHTML = result.msg;
+            }
+        };
+        xhr.onerror = function () {
+            setTimeout(poll, 5000);
+        };
+        xhr.send();
+    })();
+</#if>
 </script>
-</html>
\ No newline at end of file
+</html>
@@ -19,15 +19,28 @@
 </ul>
 <script src="js/viewer.min.js"></script>
 <script>
+    /**
+     * 图片代理地址(服务端按宽度返回缓存的缩略图)
+     */
+    function renditionUrl(width) {
+        var needEncode = document.getElementById("needEncode").value;
+        return "picture/rendition?url=" + encodeURIComponent(document.getElementById("url").value)
+                + "&width=" + width + (needEncode ? "&needEncode=" + needEncode : "");
+    }
     //初始化图片地址
     window.onload = function () {
 //        document.getElementById("Imgbox").src = getParameter("imgurl");
-        document.getElementById("Imgbox").src =document.getElementById("url").value;
+        var ratio = window.devicePixelRatio || 1;
+        var img = document.getElementById("Imgbox");
+        img.src = renditionUrl(Math.round(800 * ratio));
+        // 查看大图时使用与视口宽度最接近的缩略图
+        img.setAttribute("data-original", renditionUrl(Math.round(Math.max(window.screen.width, 800) * ratio)));
+        var viewer = new Viewer(document.getElementById('dowebok'), {url: 'data-original'});
+        viewer.show();
     }
-    var viewer = new Viewer(document.getElementById('dowebok'), {url: 'src'});
-    viewer.show();
 </script>
 <input name="url" value="${imgurl}" type="hidden" id="url" >
+<input name="needEncode" value="${needEncode!}" type="hidden" id="needEncode" >
 </body>
 
 </html>
@@ -0,0 +1,46 @@
+<!DOCTYPE html>
+<html lang="en">
+<head>
+    <meta charset="utf-8">
+    <meta name="viewport" content="width=device-width, initial-scale=1, user-scalable=no">
+    <title>图片预览图</title>
+    <style>
+        * { margin: 0; padding: 0;}
+        html, body { width: 100%; height: 100%; overflow: hidden; background: #333;}
+        #viewer { display: block; width: 100%; height: 100%; cursor: move; touch-action: none;}
+        #toolbar { position: fixed; right: 20px; bottom: 20px;}
+        #toolbar button { width: 36px; height: 36px; margin-left: 6px; font-size: 20px; border: 0; border-radius: 18px; background: rgba(0,0,0,.6); color: #fff; cursor: pointer;}
+    </style>
+</head>
+<body>
+<canvas id="viewer"></canvas>
+<div id="toolbar">
+    <button id="zoomOut" title="缩小">-</button>
+    <button id="zoomIn" title="放大">+</button>
+    <button id="zoomFit" title="适应窗口">□</button>
+</div>
+<script src="js/tile.viewer.js"></script>
+<script>
+    window.onload = function () {
+        var needEncode = document.getElementById("needEncode").value;
+        var url = encodeURIComponent(document.getElementById("url").value);
+        var viewer = new TileViewer(document.getElementById("viewer"), {
+            width: ${tiledImage.width?c},
+            height: ${tiledImage.height?c},
+            tileSize: ${tiledImage.tileSize?c},
+            maxLevel: ${tiledImage.maxLevel?c},
+            tileUrl: function (level, col, row) {
+                return "picture/tile?url=" + url + "&level=" + level + "&col=" + col + "&row=" + row
+                        + (needEncode ? "&needEncode=" + needEncode : "");
+            }
+        });
+        document.getElementById("zoomIn").onclick = function () { viewer.zoomBy(2); };
+        document.getElementById("zoomOut").onclick = function () { viewer.zoomBy(0.5); };
+        document.getElementById("zoomFit").onclick = function () { viewer.fit(); };
+    }
+</script>
+<input name="url" value="${imgurl}" type="hidden" id="url" >
+<input name="needEncode" value="${needEncode!}" type="hidden" id="needEncode" >
+</body>
+
+</html>
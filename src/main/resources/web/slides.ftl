@@ -0,0 +1,51 @@
+<!DOCTYPE html>
+<html lang="en">
+<head>
+    <meta charset="utf-8">
+    <meta name="viewport" content="width=device-width, initial-scale=1">
+    <title>幻灯片预览</title>
+    <style>
+        * { margin: 0; padding: 0;}
+        body { background: #525659;}
+        .slide { display: block; width: 90%; max-width: ${slideDeck.width?c}px; margin: 16px auto; background: #fff; box-shadow: 0 2px 8px rgba(0,0,0,.4);}
+        .slide img { display: block; width: 100%; height: 100%;}
+        #pager { position: fixed; right: 20px; bottom: 20px; padding: 4px 10px; border-radius: 12px; background: rgba(0,0,0,.6); color: #fff; font-size: 14px;}
+    </style>
+</head>
+<body>
+<#list 0..<slideDeck.count as index>
+    <div class="slide" style="aspect-ratio: ${slideDeck.width?c} / ${slideDeck.height?c};">
+        <img data-src="slides/image?key=${slideDeck.key}&index=${index?c}" alt="第${index + 1}页"<#if index == 0> src="slides/image?key=${slideDeck.key}&index=0"</#if>>
+    </div>
+</#list>
+<div id="pager">共${slideDeck.count?c}页</div>
+<script>
+    window.onload = function () {
+        var images = document.querySelectorAll(".slide img");
+        // 第1页已随页面加载，其余页面滚动到附近时再请求(后台可能仍在渲染)
+        var load = function (img) {
+            if (!img.getAttribute("src")) {
+                img.setAttribute("src", img.getAttribute("data-src"));
+            }
+        };
+        if ("IntersectionObserver" in window) {
+            var observer = new IntersectionObserver(function (entries) {
+                entries.forEach(function (entry) {
+                    if (entry.isIntersecting) {
+                        load(entry.target);
+                        observer.unobserve(entry.target);
+                    }
+                });
+            }, {rootMargin: "800px 0px"});
+            for (var i = 1; i < images.length; i++) {
+                observer.observe(images[i]);
+            }
+        } else {
+            for (var j = 1; j < images.length; j++) {
+                load(images[j]);
+            }
+        }
+    }
+</script>
+</body>
+</html>
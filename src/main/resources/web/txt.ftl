@@ -3,16 +3,72 @@
 <head>
     <meta charset="utf-8">
     <title>普通文件预览</title>
+    <style type="text/css">
+        body { margin: 0; padding: 0; font-family: Consolas, "Courier New", monospace; }
+        #toolbar { position: fixed; top: 0; left: 0; right: 0; padding: 6px 10px; background: #f0f0f0; border-bottom: 1px solid #ccc; font-size: 13px; }
+        #toolbar button, #toolbar input { margin-right: 6px; }
+        #toolbar input { width: 60px; }
+        #content { margin: 0; padding: 46px 10px 10px 10px; font-size: 13px; line-height: 18px; white-space: pre-wrap; word-wrap: break-word; }
+    </style>
 </head>
 
-
-
 <body>
-<script language="javascript" type="text/javascript">
-    window.location.href="${ordinaryUrl}";
-</script>
+<div id="toolbar">
+    <button id="prev">上一页</button>
+    <button id="next">下一页</button>
+    第 <input id="pageNo" type="number" min="1" value="1"> 页 / 共 <span id="totalPages">-</span> 页
+    <button id="go">跳转</button>
+    <span id="info"></span>
+    <a id="raw" target="_blank">查看原文件</a>
+</div>
+<pre id="content"></pre>
+<input name="ordinaryUrl" value="${ordinaryUrl}" type="hidden" id="ordinaryUrl">
+<script type="text/javascript" src="js/jquery-3.0.0.min.js"></script>
+<script type="text/javascript">
+    var fileName = $("#ordinaryUrl").val();
+    var pageSize = 200;
+    var currentPage = 1;
+    var totalPages = 1;
+    $("#raw").attr("href", encodeURIComponent(fileName));
 
+    /**
+     * 读取指定页
+     */
+    function loadPage(page) {
+        $.getJSON("textPage", {fileName: fileName, page: page, size: pageSize}, function (res) {
+            if (res.code !== 0) {
+                $("#content").text(res.msg);
+                return;
+            }
+            var data = res.content;
+            currentPage = data.page;
+            totalPages = Math.max(data.totalPages, 1);
+            $("#pageNo").val(currentPage);
+            $("#totalPages").text(totalPages);
+            $("#info").text("共 " + data.totalLines + " 行，编码 " + data.charset);
+            $("#content").text(data.lines.join("\n"));
+            window.scrollTo(0, 0);
+        });
+    }
 
+    $("#prev").click(function () {
+        if (currentPage > 1) {
+            loadPage(currentPage - 1);
+        }
+    });
+    $("#next").click(function () {
+        if (currentPage < totalPages) {
+            loadPage(currentPage + 1);
+        }
+    });
+    $("#go").click(function () {
+        var page = parseInt($("#pageNo").val(), 10);
+        if (page >= 1 && page <= totalPages) {
+            loadPage(page);
+        }
+    });
+    loadPage(1);
+</script>
 </body>
 
 </html>
@@ -0,0 +1,44 @@
+package com.yudianbank.cluster;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRingTest {
+
+    @Test
+    public void emptyRingHasNoOwner() {
+        assertNull(ConsistentHashRing.of(new HashMap<String, String>(), 160).get("a"));
+    }
+
+    @Test
+    public void onlyKeysOfRemovedNodeMove() {
+        Map<String, String> nodes = new LinkedHashMap<>();
+        for (int i = 1; i <= 4; i++) {
+            nodes.put("10.0.0." + i + ":8012", "node" + i);
+        }
+        ConsistentHashRing<String> before = ConsistentHashRing.of(nodes, 160);
+        nodes.remove("10.0.0.3:8012");
+        ConsistentHashRing<String> after = ConsistentHashRing.of(nodes, 160);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            String key = "http://files.example.com/doc" + i + ".docx";
+            String owner = before.get(key);
+            counts.merge(owner, 1, Integer::sum);
+            if (!"node3".equals(owner)) {
+                assertEquals(owner, after.get(key));
+            }
+        }
+        // 虚拟节点使各节点分到的key大致均匀
+        for (int count : counts.values()) {
+            assertTrue(String.valueOf(count), count > 1500 && count < 3500);
+        }
+        assertEquals(3, after.size());
+    }
+}
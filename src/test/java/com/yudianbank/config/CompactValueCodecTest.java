@@ -0,0 +1,53 @@
+package com.yudianbank.config;
+
+import io.netty.buffer.ByteBuf;
+import org.junit.Test;
+import org.redisson.codec.JsonJacksonCodec;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactValueCodecTest {
+
+    private final JsonJacksonCodec json = new JsonJacksonCodec();
+    private final CompactValueCodec codec = new CompactValueCodec(json, 1024);
+
+    @Test
+    public void largeStringsAreCompressed() throws Exception {
+        StringBuilder tree = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            tree.append("{\"originName\":\"目录/文件").append(i).append(".docx\",\"childList\":[],\"directory\":false},");
+        }
+        String value = tree.append("{}]").toString();
+        ByteBuf legacy = json.getMapValueEncoder().encode(value);
+        ByteBuf compact = codec.getMapValueEncoder().encode(value);
+        assertEquals(CompactValueCodec.DEFLATED_STRING, compact.getByte(1));
+        assertTrue(compact.readableBytes() * 5 < legacy.readableBytes());
+        assertEquals(value, codec.getMapValueDecoder().decode(compact, null));
+    }
+
+    @Test
+    public void smallStringsAreStoredAsUtf8() throws Exception {
+        ByteBuf compact = codec.getMapValueEncoder().encode("(2019-01-01)合同.pdf");
+        assertEquals(CompactValueCodec.STRING, compact.getByte(1));
+        assertEquals("(2019-01-01)合同.pdf", codec.getMapValueDecoder().decode(compact, null));
+    }
+
+    @Test
+    public void legacyValuesAreStillReadable() throws Exception {
+        ByteBuf legacy = json.getMapValueEncoder().encode("(2019-01-01)合同.pdf");
+        assertEquals("(2019-01-01)合同.pdf", codec.getMapValueDecoder().decode(legacy, null));
+    }
+
+    @Test
+    public void otherValuesUseOriginalCodec() throws Exception {
+        Map<String, Integer> value = Collections.singletonMap("pages", 12);
+        ByteBuf encoded = codec.getMapValueEncoder().encode(value);
+        assertEquals(value, codec.getMapValueDecoder().decode(encoded, null));
+        // key的编码不变
+        assertEquals(json.getMapKeyEncoder().encode("a.pdf"), codec.getMapKeyEncoder().encode("a.pdf"));
+    }
+}
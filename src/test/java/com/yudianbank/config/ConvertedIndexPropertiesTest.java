@@ -0,0 +1,29 @@
+package com.yudianbank.config;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConvertedIndexPropertiesTest {
+
+    @Test
+    public void formatComesFromKeySuffix() {
+        assertEquals("pdf", ConvertedIndexProperties.formatOf("(2019-01-01)合同.PDF"));
+        assertEquals("source", ConvertedIndexProperties.formatOf("source:http://files.example.com/a.docx?v=1"));
+        assertEquals("rendition", ConvertedIndexProperties.formatOf("rendition:0cc175b9_640.jpg"));
+        assertEquals("partial", ConvertedIndexProperties.formatOf("partial:(2019-01-01)a.pdf"));
+        assertEquals("slides", ConvertedIndexProperties.formatOf("slides:0cc175b9c0f1b6a831c399e269772661"));
+        assertEquals("", ConvertedIndexProperties.formatOf("noSuffix"));
+    }
+
+    @Test
+    public void formatSettingsOverrideDefaults() {
+        ConvertedIndexProperties properties = new ConvertedIndexProperties();
+        ConvertedIndexProperties.Expiry html = new ConvertedIndexProperties.Expiry();
+        html.setTtlSeconds(60L);
+        properties.getFormats().put("html", html);
+        assertEquals(60, properties.ttlOf("a.html"));
+        assertEquals(properties.getMaxIdleSeconds(), properties.maxIdleOf("a.html"));
+        assertEquals(properties.getTtlSeconds(), properties.ttlOf("a.pdf"));
+    }
+}
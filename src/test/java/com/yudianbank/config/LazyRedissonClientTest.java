@@ -0,0 +1,72 @@
+package com.yudianbank.config;
+
+import org.junit.Test;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LazyRedissonClientTest {
+
+    @Test
+    public void failsFastWhileConnecting() {
+        RedissonClient client = LazyRedissonClient.create(new CompletableFuture<>(), 100);
+        long start = System.currentTimeMillis();
+        try {
+            client.getMapCache("converted-preview-pdf-file:0");
+            fail();
+        } catch (RedisException e) {
+            assertTrue(System.currentTimeMillis() - start < 1000);
+        }
+    }
+
+    @Test
+    public void failsWhenConnectFailed() {
+        CompletableFuture<RedissonClient> connecting = new CompletableFuture<>();
+        connecting.completeExceptionally(new IllegalStateException("connection refused"));
+        RedissonClient client = LazyRedissonClient.create(connecting, 100);
+        try {
+            client.getMapCache("converted-preview-pdf-file:0");
+            fail();
+        } catch (RedisException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void retriesUntilConnected() throws Exception {
+        RedissonClient connected = (RedissonClient) Proxy.newProxyInstance(RedissonClient.class.getClassLoader(),
+                new Class[]{RedissonClient.class}, (proxy, method, args) -> null);
+        AtomicInteger attempts = new AtomicInteger();
+        RedissonClient client = LazyRedissonClient.create(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("connection refused");
+            }
+            return connected;
+        }, 100, 10);
+        assertSame(connected, LazyRedissonClient.connecting(client).get(5, TimeUnit.SECONDS));
+        assertTrue(attempts.get() == 3);
+    }
+
+    @Test
+    public void shutdownStopsRetrying() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        RedissonClient client = LazyRedissonClient.create(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("connection refused");
+        }, 100, 10);
+        client.shutdown();
+        Thread.sleep(100);
+        int stopped = attempts.get();
+        Thread.sleep(100);
+        assertTrue(attempts.get() <= stopped + 1);
+        assertTrue(LazyRedissonClient.connecting(client).isCancelled());
+    }
+}
@@ -0,0 +1,67 @@
+package com.yudianbank.filters;
+
+import com.yudianbank.store.ArtifactCache;
+import com.yudianbank.store.ArtifactStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArtifactFetchFilterTest {
+
+    private final List<String> fetched = new ArrayList<>();
+    private ArtifactFetchFilter filter;
+
+    @Before
+    public void setUp() {
+        ArtifactCache artifactCache = new ArtifactCache() {
+            @Override
+            public boolean isShared() {
+                return true;
+            }
+
+            @Override
+            public boolean ensureLocal(String relativePath) {
+                fetched.add(relativePath);
+                return false;
+            }
+        };
+        filter = new ArtifactFetchFilter(System.getProperty("java.io.tmpdir") + File.separator + "artifact-fetch-missing" + File.separator,
+                artifactCache, new HashSet<>(Arrays.asList("js", "css", "config.js")));
+    }
+
+    @Test
+    public void fetchesOnlyConvertedOutputs() throws Exception {
+        get("/(2019-01-01)report.pdf");
+        get("/slides/abc/1.png");
+        get("/js/viewer.min.js");
+        get("/css/loading.css");
+        get("/config.js");
+        get("/onlinePreview");
+        get("/../etc/passwd.txt");
+        assertEquals(Arrays.asList("(2019-01-01)report.pdf", "slides/abc/1.png"), fetched);
+    }
+
+    @Test
+    public void readsStaticResourceNamesFromClasspath() throws Exception {
+        assertTrue(FilterConfiguration.staticResourceNames().containsAll(Arrays.asList("js", "css", "images", "config.js")));
+        assertEquals("slides", ArtifactFetchFilter.firstSegment("/slides/abc/1.png"));
+        assertEquals("a.pdf", ArtifactFetchFilter.firstSegment("/a.pdf"));
+    }
+
+    private void get(String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+    }
+}
@@ -0,0 +1,109 @@
+package com.yudianbank.filters;
+
+import com.sun.net.httpserver.HttpServer;
+import com.yudianbank.cluster.PeerRouter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PeerAffinityFilterTest {
+
+    private final List<String> results = new ArrayList<>();
+    private final List<ServiceInstance> suspects = new ArrayList<>();
+    private HttpServer owner;
+    private volatile ServiceInstance ownerInstance;
+
+    @Before
+    public void setUp() throws Exception {
+        owner = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        owner.createContext("/onlinePreview", exchange -> {
+            try {
+                // 归属节点仍在转换
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        owner.start();
+    }
+
+    @After
+    public void tearDown() {
+        owner.stop(0);
+    }
+
+    @Test
+    public void slowOwnerIsNotSuspected() throws Exception {
+        ownerInstance = new DefaultServiceInstance("preview", "127.0.0.1", owner.getAddress().getPort(), false);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter().doFilter(request(), response, chain);
+        assertEquals(504, response.getStatus());
+        assertNull(chain.getRequest());
+        assertTrue(suspects.isEmpty());
+        assertEquals("timeout", results.get(0));
+    }
+
+    @Test
+    public void unreachableOwnerFallsBack() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ownerInstance = new DefaultServiceInstance("preview", "127.0.0.1", port, false);
+        MockFilterChain chain = new MockFilterChain();
+        filter().doFilter(request(), new MockHttpServletResponse(), chain);
+        assertNotNull(chain.getRequest());
+        assertEquals(1, suspects.size());
+        assertEquals("fallback", results.get(0));
+    }
+
+    private PeerAffinityFilter filter() {
+        PeerRouter peerRouter = new PeerRouter() {
+            @Override
+            public String mode() {
+                return MODE_FORWARD;
+            }
+
+            @Override
+            public ServiceInstance ownerOf(String url) {
+                return ownerInstance;
+            }
+
+            @Override
+            public void suspect(ServiceInstance instance) {
+                suspects.add(instance);
+            }
+
+            @Override
+            public void count(String result) {
+                results.add(result);
+            }
+        };
+        return new PeerAffinityFilter(peerRouter, 500, 300);
+    }
+
+    private MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/onlinePreview");
+        request.setQueryString("url=http%3A%2F%2Forigin%2Fa.docx");
+        request.setParameter("url", "http://origin/a.docx");
+        return request;
+    }
+}
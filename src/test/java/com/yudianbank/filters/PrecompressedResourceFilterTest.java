@@ -0,0 +1,28 @@
+package com.yudianbank.filters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrecompressedResourceFilterTest {
+
+    @Test
+    public void honoursQualityValues() {
+        assertTrue(PrecompressedResourceFilter.accepts("gzip, deflate, br", "br"));
+        assertTrue(PrecompressedResourceFilter.accepts("GZIP;q=0.5", "gzip"));
+        assertFalse(PrecompressedResourceFilter.accepts("gzip;q=0, br", "gzip"));
+        assertFalse(PrecompressedResourceFilter.accepts("gzip; q=0.000", "gzip"));
+        assertFalse(PrecompressedResourceFilter.accepts(null, "gzip"));
+        // brotli不是br
+        assertFalse(PrecompressedResourceFilter.accepts("brotli", "br"));
+    }
+
+    @Test
+    public void wildcardAppliesToUnlistedCodings() {
+        assertTrue(PrecompressedResourceFilter.accepts("*", "br"));
+        assertFalse(PrecompressedResourceFilter.accepts("gzip, *;q=0", "br"));
+        assertTrue(PrecompressedResourceFilter.accepts("br, *;q=0", "br"));
+        assertFalse(PrecompressedResourceFilter.accepts("*, br;q=0", "br"));
+    }
+}
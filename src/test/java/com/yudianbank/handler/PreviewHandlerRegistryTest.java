@@ -0,0 +1,64 @@
+package com.yudianbank.handler;
+
+import com.yudianbank.utils.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PreviewHandlerRegistryTest {
+
+    private PreviewHandlerRegistry registry;
+    private OfficeHandler office;
+    private CompressHandler compress;
+    private PdfHandler pdf;
+
+    @Before
+    public void setUp() {
+        FileUtils fileUtils = new FileUtils();
+        office = new OfficeHandler();
+        office.fileUtils = fileUtils;
+        office.init();
+        compress = new CompressHandler();
+        compress.fileUtils = fileUtils;
+        compress.init();
+        pdf = new PdfHandler();
+        registry = new PreviewHandlerRegistry();
+        registry.fileUtils = fileUtils;
+        registry.handlers = Arrays.asList(office, compress, pdf);
+        registry.init();
+    }
+
+    @Test
+    public void resolvesBySuffixIgnoringCase() {
+        assertEquals(office, registry.handlerFor(request("http://host/a/月报.DOCX")));
+        assertEquals(compress, registry.handlerFor(request("http://host/ftpDo?fileName=a.b.zip&selectDay=2021-10-16")));
+        assertNull(registry.handlerFor(request("http://host/a/b.exe")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsDuplicateSuffix() {
+        OfficeHandler another = new OfficeHandler();
+        another.fileUtils = new FileUtils();
+        another.init();
+        registry.handlers = Arrays.asList(office, another);
+        registry.init();
+    }
+
+    @Test
+    public void sniffsMagicBytes() {
+        byte[] header = {'%', 'P', 'D', 'F', '-', '1', '.', '4'};
+        assertEquals("pdf", pdf.sniff(header, header.length));
+        assertNull(pdf.sniff(header, 3));
+        byte[] rar = {'R', 'a', 'r', '!', 0x1A, 0x07, 0x00};
+        assertEquals("rar", compress.sniff(rar, rar.length));
+        assertNull(office.sniff(rar, rar.length));
+    }
+
+    private PreviewRequest request(String url) {
+        return new PreviewRequest(url, url, registry.suffixFromUrl(url), null, null, null);
+    }
+}
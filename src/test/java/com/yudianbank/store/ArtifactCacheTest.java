@@ -0,0 +1,123 @@
+package com.yudianbank.store;
+
+import com.yudianbank.utils.PreviewMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArtifactCacheTest {
+
+    private File root;
+    private String fileDir;
+    private SharedFsArtifactStore store;
+    private ArtifactCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("artifact-cache").toFile();
+        fileDir = new File(root, "local").getPath() + File.separator;
+        store = new SharedFsArtifactStore();
+        store.sharedDir = new File(root, "shared").getPath();
+        store.init();
+        cache = newCache(store);
+    }
+
+    @After
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Test
+    public void publishesAndFetchesWithSidecars() throws Exception {
+        write(fileDir + "a.html", "<html>");
+        write(fileDir + "a.html.gz", "gzip");
+        assertTrue(cache.publish(fileDir + "a.html"));
+        assertTrue(new File(store.sharedDir, "a.html").isFile());
+        assertTrue(new File(store.sharedDir, "a.html.gz").isFile());
+
+        // 其他节点：本地没有，从存储取回
+        new File(fileDir + "a.html").delete();
+        new File(fileDir + "a.html.gz").delete();
+        assertTrue(cache.ensureLocal("a.html"));
+        assertEquals("<html>", new String(Files.readAllBytes(new File(fileDir + "a.html").toPath()), StandardCharsets.UTF_8));
+        assertTrue(new File(fileDir + "a.html.gz").isFile());
+
+        cache.remove("a.html");
+        assertFalse(new File(store.sharedDir, "a.html").exists());
+        assertFalse(new File(store.sharedDir, "a.html.gz").exists());
+    }
+
+    @Test
+    public void cachesMissesUntilPublished() throws Exception {
+        assertFalse(cache.ensureLocal("b.pdf"));
+        // 其他节点直接写入存储(未经本节点上传)，短时间内不再查询存储
+        write(store.sharedDir + File.separator + "b.pdf", "pdf");
+        assertFalse(cache.ensureLocal("b.pdf"));
+        // 本节点上传后清除记录
+        write(fileDir + "b.pdf", "pdf");
+        assertTrue(cache.publish(fileDir + "b.pdf"));
+        new File(fileDir + "b.pdf").delete();
+        assertTrue(cache.ensureLocal("b.pdf"));
+        assertFalse(cache.ensureLocal("../b.pdf"));
+    }
+
+    @Test
+    public void retriesFailedPublish() throws Exception {
+        AtomicInteger puts = new AtomicInteger();
+        ArtifactCache flaky = newCache(new SharedFsArtifactStore() {
+            @Override
+            public void put(String relativePath, File file) throws IOException {
+                if (puts.incrementAndGet() < 3) {
+                    throw new IOException("unavailable");
+                }
+                super.put(relativePath, file);
+            }
+        });
+        ((SharedFsArtifactStore) flaky.artifactStore).sharedDir = store.sharedDir;
+        write(fileDir + "c.pdf", "pdf");
+        assertTrue(flaky.publish(fileDir + "c.pdf"));
+        assertEquals(3, puts.get());
+        assertTrue(new File(store.sharedDir, "c.pdf").isFile());
+
+        puts.set(-10);
+        assertFalse(flaky.publish(fileDir + "c.pdf"));
+    }
+
+    private ArtifactCache newCache(ArtifactStore artifactStore) {
+        ArtifactCache artifactCache = new ArtifactCache();
+        artifactCache.artifactStore = artifactStore;
+        artifactCache.previewMetrics = new PreviewMetrics() {
+            @Override
+            public long record(String stage, long startNanos, String... tags) {
+                return 0;
+            }
+
+            @Override
+            public void cacheAccess(String cache, boolean hit) {
+            }
+        };
+        artifactCache.fileDir = fileDir;
+        artifactCache.missTtlSeconds = 30;
+        artifactCache.putAttempts = 3;
+        artifactCache.putRetryMillis = 1;
+        artifactCache.init();
+        return artifactCache;
+    }
+
+    private static void write(String path, String content) throws IOException {
+        File file = new File(path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
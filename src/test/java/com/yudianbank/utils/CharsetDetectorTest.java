@@ -0,0 +1,50 @@
+package com.yudianbank.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class CharsetDetectorTest {
+
+    private CharsetDetector detector;
+
+    @Before
+    public void setUp() {
+        detector = new CharsetDetector();
+        detector.sampleBytes = 1024;
+        detector.cacheSize = 16;
+        detector.previewMetrics = new PreviewMetrics();
+        detector.previewMetrics.registry = new SimpleMeterRegistry();
+        detector.init();
+    }
+
+    @Test
+    public void detectsBom() {
+        byte[] utf8 = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a'};
+        byte[] utf16le = {(byte) 0xFF, (byte) 0xFE, 'a', 0};
+        assertEquals("UTF-8", detector.detect(utf8, utf8.length));
+        assertEquals("UTF-16LE", detector.detect(utf16le, utf16le.length));
+    }
+
+    @Test
+    public void treatsAsciiAsUtf8() {
+        byte[] ascii = "select * from t_report;".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("UTF-8", detector.detect(ascii, ascii.length));
+    }
+
+    @Test
+    public void detectsChineseText() {
+        String text = "线损统计日报表，本月供电量与售电量对比分析。";
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] gbk = text.getBytes(Charset.forName("GBK"));
+        assertEquals("UTF-8", detector.detect(utf8, utf8.length));
+        assertEquals("GBK", detector.detect(gbk, gbk.length));
+        // 第二次命中缓存，结果一致
+        assertEquals("GBK", detector.detect(gbk, gbk.length));
+    }
+}
@@ -0,0 +1,195 @@
+package com.yudianbank.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConvertedIndexGuardTest {
+
+    private File dir;
+    private FakeRedisIndex redis;
+    private LocalConvertedFileIndex local;
+    private ConvertedIndexGuard guard;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("converted-index").toFile();
+        redis = new FakeRedisIndex();
+        local = newLocalIndex();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        guard = new ConvertedIndexGuard();
+        guard.convertedFileIndex = redis;
+        guard.localConvertedFileIndex = local;
+        guard.registry = registry;
+        guard.previewMetrics = new PreviewMetrics();
+        guard.previewMetrics.registry = registry;
+        guard.timeoutMillis = 200;
+        guard.threads = 4;
+        guard.queue = 50;
+        guard.errorPercent = 50;
+        guard.sleepMillis = 5000;
+        guard.reconcileBatch = 1;
+        guard.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        local.destroy();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void slowRedisFallsBackToLocalAndReconcilesLater() throws Exception {
+        redis.values.put("a.pdf", "a.pdf");
+        assertEquals("a.pdf", guard.get("a.pdf"));
+
+        redis.delayMillis = 2000;
+        long start = System.currentTimeMillis();
+        assertEquals("a.pdf", guard.get("a.pdf"));
+        guard.put("b.pdf", "b.pdf");
+        assertEquals("b.pdf", guard.get("b.pdf"));
+        // 超时预算内返回，不等待redis
+        assertEquals(true, System.currentTimeMillis() - start < 1500);
+        assertNull(redis.values.get("b.pdf"));
+
+        redis.delayMillis = 0;
+        guard.reconcile();
+        assertEquals("b.pdf", redis.values.get("b.pdf"));
+    }
+
+    @Test
+    public void batchedLookupSeesChangesNotYetReconciled() throws Exception {
+        redis.values.put("a.pdf", "a.pdf");
+        redis.values.put("b.pdf", "b.pdf");
+        redis.delayMillis = 2000;
+        guard.remove("a.pdf");
+        guard.put("b.pdf", "b2.pdf");
+
+        // redis已恢复，还没有补写
+        redis.delayMillis = 0;
+        Map<String, String> values = guard.getAll(Arrays.asList("a.pdf", "b.pdf"));
+        assertEquals(Collections.singletonMap("b.pdf", "b2.pdf"), values);
+
+        guard.reconcile();
+        assertNull(redis.values.get("a.pdf"));
+        assertEquals("b2.pdf", redis.values.get("b.pdf"));
+    }
+
+    @Test
+    public void localIndexSurvivesRestart() throws Exception {
+        local.put("c.pdf", "c\tpath\n.pdf");
+        local.put("d.pdf", "d.pdf");
+        local.remove("d.pdf");
+        local.destroy();
+        local = newLocalIndex();
+        assertEquals("c\tpath\n.pdf", local.get("c.pdf"));
+        assertNull(local.get("d.pdf"));
+    }
+
+    @Test
+    public void burstQueuesInsteadOfFallingBack() throws Exception {
+        redis.values.put("a.pdf", "a.pdf");
+        redis.delayMillis = 20;
+        List<Future<String>> results = new ArrayList<>();
+        ExecutorService callers = Executors.newFixedThreadPool(30);
+        try {
+            for (int i = 0; i < 30; i++) {
+                results.add(callers.submit(() -> guard.get("a.pdf")));
+            }
+            for (Future<String> result : results) {
+                assertEquals("a.pdf", result.get());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(false, guard.isOpen());
+        assertNull(guard.registry.find("preview.index.fallbacks").counter());
+    }
+
+    @Test
+    public void largeValuesAreNotMirrored() throws Exception {
+        StringBuilder tree = new StringBuilder();
+        while (tree.length() <= local.maxValueLength) {
+            tree.append("[{\"fileName\":\"a.txt\"}]");
+        }
+        local.put("e.zip", "old");
+        local.put("e.zip", tree.toString());
+        assertNull(local.get("e.zip"));
+
+        // redis不可用期间登记的较大的值从待补写的修改中读取
+        redis.delayMillis = 2000;
+        guard.put("f.zip", tree.toString());
+        assertEquals(tree.toString(), guard.get("f.zip"));
+    }
+
+    private LocalConvertedFileIndex newLocalIndex() throws Exception {
+        LocalConvertedFileIndex index = new LocalConvertedFileIndex();
+        index.dir = dir.getPath();
+        index.maxEntries = 100;
+        index.maxValueLength = 1024;
+        index.init();
+        return index;
+    }
+
+    private static class FakeRedisIndex implements ConvertedFileIndex {
+        final Map<String, String> values = new ConcurrentHashMap<>();
+        volatile long delayMillis;
+
+        @Override
+        public String get(String key) {
+            delay();
+            return values.get(key);
+        }
+
+        @Override
+        public Map<String, String> getAll(Collection<String> keys) {
+            delay();
+            Map<String, String> found = new HashMap<>(values);
+            found.keySet().retainAll(keys);
+            return found;
+        }
+
+        @Override
+        public void put(String key, String value) {
+            delay();
+            values.put(key, value);
+        }
+
+        @Override
+        public void remove(String key) {
+            delay();
+            values.remove(key);
+        }
+
+        private void delay() {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
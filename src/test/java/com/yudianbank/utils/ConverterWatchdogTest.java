@@ -0,0 +1,106 @@
+package com.yudianbank.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.artofsolving.jodconverter.office.OfficeManager;
+import org.artofsolving.jodconverter.office.OfficeTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConverterWatchdogTest {
+
+    private ConverterWatchdog watchdog;
+    private SimpleMeterRegistry registry;
+    private final AtomicInteger starts = new AtomicInteger();
+    private final List<String> killed = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        ConverterUtils converterUtils = new ConverterUtils();
+        converterUtils.officeManager = new OfficeManager() {
+            @Override
+            public void execute(OfficeTask task) {
+            }
+
+            @Override
+            public void start() {
+                starts.incrementAndGet();
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public boolean isRunning() {
+                return true;
+            }
+        };
+        converterUtils.officePort = 8100;
+        converterUtils.growPorts = new int[0];
+        converterUtils.initOfficeManager();
+        registry = new SimpleMeterRegistry();
+        watchdog = new ConverterWatchdog();
+        watchdog.converterUtils = converterUtils;
+        watchdog.registry = registry;
+        // 不操作本机真实的office进程
+        watchdog.officeProcesses = new OfficeProcesses() {
+            @Override
+            public List<String> find(int port) {
+                return Collections.singletonList("pid-" + port);
+            }
+
+            @Override
+            public long rssBytes(String pid) {
+                return 1024;
+            }
+
+            @Override
+            public void kill(String pid) {
+                killed.add(pid);
+            }
+        };
+        watchdog.previewMetrics = new PreviewMetrics();
+        watchdog.previewMetrics.registry = registry;
+        watchdog.defaultTimeoutSeconds = 1;
+        watchdog.formatTimeouts = new String[]{"ppt:300", " xls : 60"};
+        watchdog.init();
+    }
+
+    @After
+    public void tearDown() {
+        watchdog.destroy();
+    }
+
+    @Test
+    public void usesFormatTimeouts() {
+        assertEquals(300, watchdog.timeoutOf("PPT"));
+        assertEquals(60, watchdog.timeoutOf("xls"));
+        assertEquals(1, watchdog.timeoutOf("docx"));
+    }
+
+    @Test
+    public void restartsOwningInstanceOnTimeout() {
+        assertEquals(1, starts.get());
+        assertEquals(8100, watchdog.converterUtils.nextOfficePort());
+        assertTrue(watchdog.convert("docx", 8100, () -> true));
+        assertEquals(1, starts.get());
+        assertFalse(watchdog.convert("docx", 8100, () -> {
+            Thread.sleep(10_000);
+            return true;
+        }));
+        assertEquals(2, starts.get());
+        assertEquals(Collections.singletonList("pid-8100"), killed);
+        assertEquals(1, registry.get("preview.converter.restarts").tag("instance", "8100").counter().count(), 0);
+        assertTrue(watchdog.converterUtils.isOfficeRunning());
+    }
+}
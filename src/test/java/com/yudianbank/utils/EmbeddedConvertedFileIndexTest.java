@@ -0,0 +1,94 @@
+package com.yudianbank.utils;
+
+import com.yudianbank.config.ConvertedIndexProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EmbeddedConvertedFileIndexTest {
+
+    private File dir;
+    private ConvertedIndexProperties properties;
+    private EmbeddedConvertedFileIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("embedded-index").toFile();
+        properties = new ConvertedIndexProperties();
+        index = newIndex();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.destroy();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void entriesSurviveRestart() throws Exception {
+        index.put("a.pdf", "a.pdf");
+        index.put("b.zip", "[{\"fileName\":\"中文.txt\"}]");
+        index.put("c.pdf", "c.pdf");
+        index.remove("c.pdf");
+        index.put("a.pdf", "a-v2.pdf");
+        index.destroy();
+
+        index = newIndex();
+        assertEquals("a-v2.pdf", index.get("a.pdf"));
+        assertEquals("[{\"fileName\":\"中文.txt\"}]", index.get("b.zip"));
+        assertNull(index.get("c.pdf"));
+        assertEquals(2, index.getAll(Arrays.asList("a.pdf", "b.zip", "c.pdf")).size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedAndCompacts() throws Exception {
+        properties.setMaxSize(2);
+        List<String> evicted = new ArrayList<>();
+        index.onEvicted((reason, key, value) -> evicted.add(reason + ":" + key + "=" + value));
+        index.put("a.pdf", "a.pdf");
+        index.put("b.pdf", "b.pdf");
+        index.get("a.pdf");
+        index.put("c.pdf", "c.pdf");
+        assertEquals(Arrays.asList("evicted:b.pdf=b.pdf"), evicted);
+
+        evicted.clear();
+        index.remove("a.pdf");
+        assertEquals(Arrays.asList("removed:a.pdf=a.pdf"), evicted);
+        index.put("a.pdf", "a.pdf");
+
+        // 反复覆盖产生的失效记录被重写掉，映射文件从1KB扩大后仍可读
+        for (int i = 0; i < 1000; i++) {
+            index.put("c.pdf", "c-" + i + ".pdf");
+        }
+        assertTrue(index.fileBytes() < 4096);
+        index.destroy();
+
+        index = newIndex();
+        assertEquals("a.pdf", index.get("a.pdf"));
+        assertEquals("c-999.pdf", index.get("c.pdf"));
+        assertNull(index.get("b.pdf"));
+    }
+
+    private EmbeddedConvertedFileIndex newIndex() throws Exception {
+        EmbeddedConvertedFileIndex embedded = new EmbeddedConvertedFileIndex();
+        embedded.convertedIndexProperties = properties;
+        embedded.dir = dir.getPath();
+        embedded.initialBytes = 1024;
+        embedded.compactMinBytes = 1024;
+        embedded.init();
+        return embedded;
+    }
+}
@@ -0,0 +1,47 @@
+package com.yudianbank.utils;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileUtilsTest {
+
+    private final FileUtils fileUtils = new FileUtils();
+
+    @Test
+    public void gbkNamesWithoutFlag() throws Exception {
+        assertEquals("GBK", fileUtils.getFileEncodeUTFGBK(zip("GBK", false, "报告/月度绩效.xls")));
+    }
+
+    @Test
+    public void utf8NamesWithoutFlag() throws Exception {
+        assertEquals("UTF-8", fileUtils.getFileEncodeUTFGBK(zip("UTF-8", false, "报告/月度绩效.xls")));
+    }
+
+    @Test
+    public void asciiOrFlaggedNamesKeepGbk() throws Exception {
+        // 标记了UTF-8的条目总是按UTF-8读取，剩下的条目按默认的GBK
+        assertEquals("GBK", fileUtils.getFileEncodeUTFGBK(zip("UTF-8", true, "报告/月度绩效.xls", "readme.txt")));
+    }
+
+    private String zip(String encoding, boolean flag, String... names) throws Exception {
+        File file = Files.createTempFile("names", ".zip").toFile();
+        file.deleteOnExit();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(file)) {
+            out.setEncoding(encoding);
+            out.setUseLanguageEncodingFlag(flag);
+            out.setCreateUnicodeExtraFields(ZipArchiveOutputStream.UnicodeExtraFieldPolicy.NEVER);
+            for (String name : names) {
+                out.putArchiveEntry(new ZipArchiveEntry(name));
+                out.write(new byte[]{1, 2, 3});
+                out.closeArchiveEntry();
+            }
+        }
+        return file.getPath();
+    }
+}
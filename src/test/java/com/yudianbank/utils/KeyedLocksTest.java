@@ -0,0 +1,56 @@
+package com.yudianbank.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class KeyedLocksTest {
+
+    @Test
+    public void lockIsKeptWhileAnyoneWaits() {
+        KeyedLocks locks = new KeyedLocks();
+        Object first = locks.acquire("a");
+        Object waiting = locks.acquire("a");
+        locks.release("a");
+        // 先完成的线程释放后，新来的线程仍拿到同一个锁对象
+        assertSame(waiting, locks.acquire("a"));
+        assertSame(first, waiting);
+        locks.release("a");
+        locks.release("a");
+        assertEquals(0, locks.size());
+    }
+
+    @Test
+    public void sameKeyRunsOneAtATime() throws Exception {
+        KeyedLocks locks = new KeyedLocks();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            executor.execute(() -> {
+                Object lock = locks.acquire("key");
+                try {
+                    synchronized (lock) {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        running.decrementAndGet();
+                    }
+                } finally {
+                    locks.release("key");
+                    done.countDown();
+                }
+            });
+        }
+        done.await(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertEquals(1, maxRunning.get());
+        assertEquals(0, locks.size());
+    }
+}
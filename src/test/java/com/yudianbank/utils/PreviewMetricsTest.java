@@ -0,0 +1,47 @@
+package com.yudianbank.utils;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PreviewMetricsTest {
+
+    private PreviewMetrics previewMetrics;
+    private PrometheusMeterRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT, new CollectorRegistry(), Clock.SYSTEM);
+        previewMetrics = new PreviewMetrics();
+        previewMetrics.registry = registry;
+    }
+
+    @Test
+    public void stagesWithDifferentTagsRegisterInPrometheus() {
+        previewMetrics.record(PreviewMetrics.DOWNLOAD, previewMetrics.start(), "host", "a.example.com", "result", "success");
+        previewMetrics.record(PreviewMetrics.CONVERT, previewMetrics.start(),
+                "format", "docx", "target", "pdf", "instance", "8100", "result", "success");
+        previewMetrics.record(PreviewMetrics.CACHE_LOOKUP, previewMetrics.start(), "cache", "redis");
+
+        assertEquals(1, registry.get("preview.stage.download").timer().count());
+        assertEquals(1, registry.get("preview.stage.convert").timer().count());
+        assertEquals(1, registry.get("preview.stage.cache.lookup").timer().count());
+        assertTrue(registry.scrape().contains("preview_stage_convert_seconds_count"));
+    }
+
+    @Test
+    public void nullTagValuesRecordedAsNone() {
+        previewMetrics.record(PreviewMetrics.DOWNLOAD, previewMetrics.start(), "host", null, "result", "failure");
+        previewMetrics.downloaded(null, 10);
+
+        assertNotNull(registry.find("preview.stage.download").tag("host", "none").timer());
+        assertNotNull(registry.find("preview.download.bytes").tag("host", "none").summary());
+    }
+}
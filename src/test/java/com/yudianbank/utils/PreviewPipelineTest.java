@@ -0,0 +1,222 @@
+package com.yudianbank.utils;
+
+import com.yudianbank.config.ConvertedIndexProperties;
+import com.yudianbank.param.ReturnResponse;
+import com.yudianbank.store.ArtifactCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PreviewPipelineTest {
+
+    private static final String PDF_NAME = "(2019-01-01)a.pdf";
+    private static final String PARTIAL_NAME = "(2019-01-01)a.first.pdf";
+
+    private File root;
+    private EmbeddedConvertedFileIndex index;
+    /**
+     * 模拟共享存储：相对路径 -> 文件内容
+     */
+    private final Map<String, byte[]> store = new ConcurrentHashMap<>();
+    private final CountDownLatch finishFull = new CountDownLatch(1);
+    private final AtomicInteger conversions = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("preview-pipeline").toFile();
+        index = new EmbeddedConvertedFileIndex();
+        index.convertedIndexProperties = new ConvertedIndexProperties();
+        index.dir = new File(root, "index").getPath();
+        index.initialBytes = 4096;
+        index.compactMinBytes = 4096;
+        index.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.destroy();
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Test
+    public void removesPartialOutputOnceFullPdfIsPublished() throws Exception {
+        PreviewPipeline node = newNode("node-a");
+        write(node.fileDir + "a.docx", "docx");
+
+        ReturnResponse<String> response = node.prepareOffice("http://example.com/a.docx", "docx", "a.docx", "2019-01-01", "false", true);
+        assertEquals(PreviewPipeline.PARTIAL, response.getMsg());
+        assertEquals(PDF_NAME, response.getContent());
+        assertTrue(new File(node.fileDir + PARTIAL_NAME).isFile());
+        assertTrue(store.containsKey(PARTIAL_NAME));
+        assertEquals(PARTIAL_NAME, index.get(PreviewPipeline.PARTIAL_KEY_PREFIX + PDF_NAME));
+        assertEquals(PreviewPipeline.PARTIAL, node.officeStatus(PDF_NAME).getMsg());
+
+        finishFull.countDown();
+        awaitStatus(node, "SUCCESS");
+        assertEquals(PDF_NAME, index.get(PDF_NAME));
+        assertTrue(store.containsKey(PDF_NAME));
+        assertTrue(awaitDeleted(new File(node.fileDir + PARTIAL_NAME)));
+        assertFalse(store.containsKey(PARTIAL_NAME));
+        assertNull(index.get(PreviewPipeline.PARTIAL_KEY_PREFIX + PDF_NAME));
+        node.destroy();
+    }
+
+    @Test
+    public void otherNodesServeFirstPagesWhileConverting() throws Exception {
+        PreviewPipeline nodeA = newNode("node-a");
+        PreviewPipeline nodeB = newNode("node-b");
+        write(nodeA.fileDir + "a.docx", "docx");
+        assertEquals(PreviewPipeline.PARTIAL,
+                nodeA.prepareOffice("http://example.com/a.docx", "docx", "a.docx", "2019-01-01", "false", true).getMsg());
+        // 前几页和后台的完整转换
+        long deadline = System.currentTimeMillis() + 5000;
+        while (conversions.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, conversions.get());
+
+        // 其他节点不重复转换，前几页从共享存储取回
+        ReturnResponse<String> response = nodeB.prepareOffice("http://example.com/a.docx", "docx", "a.docx", "2019-01-01", "false", true);
+        assertEquals(PreviewPipeline.PARTIAL, response.getMsg());
+        assertEquals(2, conversions.get());
+        assertTrue(new File(nodeB.fileDir + PARTIAL_NAME).isFile());
+        assertEquals(PreviewPipeline.PARTIAL, nodeB.officeStatus(PDF_NAME).getMsg());
+
+        finishFull.countDown();
+        awaitStatus(nodeB, "SUCCESS");
+        nodeA.destroy();
+        nodeB.destroy();
+    }
+
+    private PreviewPipeline newNode(String name) {
+        String fileDir = new File(root, name).getPath() + File.separator;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PreviewMetrics previewMetrics = new PreviewMetrics();
+        previewMetrics.registry = registry;
+
+        ConvertedIndexGuard guard = new ConvertedIndexGuard();
+        guard.convertedFileIndex = index;
+        FileUtils fileUtils = new FileUtils();
+        fileUtils.convertedIndexGuard = guard;
+        fileUtils.previewMetrics = previewMetrics;
+        fileUtils.fileDir = fileDir;
+
+        PreviewPipeline pipeline = new PreviewPipeline();
+        pipeline.fileDir = fileDir;
+        pipeline.fileUtils = fileUtils;
+        pipeline.previewMetrics = previewMetrics;
+        pipeline.artifactCache = new FakeArtifactCache(fileDir);
+        pipeline.officeToPdf = new FakeOfficeToPdf();
+        pipeline.progressiveEnabled = true;
+        pipeline.progressivePages = 10;
+        pipeline.progressiveMinBytes = 1;
+        pipeline.progressiveThreads = 1;
+        pipeline.init();
+        return pipeline;
+    }
+
+    private static void awaitStatus(PreviewPipeline pipeline, String status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!status.equals(pipeline.officeStatus(PDF_NAME).getMsg()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(status, pipeline.officeStatus(PDF_NAME).getMsg());
+    }
+
+    private static boolean awaitDeleted(File file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (file.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return !file.exists();
+    }
+
+    private static void write(String path, String content) throws IOException {
+        File file = new File(path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private class FakeOfficeToPdf extends OfficeToPdf {
+        @Override
+        public boolean openOfficeToPDF(String inputFilePath, String outputFilePath, String pageRange) {
+            conversions.incrementAndGet();
+            try {
+                if (null == pageRange && !finishFull.await(5, TimeUnit.SECONDS)) {
+                    return false;
+                }
+                write(outputFilePath, null == pageRange ? "full" : "first pages");
+                return true;
+            } catch (IOException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private class FakeArtifactCache extends ArtifactCache {
+        private final String fileDir;
+
+        FakeArtifactCache(String fileDir) {
+            this.fileDir = fileDir;
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+
+        @Override
+        public boolean publish(String absolutePath) {
+            try {
+                store.put(absolutePath.substring(fileDir.length()), Files.readAllBytes(new File(absolutePath).toPath()));
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean ensureLocal(String relativePath) {
+            File local = new File(fileDir, relativePath);
+            if (local.isFile()) {
+                return true;
+            }
+            byte[] content = store.get(relativePath);
+            if (null == content) {
+                return false;
+            }
+            try {
+                local.getParentFile().mkdirs();
+                Files.write(local.toPath(), content);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void remove(String relativePath) {
+            store.remove(relativePath);
+        }
+    }
+}
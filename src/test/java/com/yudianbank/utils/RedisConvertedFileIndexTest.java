@@ -0,0 +1,31 @@
+package com.yudianbank.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RedisConvertedFileIndexTest {
+
+    @Test
+    public void keysSpreadOverAllBuckets() {
+        int[] counts = new int[64];
+        for (int i = 0; i < 64000; i++) {
+            int bucket = RedisConvertedFileIndex.bucketIndex("(2019-01-" + (i % 28) + ")合同" + i + ".pdf", 64);
+            counts[bucket]++;
+        }
+        for (int count : counts) {
+            assertTrue(String.valueOf(count), count > 500 && count < 1500);
+        }
+    }
+
+    @Test
+    public void bucketIsStableAndNonNegative() {
+        // hashCode为负数的key
+        String key = "polygenelubricants";
+        assertTrue(key.hashCode() < 0);
+        int bucket = RedisConvertedFileIndex.bucketIndex(key, 64);
+        assertTrue(bucket >= 0 && bucket < 64);
+        assertEquals(bucket, RedisConvertedFileIndex.bucketIndex(key, 64));
+    }
+}
@@ -0,0 +1,31 @@
+package com.yudianbank.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTimingsTest {
+
+    @After
+    public void tearDown() {
+        RequestTimings.end();
+    }
+
+    @Test
+    public void ignoresStagesOutsideRequest() {
+        RequestTimings.add("download", 1_000_000L);
+        assertTrue(RequestTimings.current().isEmpty());
+    }
+
+    @Test
+    public void sumsRepeatedStagesInOrder() {
+        RequestTimings.begin();
+        RequestTimings.add("cache.lookup", 1_200_000L);
+        RequestTimings.add("convert", 830_050_000L);
+        RequestTimings.add("cache.lookup", 300_000L);
+        assertEquals("cache.lookup;dur=1.5, convert;dur=830.1",
+                RequestTimings.toServerTiming(RequestTimings.current()));
+    }
+}
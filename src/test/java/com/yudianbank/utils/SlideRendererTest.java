@@ -0,0 +1,119 @@
+package com.yudianbank.utils;
+
+import com.yudianbank.param.ReturnResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFTextBox;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlideRendererTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SlideRenderer renderer;
+    private File pptx;
+    private final Map<String, String> registered = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        pptx = folder.newFile("deck.pptx");
+        XMLSlideShow show = new XMLSlideShow();
+        for (int i = 0; i < 5; i++) {
+            XSLFTextBox box = show.createSlide().createTextBox();
+            box.setAnchor(new Rectangle(50, 50, 400, 100));
+            box.setText("第" + (i + 1) + "页");
+        }
+        try (OutputStream out = new FileOutputStream(pptx)) {
+            show.write(out);
+        }
+        renderer = new SlideRenderer();
+        renderer.fileDir = folder.getRoot().getAbsolutePath() + File.separator;
+        renderer.parallelism = 2;
+        renderer.renderWidth = 640;
+        renderer.waitSeconds = 30;
+        renderer.maxDecks = 10;
+        renderer.previewMetrics = new PreviewMetrics();
+        renderer.previewMetrics.registry = new SimpleMeterRegistry();
+        renderer.sourceFileCache = new SourceFileCache() {
+            @Override
+            public ReturnResponse<String> fetch(String url, String type, String fileName, String needEncode) {
+                return new ReturnResponse<>(0, fileName, pptx.getAbsolutePath());
+            }
+        };
+        renderer.parseBudgetBytes = 32 * 1024 * 1024;
+        renderer.fileUtils = new FileUtils() {
+            @Override
+            public boolean containsConvertedFile(String key) {
+                return registered.containsKey(key);
+            }
+
+            @Override
+            public void addConvertedFile(String fileName, String value) {
+                registered.put(fileName, value);
+            }
+        };
+        renderer.init();
+    }
+
+    @After
+    public void tearDown() {
+        renderer.destroy();
+    }
+
+    @Test
+    public void rendersEverySlide() throws IOException {
+        ReturnResponse<SlideRenderer.SlideDeck> opened = renderer.open("http://host/deck.pptx", "pptx", "deck.pptx", null);
+        assertEquals(0, opened.getCode());
+        SlideRenderer.SlideDeck deck = opened.getContent();
+        assertEquals(5, deck.getCount());
+        assertEquals(640, deck.getWidth());
+        assertTrue(deck.await(30, TimeUnit.SECONDS));
+        for (int i = 0; i < deck.getCount(); i++) {
+            ReturnResponse<String> slide = renderer.getSlide(deck.getKey(), i);
+            assertEquals(0, slide.getCode());
+            BufferedImage image = ImageIO.read(new File(slide.getContent()));
+            assertEquals(640, image.getWidth());
+            assertEquals(deck.getHeight(), image.getHeight());
+        }
+        assertEquals(1, renderer.getSlide(deck.getKey(), 5).getCode());
+        assertEquals(1, renderer.getSlide("../" + deck.getKey(), 0).getCode());
+        assertEquals("slides" + File.separator + deck.getKey(), registered.get("slides:" + deck.getKey()));
+    }
+
+    @Test
+    public void keepsRenderingAfterSourceIsEvicted() {
+        ReturnResponse<SlideRenderer.SlideDeck> opened = renderer.open("http://host/deck.pptx", "pptx", "deck.pptx", null);
+        // SourceFileCache淘汰了源文件
+        assertTrue(pptx.delete());
+        SlideRenderer.SlideDeck deck = opened.getContent();
+        assertTrue(deck.await(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void capsWorkersByDeckSize() {
+        assertEquals(2, renderer.workersFor(1024, 5));
+        assertEquals(1, renderer.workersFor(1024, 1));
+        assertEquals(1, renderer.workersFor(20 * 1024 * 1024, 5));
+        assertEquals(1, renderer.workersFor(64 * 1024 * 1024, 5));
+    }
+}
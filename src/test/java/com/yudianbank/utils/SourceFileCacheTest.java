@@ -0,0 +1,56 @@
+package com.yudianbank.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SourceFileCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("source-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Test
+    public void countsFilesLeftBeforeRestart() throws Exception {
+        File oldest = write("0123abcd_a.docx", 1000);
+        File oldestSidecar = write("0123abcd_a.docx.gz", 2000);
+        File middle = write("4567abcd_b.zip.gz", 3000);
+        File newest = write("89abcdef_c.txt", 4000);
+        File converted = write("report.pdf", 1000);
+
+        SourceFileCache cache = new SourceFileCache();
+        cache.fileDir = dir.getPath() + File.separator;
+        cache.maxBytes = 25;
+        cache.compressedSidecarWriter = new CompressedSidecarWriter();
+        cache.init();
+
+        // 三个源文件共30字节，超过上限时删除最旧的及其压缩副本
+        assertFalse(oldest.exists());
+        assertFalse(oldestSidecar.exists());
+        assertTrue(middle.exists());
+        assertTrue(newest.exists());
+        assertTrue(converted.exists());
+    }
+
+    private File write(String name, long offsetMillis) throws Exception {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), new byte[10]);
+        file.setLastModified(System.currentTimeMillis() - 10_000 + offsetMillis);
+        return file;
+    }
+}
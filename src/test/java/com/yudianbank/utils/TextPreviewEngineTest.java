@@ -0,0 +1,70 @@
+package com.yudianbank.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextPreviewEngineTest {
+
+    private TextPreviewEngine engine;
+
+    @Before
+    public void setUp() {
+        PreviewMetrics previewMetrics = new PreviewMetrics();
+        previewMetrics.registry = new SimpleMeterRegistry();
+        CharsetDetector detector = new CharsetDetector();
+        detector.sampleBytes = 1024;
+        detector.cacheSize = 16;
+        detector.previewMetrics = previewMetrics;
+        detector.init();
+        engine = new TextPreviewEngine();
+        engine.charsetDetector = detector;
+        engine.previewMetrics = previewMetrics;
+        engine.checkpointLines = 2;
+        engine.mapWindowBytes = 16;
+        engine.maxLineBytes = 1024;
+        engine.indexCacheSize = 4;
+        engine.init();
+    }
+
+    @Test
+    public void pagesAcrossCheckpoints() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 7; i++) {
+            text.append("第").append(i).append("行\r\n");
+        }
+        File file = write(text.toString().getBytes(StandardCharsets.UTF_8));
+        TextPreviewEngine.TextPage page = engine.readPage(file.getPath(), 2, 3);
+        assertEquals(7, page.getTotalLines());
+        assertEquals(3, page.getTotalPages());
+        assertEquals(Arrays.asList("第4行", "第5行", "第6行"), page.getLines());
+        assertEquals(Collections.singletonList("第7行"), engine.readPage(file.getPath(), 3, 3).getLines());
+        assertEquals(Collections.emptyList(), engine.readPage(file.getPath(), 4, 3).getLines());
+    }
+
+    @Test
+    public void truncatesAtCharacterBoundary() throws Exception {
+        // 每个汉字UTF-8为3字节、GBK为2字节，截断在字符中间
+        engine.maxLineBytes = 7;
+        File utf8 = write("中文内容很长\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("中文……", engine.readPage(utf8.getPath(), 1, 10).getLines().get(0));
+        byte[] gbk = Arrays.copyOf("中文内容".getBytes(Charset.forName("GBK")), 5);
+        assertEquals("中文", TextPreviewEngine.decodeComplete(gbk, Charset.forName("GBK")));
+    }
+
+    private File write(byte[] bytes) throws Exception {
+        File file = Files.createTempFile("text-page", ".txt").toFile();
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+}
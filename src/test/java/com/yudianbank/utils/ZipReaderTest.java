@@ -0,0 +1,140 @@
+package com.yudianbank.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class ZipReaderTest {
+
+    private File dir;
+    private ZipReader zipReader;
+    private final List<String> removed = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("zip-reader").toFile();
+        zipReader = new ZipReader();
+        zipReader.fileDir = dir.getPath() + File.separator;
+        zipReader.maxEntries = 3;
+        zipReader.maxDepth = 2;
+        zipReader.maxTotalBytes = 1000;
+        zipReader.maxCompressionRatio = 10;
+        zipReader.previewMetrics = new PreviewMetrics();
+        zipReader.previewMetrics.registry = new SimpleMeterRegistry();
+        zipReader.fileUtils = new FileUtils() {
+            @Override
+            public void removeConvertedFile(String fileName) {
+                removed.add(fileName);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void entryCountLimit() throws Exception {
+        ZipReader.ArchiveBudget budget = zipReader.new ArchiveBudget();
+        for (int i = 0; i < 3; i++) {
+            budget.checkEntry("f" + i, 1, 10, 10);
+        }
+        assertLimit(budget, "f3", 1, 10, 10);
+    }
+
+    @Test
+    public void depthLimit() throws Exception {
+        ZipReader.ArchiveBudget budget = zipReader.new ArchiveBudget();
+        budget.checkEntry("a/b", 2, 10, 10);
+        assertLimit(budget, "a/b/c", 3, 10, 10);
+    }
+
+    @Test
+    public void declaredTotalSizeLimit() throws Exception {
+        ZipReader.ArchiveBudget budget = zipReader.new ArchiveBudget();
+        budget.checkEntry("a", 1, 600, 600);
+        assertLimit(budget, "b", 1, 600, 600);
+    }
+
+    @Test
+    public void declaredRatioLimit() throws Exception {
+        ZipReader.ArchiveBudget budget = zipReader.new ArchiveBudget();
+        // 大小未知时不检查
+        budget.checkEntry("a", 1, -1, -1);
+        assertLimit(budget, "b", 1, 110, 10);
+    }
+
+    @Test
+    public void extractedBytesAreCounted() throws Exception {
+        ZipReader.ArchiveBudget budget = zipReader.new ArchiveBudget();
+        // 单个条目按压缩比限制：10字节最多解压出100字节
+        try (OutputStream out = budget.limit(new ByteArrayOutputStream(), 10)) {
+            out.write(new byte[100]);
+            out.write(1);
+            fail();
+        } catch (ArchiveLimitExceededException expected) {
+        }
+        // 总大小按实际写出的字节累计(前一个条目已写出101字节)
+        try (OutputStream out = budget.limit(new ByteArrayOutputStream(), -1)) {
+            out.write(new byte[899]);
+            out.write(1);
+            fail();
+        } catch (ArchiveLimitExceededException expected) {
+        }
+    }
+
+    @Test
+    public void abortedExtractionRemovesFileTree() throws Exception {
+        File archive = new File(dir, "bomb.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("a.txt"));
+            out.write(new byte[600]);
+            out.putNextEntry(new ZipEntry("b.txt"));
+            out.write(new byte[600]);
+        }
+        ZipFile zipFile = new ZipFile(archive);
+        List<Map<String, ZipArchiveEntry>> entries = new ArrayList<>();
+        entries.add(Collections.singletonMap("bomb.zip_a.txt", zipFile.getEntry("a.txt")));
+        entries.add(Collections.singletonMap("bomb.zip_b.txt", zipFile.getEntry("b.txt")));
+        // 声明的大小可以伪造，这里跳过目录检查，直接按实际写出的字节中止
+        ZipReader.ArchiveBudget budget = zipReader.new ArchiveBudget();
+        zipReader.maxCompressionRatio = 1000;
+        zipReader.new ZipExtractorWorker(entries, zipFile, archive.getPath(), budget, "bomb.zip").run();
+
+        assertEquals(Collections.singletonList("bomb.zip"), removed);
+        assertFalse(new File(dir, "bomb.zip_a.txt").exists());
+        assertFalse(new File(dir, "bomb.zip_b.txt").exists());
+        assertFalse(archive.exists());
+    }
+
+    private void assertLimit(ZipReader.ArchiveBudget budget, String fullName, int level, long size, long compressedSize) {
+        try {
+            budget.checkEntry(fullName, level, size, compressedSize);
+            fail("应超出限制：" + fullName);
+        } catch (ArchiveLimitExceededException expected) {
+        }
+    }
+}